@@ -1,5 +1,46 @@
 #!/usr/bin/python
-import sys,subprocess,os
+import sys,subprocess,os,socket,re,hashlib
+
+# Key of the inventory our environment asks for, worked out exactly like InventoryCache.key() in the jar.
+def inventory_key():
+    endpoint = os.environ.get("OO_ENDPOINT", "")
+    host_method = os.environ.get("OO_HOST_METHOD") or "public_ip"
+    targets = [t for t in re.split(r"[, \t\n]+", os.environ.get("OO_TARGETS", "")) if t]
+    if targets:
+        coordinates = "targets\n" + " ".join(targets) + "\n" + endpoint + "\n" + host_method
+    else:
+        coordinates = "\n".join([os.environ.get("OO_ORG", ""), os.environ.get("OO_ASSEMBLY", ""),
+                                 os.environ.get("OO_ENV", ""), endpoint, host_method])
+    if os.environ.get("OO_GROUP_VARS_ONLY") == "true":
+        coordinates += "\ngroup-vars-only"
+    return hashlib.sha256(coordinates.encode("utf-8")).hexdigest()
+
+# Ask a running inventory daemon (oo-inventory --daemon) first, it answers from memory.
+def ask_daemon():
+    port = int(os.environ.get("OO_DAEMON_PORT", "7311"))
+    try:
+        s = socket.create_connection(("127.0.0.1", port), timeout=10)
+    except socket.error:
+        return None
+    try:
+        s.sendall(inventory_key() + " " + " ".join(sys.argv[1:3]) + "\n")
+        chunks = []
+        while True:
+            chunk = s.recv(65536)
+            if not chunk:
+                break
+            chunks.append(chunk)
+    except socket.error:
+        return None
+    finally:
+        s.close()
+    # An empty reply means the daemon didn't understand the request, or serves another inventory
+    return "".join(chunks) or None
+
+output = ask_daemon()
+if output is not None:
+    sys.stdout.write(output)
+    sys.exit(0)
 
 cmd = "java -jar " + os.path.dirname(__file__) + "/target/oneops-inventory-1.0.0-SNAPSHOT-uber.jar " + sys.argv[1]
 if len(sys.argv) == 3:
@@ -0,0 +1,52 @@
+package com.oneops.inv;
+
+import javax.annotation.Nullable;
+
+/**
+ * {@link InventoryEvents} as JDK Flight Recorder events: a {@link OneOpsCallEvent} per API call and an
+ * {@link InventoryPhaseEvent} per phase.  Enabled by -XX:StartFlightRecording, or in Mission Control.
+ *
+ * Only built by the jfr profile, and only loaded by {@link InventoryEvents#load()} when the JDK has Flight
+ * Recorder.
+ */
+public class FlightRecorderEvents extends InventoryEvents
+{
+    @Override
+    public Call beginCall(String method, String org, @Nullable String env, @Nullable String platform,
+                          @Nullable String component) {
+        OneOpsCallEvent event = new OneOpsCallEvent();
+        if( !event.isEnabled() ) {
+            return failed -> { };
+        }
+        event.method = method;
+        event.org = org;
+        event.environment = env;
+        event.platform = platform;
+        event.component = component;
+        event.begin();
+        return failed -> {
+            event.failed = failed;
+            event.commit();
+        };
+    }
+
+    @Override
+    public Phase beginPhase(String phase) {
+        InventoryPhaseEvent event = new InventoryPhaseEvent();
+        if( !event.isEnabled() ) {
+            return (hosts, groups) -> { };
+        }
+        event.phase = phase;
+        event.begin();
+        return (hosts, groups) -> {
+            event.hosts = hosts;
+            event.groups = groups;
+            event.commit();
+        };
+    }
+
+    @Override
+    public boolean isActive() {
+        return true;
+    }
+}
@@ -0,0 +1,28 @@
+package com.oneops.inv;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A crawl or generation phase of the inventory.
+ */
+@Name("com.oneops.inv.Phase")
+@Label("Inventory Phase")
+@Category({"OneOps Inventory", "Phases"})
+@Description("Gathering the inventory from OneOps, or generating it")
+@StackTrace(false)
+class InventoryPhaseEvent extends Event
+{
+    @Label("Phase")
+    String phase;
+
+    @Label("Hosts")
+    int hosts;
+
+    @Label("Groups")
+    int groups;
+}
@@ -0,0 +1,37 @@
+package com.oneops.inv;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A OneOps API call, from the thread that made it.
+ */
+@Name("com.oneops.inv.OneOpsCall")
+@Label("OneOps API Call")
+@Category({"OneOps Inventory", "Crawl"})
+@Description("A call to the OneOps API while gathering the inventory")
+@StackTrace(false)
+class OneOpsCallEvent extends Event
+{
+    @Label("Method")
+    String method;
+
+    @Label("Organization")
+    String org;
+
+    @Label("Environment")
+    String environment;
+
+    @Label("Platform")
+    String platform;
+
+    @Label("Component")
+    String component;
+
+    @Label("Failed")
+    boolean failed;
+}
@@ -0,0 +1,150 @@
+package com.oneops.inv;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of inventory generation against a {@link TestAssembly}, so they measure the inventory and not the
+ * OneOps API.
+ *
+ * Run with {@code mvn -P jmh test-compile exec:exec}.  The gc profiler is on, so every result comes with its
+ * allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@State(Scope.Benchmark)
+public class InventoryBenchmark
+{
+    private static final int ENVIRONMENTS = 2;
+
+    private static final int COMPUTES_PER_PLATFORM = 50;
+
+    private static final int VARIABLES = 20;
+
+    @Param({"100", "10000", "100000"})
+    public int hosts;
+
+    @Param({"public_ip", "private_ip", "hostname"})
+    public String hostMethod;
+
+    private TestAssembly assembly;
+
+    private Inventory inventory;
+
+    private String hostId;
+
+    private HostLocation location;
+
+    @Setup
+    public void setUp() throws Exception {
+        int platforms = Math.max(1, hosts / (ENVIRONMENTS * COMPUTES_PER_PLATFORM));
+        assembly = new TestAssembly(ENVIRONMENTS, platforms, hosts / (ENVIRONMENTS * platforms), VARIABLES);
+
+        inventory = crawl();
+        List<String> hostIds = new ArrayList<>(inventory.getHostLocations().keySet());
+        hostId = hostIds.get(hostIds.size() / 2);
+        location = inventory.getHostLocations().get(hostId);
+    }
+
+    private Inventory newInventory() {
+        return new Inventory(TestAssembly.ORG, TestAssembly.ASSEMBLY, null, "token", "https://oneops.example.com/",
+            hostMethod);
+    }
+
+    /**
+     * Gather the whole assembly: merging, projecting hosts and working out their ids.
+     */
+    @Benchmark
+    public Inventory crawl() throws Exception {
+        Inventory crawled = newInventory();
+        crawled.initialize(new MemoizingSource(assembly));
+        return crawled;
+    }
+
+    /**
+     * --list, streamed the way the command line writes it.
+     */
+    @Benchmark
+    public long list() throws Exception {
+        CountingWriter writer = new CountingWriter();
+        inventory.writeList(writer);
+        return writer.count;
+    }
+
+    /**
+     * --list as a JSON tree, the way the daemon serves it.
+     */
+    @Benchmark
+    public JSONObject generateList() throws Exception {
+        return inventory.generateList();
+    }
+
+    /**
+     * Hostvars of one host of a crawled inventory.
+     */
+    @Benchmark
+    public JSONObject generateHost() throws Exception {
+        return inventory.generateHost(hostId);
+    }
+
+    /**
+     * --host without a cached list: gather the platform the host index points at, then render the host.
+     */
+    @Benchmark
+    public JSONObject host() throws Exception {
+        Inventory single = newInventory();
+        single.setComponentSelection(ComponentSelection.forHost());
+        single.initializeHost(new MemoizingSource(assembly), hostId, location);
+        return single.generateHost(hostId);
+    }
+
+    /**
+     * Throws the output away, counting it so it can't be optimized out.
+     */
+    private static class CountingWriter
+        extends Writer
+    {
+        long count;
+
+        @Override
+        public void write(final char[] buffer, final int offset, final int length) {
+            count += length;
+        }
+
+        @Override
+        public void write(final String string, final int offset, final int length) {
+            count += length;
+        }
+
+        @Override
+        public void write(final int c) {
+            count++;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.oneops.inv;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * New content for a file, written to a temporary file and renamed over the old one, so a reader sees either
+ * the old file or the whole new one.
+ *
+ * The temporary file is hidden and next to the final file, so the rename can't cross file systems and nothing
+ * reading every file in a directory picks it up.  It is on disk before the rename, or a crash could leave an
+ * empty file behind.  Closing without {@link #commit()} deletes it and leaves the old file as it was.
+ */
+public class AtomicFile implements AutoCloseable
+{
+    private final File file;
+
+    private final File temp;
+
+    /**
+     * @param file The file to replace; its directory has to exist
+     */
+    public AtomicFile(File file) throws IOException {
+        this.file = file;
+        this.temp = File.createTempFile("." + file.getName() + ".", ".tmp", file.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * Stream to write the new content to.  Close it before {@link #commit()}.
+     */
+    public OutputStream openStream() throws IOException {
+        return new BufferedOutputStream(new FileOutputStream(temp));
+    }
+
+    /**
+     * The new content, as written so far.
+     */
+    public File getTempFile() {
+        return temp;
+    }
+
+    /**
+     * Replace the file with what was written.
+     */
+    public void commit() throws IOException {
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public void close() throws IOException {
+        Files.deleteIfExists(temp.toPath());
+    }
+}
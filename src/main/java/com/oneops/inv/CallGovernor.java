@@ -0,0 +1,363 @@
+package com.oneops.inv;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.oneops.api.exception.OneOpsClientAPIException;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the OneOps API calls of a run to what the API can take, and retries the ones it turns away.
+ *
+ * Every call goes through four things, in order:
+ * <ul>
+ *   <li>A circuit breaker.  After {@link #FAILURES_TO_OPEN} server failures in a row no calls are made for
+ *       {@link #OPEN_NANOS}; then one call is let through, and the circuit closes again if it succeeds.</li>
+ *   <li>A token bucket, holding calls to a steady rate with bursts of up to a second's worth, if a rate is
+ *       set.</li>
+ *   <li>A limit on calls in flight that adapts like TCP congestion control (AIMD): it grows by one for every
+ *       limit's worth of calls answered promptly, and halves when a call is throttled (429), fails on the
+ *       server (5xx), or latency climbs well above the lowest we've seen.  It never exceeds the fetch
+ *       parallelism.</li>
+ *   <li>Retries of throttled and failed calls, after an exponential backoff with full jitter so callers that
+ *       failed together don't come back together.</li>
+ * </ul>
+ *
+ * Errors OneOps answers on purpose, like a 404 for an environment that's gone, are passed straight on.  One
+ * governor is shared by every inventory talking to the same OneOps, so they all keep to one budget.
+ */
+public class CallGovernor
+{
+    /**
+     * One attempt at an API call.
+     */
+    public interface Call<T>
+    {
+        T call() throws OneOpsClientAPIException;
+    }
+
+    /**
+     * Time, so tests can run the governor without waiting.
+     */
+    @VisibleForTesting
+    interface Clock
+    {
+        long nanoTime();
+
+        void sleep(long nanos) throws InterruptedException;
+    }
+
+    private static final Clock SYSTEM_CLOCK = new Clock()
+    {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleep(long nanos) throws InterruptedException {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+    };
+
+    /**
+     * Why a call failed, if OneOps didn't answer it.
+     */
+    private enum Failure
+    {
+        THROTTLED,
+        SERVER
+    }
+
+    @VisibleForTesting
+    static final int FAILURES_TO_OPEN = 10;
+
+    @VisibleForTesting
+    static final long OPEN_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    @VisibleForTesting
+    static final long BACKOFF_BASE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @VisibleForTesting
+    static final long BACKOFF_MAX_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * Smoothed latency this many times the lowest, and at least {@link #LATENCY_SLACK_NANOS} over it, counts as
+     * the API slowing down under our load.
+     */
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    private static final long LATENCY_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /**
+     * The client only tells us what went wrong in its message, so look there for the HTTP status.  Fragile, see
+     * {@link #classify(OneOpsClientAPIException)}.
+     */
+    private static final Pattern STATUS = Pattern.compile("(?<![\\w.-])(429|5\\d\\d)(?![\\w.-])");
+
+    private final double ratePerNano;
+
+    private final double burst;
+
+    private final int maxLimit;
+
+    private final int retries;
+
+    private final Clock clock;
+
+    private final Random random;
+
+    // Everything below is guarded by this
+
+    private double tokens;
+
+    private long refilledAt;
+
+    private double limit;
+
+    private int inFlight;
+
+    // Calls started before the last decrease saw the same congestion, and don't decrease it again
+    private long decreasedAt;
+
+    private double smoothedLatency;
+
+    private double lowestLatency;
+
+    private int consecutiveFailures;
+
+    private boolean open;
+
+    private long openedAt;
+
+    private boolean probing;
+
+    /**
+     * @param callsPerSecond Steady rate of calls, 0 for no limit
+     * @param maxInFlight Most calls in flight at once, usually the fetch parallelism
+     * @param retries How many times to retry a throttled or failed call, 0 for none
+     */
+    public CallGovernor(long callsPerSecond, int maxInFlight, int retries) {
+        this(callsPerSecond, maxInFlight, retries, SYSTEM_CLOCK, new Random());
+    }
+
+    @VisibleForTesting
+    CallGovernor(long callsPerSecond, int maxInFlight, int retries, Clock clock, Random random) {
+        if( maxInFlight < 1 ) {
+            throw new IllegalArgumentException("Calls in flight must be at least 1: " + maxInFlight);
+        }
+        this.ratePerNano = callsPerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(1, callsPerSecond);
+        this.maxLimit = maxInFlight;
+        this.retries = retries;
+        this.clock = clock;
+        this.random = random;
+        this.tokens = burst;
+        this.refilledAt = clock.nanoTime();
+        this.limit = maxInFlight;
+        this.decreasedAt = refilledAt;
+    }
+
+    /**
+     * Make the call when the API can take it, retrying it if it's throttled or fails on the server.
+     *
+     * @throws OneOpsUnavailableException If it failed on every attempt, or the circuit is open
+     * @throws OneOpsClientAPIException If OneOps answered with an error
+     */
+    public <T> T call(Call<T> call) throws OneOpsClientAPIException {
+        for( int attempt = 0; ; attempt++ ) {
+            long start;
+            try {
+                checkCircuit();
+                takeToken();
+                start = enter();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new OneOpsUnavailableException("Interrupted waiting to call OneOps", e);
+            }
+
+            try {
+                T result = call.call();
+                leave(start, null);
+                return result;
+            } catch (OneOpsClientAPIException e) {
+                Failure failure = classify(e);
+                leave(start, failure);
+                if( failure == null ) {
+                    throw e;
+                }
+                if( attempt >= retries ) {
+                    throw new OneOpsUnavailableException(e.getMessage() + " (gave up after " + (attempt + 1)
+                            + (attempt == 0 ? " attempt)" : " attempts)"), e);
+                }
+            } catch (RuntimeException | Error e) {
+                abandon();
+                throw e;
+            }
+
+            try {
+                clock.sleep(backoff(attempt));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new OneOpsUnavailableException("Interrupted waiting to retry OneOps", e);
+            }
+        }
+    }
+
+    /**
+     * Whether a failure was the API's and is worth retrying, and how.
+     *
+     * The client's exception carries no status code, only a message with the status in it, so this is a guess
+     * from the message text.  If the client changes its wording, throttling and server failures come out as
+     * {@code null} and are no longer retried.
+     */
+    @Nullable
+    private static Failure classify(OneOpsClientAPIException e) {
+        if( e instanceof OneOpsUnavailableException ) {
+            return Failure.SERVER;
+        }
+        String message = e.getMessage();
+        if( message != null ) {
+            Matcher status = STATUS.matcher(message);
+            if( status.find() ) {
+                return status.group(1).equals("429") ? Failure.THROTTLED : Failure.SERVER;
+            }
+            // The client wraps connection failures in its own exception with the original's description
+            if( message.contains("java.net.") || message.contains("java.io.") ) {
+                return Failure.SERVER;
+            }
+        }
+        return e.getCause() instanceof IOException ? Failure.SERVER : null;
+    }
+
+    private long backoff(int attempt) {
+        long ceiling = Math.min(BACKOFF_MAX_NANOS, BACKOFF_BASE_NANOS << Math.min(attempt, 20));
+        return (long) (random.nextDouble() * ceiling);
+    }
+
+    private synchronized void checkCircuit() throws OneOpsUnavailableException {
+        if( !open ) {
+            return;
+        }
+        long openFor = clock.nanoTime() - openedAt;
+        if( openFor < OPEN_NANOS || probing ) {
+            throw new OneOpsUnavailableException("OneOps API failed " + FAILURES_TO_OPEN
+                    + " times in a row, not calling it for " + TimeUnit.NANOSECONDS.toSeconds(OPEN_NANOS) + "s");
+        }
+        // Half open, this call finds out whether it's back
+        probing = true;
+    }
+
+    /**
+     * Reserve a token, and wait until it would have been in the bucket.
+     */
+    private void takeToken() throws InterruptedException {
+        if( ratePerNano <= 0 ) {
+            return;
+        }
+        long wait;
+        synchronized( this ) {
+            long now = clock.nanoTime();
+            tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerNano);
+            refilledAt = now;
+            tokens -= 1;
+            wait = tokens < 0 ? (long) Math.ceil(-tokens / ratePerNano) : 0;
+        }
+        if( wait > 0 ) {
+            clock.sleep(wait);
+        }
+    }
+
+    /**
+     * Wait for room under the limit, and take it.
+     *
+     * @return When the call started
+     */
+    private synchronized long enter() throws InterruptedException {
+        while( inFlight >= (int) limit ) {
+            wait();
+        }
+        inFlight++;
+        return clock.nanoTime();
+    }
+
+    private synchronized void leave(long start, @Nullable Failure failure) {
+        inFlight--;
+        notifyAll();
+
+        long now = clock.nanoTime();
+        boolean sameCongestion = start - decreasedAt < 0;
+        if( failure != null ) {
+            if( !sameCongestion ) {
+                decrease(now);
+            }
+            if( failure == Failure.SERVER ) {
+                // Throttling is the API working as intended - only an API that's failing opens the circuit
+                consecutiveFailures++;
+                if( probing || consecutiveFailures >= FAILURES_TO_OPEN ) {
+                    open = true;
+                    openedAt = now;
+                }
+            }
+            probing = false;
+            return;
+        }
+
+        consecutiveFailures = 0;
+        open = false;
+        probing = false;
+
+        long latency = now - start;
+        if( smoothedLatency == 0 ) {
+            smoothedLatency = latency;
+            lowestLatency = latency;
+        } else {
+            smoothedLatency += (latency - smoothedLatency) * 0.2;
+            // Follows new lows at once, and a sustained rise slowly, so a slower API becomes the new normal
+            lowestLatency = latency < lowestLatency ? latency : lowestLatency + (latency - lowestLatency) * 0.01;
+        }
+
+        if( smoothedLatency > lowestLatency * LATENCY_TOLERANCE + LATENCY_SLACK_NANOS ) {
+            if( !sameCongestion ) {
+                decrease(now);
+            }
+        } else {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    /**
+     * Give back the room of a call that failed in a way that says nothing about the API.
+     */
+    private synchronized void abandon() {
+        inFlight--;
+        notifyAll();
+        probing = false;
+    }
+
+    private void decrease(long now) {
+        limit = Math.max(1, limit / 2);
+        decreasedAt = now;
+    }
+
+    /**
+     * Current limit on calls in flight.
+     */
+    @VisibleForTesting
+    synchronized double getLimit() {
+        return limit;
+    }
+
+    /**
+     * Whether calls are failing fast.
+     */
+    @VisibleForTesting
+    synchronized boolean isOpen() {
+        return open;
+    }
+}
@@ -0,0 +1,113 @@
+package com.oneops.inv;
+
+import com.oneops.api.resource.model.CiAttributes;
+import com.oneops.api.resource.model.CiResource;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts CiResources to and from the JSON OneOps sends them as: the model's fields, the attributes under
+ * "ciAttributes", and anything else the model doesn't know - such as "deployedTo" - at the top.
+ *
+ * Nested objects and arrays come back as Maps and Lists, the way the client's own JSON mapping leaves them in
+ * the additional properties.
+ */
+public final class CiResourceJson
+{
+    private CiResourceJson() {
+    }
+
+    public static JSONArray toJson(List<CiResource> resources) {
+        JSONArray array = new JSONArray();
+        for( CiResource resource : resources ) {
+            array.put(toJson(resource));
+        }
+        return array;
+    }
+
+    public static JSONObject toJson(CiResource resource) {
+        JSONObject json = new JSONObject();
+        for( Map.Entry<String, Object> property : resource.getAdditionalProperties().entrySet() ) {
+            json.put(property.getKey(), property.getValue());
+        }
+        json.put("ciId", resource.getCiId());
+        json.put("ciName", resource.getCiName());
+        json.put("ciClassName", resource.getCiClassName());
+        json.put("nsPath", resource.getNsPath());
+        JSONObject attributes = new JSONObject();
+        if( resource.getCiAttributes() != null ) {
+            for( Map.Entry<String, Object> attribute : resource.getCiAttributes().getAdditionalProperties().entrySet() ) {
+                attributes.put(attribute.getKey(), attribute.getValue());
+            }
+        }
+        json.put("ciAttributes", attributes);
+        return json;
+    }
+
+    public static List<CiResource> fromJson(JSONArray array) {
+        List<CiResource> resources = new ArrayList<CiResource>(array.length());
+        for( int i = 0; i < array.length(); i++ ) {
+            resources.add(fromJson(array.getJSONObject(i)));
+        }
+        return resources;
+    }
+
+    public static CiResource fromJson(JSONObject json) {
+        CiResource resource = new CiResource();
+        CiAttributes attributes = new CiAttributes();
+        resource.setCiAttributes(attributes);
+
+        for( String key : json.keySet() ) {
+            Object value = json.get(key);
+            switch( key ) {
+                case "ciId":
+                    resource.setCiId(json.getLong(key));
+                    break;
+                case "ciName":
+                    resource.setCiName(json.getString(key));
+                    break;
+                case "ciClassName":
+                    resource.setCiClassName(json.getString(key));
+                    break;
+                case "nsPath":
+                    resource.setNsPath(json.getString(key));
+                    break;
+                case "ciAttributes":
+                    JSONObject attributesJson = json.getJSONObject(key);
+                    for( String name : attributesJson.keySet() ) {
+                        Object attribute = plain(attributesJson.get(name));
+                        if( attribute != null ) {
+                            attributes.setAdditionalProperty(name, attribute);
+                        }
+                    }
+                    break;
+                default:
+                    Object property = plain(value);
+                    if( property != null ) {
+                        resource.setAdditionalProperty(key, property);
+                    }
+            }
+        }
+        return resource;
+    }
+
+    /**
+     * A JSON value as plain Java, {@code null} for JSON null.
+     */
+    @Nullable
+    private static Object plain(Object value) {
+        if( value instanceof JSONObject ) {
+            return ((JSONObject) value).toMap();
+        }
+        if( value instanceof JSONArray ) {
+            return ((JSONArray) value).toList();
+        }
+        return value == JSONObject.NULL ? null : value;
+    }
+}
@@ -0,0 +1,71 @@
+package com.oneops.inv;
+
+import com.oneops.api.OOInstance;
+import com.oneops.api.exception.OneOpsClientAPIException;
+import com.oneops.api.resource.Cloud;
+import com.oneops.api.resource.Operation;
+import com.oneops.api.resource.Transition;
+import com.oneops.api.resource.model.CiResource;
+
+import java.util.List;
+
+/**
+ * {@link OneOpsSource} backed by the oneops-client DTO objects.
+ *
+ * The client doesn't promise its DTOs can be shared between threads, so every call gets its own.  They're
+ * cheap to create - all the cost is in the HTTP round-trip.
+ */
+public class ClientSource implements OneOpsSource
+{
+    private final OOInstance instance;
+    private final String assembly;
+
+    public ClientSource(OOInstance instance, String assembly) {
+        this.instance = instance;
+        this.assembly = assembly;
+    }
+
+    @Override
+    public List<CiResource> listClouds() throws OneOpsClientAPIException {
+        return new Cloud(instance).listClouds();
+    }
+
+    @Override
+    public List<CiResource> listEnvironments() throws OneOpsClientAPIException {
+        return transition().listEnvironments();
+    }
+
+    @Override
+    public CiResource getEnvironment(String env) throws OneOpsClientAPIException {
+        return transition().getEnvironment(env);
+    }
+
+    @Override
+    public List<CiResource> listPlatforms(String env) throws OneOpsClientAPIException {
+        return transition().listPlatforms(env);
+    }
+
+    @Override
+    public List<CiResource> listGlobalVariables(String env) throws OneOpsClientAPIException {
+        return transition().listGlobalVariables(env);
+    }
+
+    @Override
+    public List<CiResource> listPlatformComponents(String env, String platform) throws OneOpsClientAPIException {
+        return transition().listPlatformComponents(env, platform);
+    }
+
+    @Override
+    public List<CiResource> listPlatformVariables(String env, String platform) throws OneOpsClientAPIException {
+        return transition().listPlatformVariables(env, platform);
+    }
+
+    @Override
+    public List<CiResource> listInstances(String env, String platform, String component) throws OneOpsClientAPIException {
+        return new Operation(instance, assembly, env).listInstances(platform, component);
+    }
+
+    private Transition transition() throws OneOpsClientAPIException {
+        return new Transition(instance, assembly);
+    }
+}
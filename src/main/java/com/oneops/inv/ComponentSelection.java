@@ -0,0 +1,79 @@
+package com.oneops.inv;
+
+import com.oneops.api.resource.model.CiResource;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Decides which components we list operations instances for.
+ *
+ * Listing instances is one API call per component, and most components (load balancers, artifacts, users,
+ * volumes...) never show up in the inventory.  We only need the computes themselves, plus the sibling
+ * instances the hostvars and groups read - so we work that out up front and skip everything else.
+ *
+ * Computes are always gathered, they are the hosts.  This selection only covers the sibling instances.
+ */
+public class ComponentSelection
+{
+    /**
+     * Hostname component - source of "oo_hostnames" and of the host id when the host method is "hostname"
+     */
+    public static final String HOSTNAME = "hostname";
+
+    /**
+     * OS component - source of "oo_os_type" and "oo_os_name"
+     */
+    public static final String OS = "os";
+
+    /**
+     * FQDN component - source of the "fqdn_aliases" and "fqdn_full_aliases" platform group vars
+     */
+    public static final String FQDN = "fqdn";
+
+    private final Set<String> componentNames = new LinkedHashSet<String>();
+
+    private ComponentSelection() {
+    }
+
+    /**
+     * Components needed to generate the full --list inventory: hostvars and groups.
+     */
+    public static ComponentSelection forList() {
+        return forHost().include(FQDN);
+    }
+
+    /**
+     * Components needed to generate the hostvars for a single --host.  No groups, so no FQDN.
+     *
+     * The hostname is needed by every host method: it identifies hosts in "hostname" mode, and the hostvars
+     * carry "oo_hostnames" in all modes.  So the selection doesn't depend on the host method.
+     */
+    public static ComponentSelection forHost() {
+        return new ComponentSelection().include(HOSTNAME, OS);
+    }
+
+    /**
+     * Also gather instances of these components, e.g. for callers that add their own hostvars.
+     */
+    public ComponentSelection include(String... names) {
+        Collections.addAll(componentNames, names);
+        return this;
+    }
+
+    public boolean isSelected(CiResource component) {
+        return componentNames.contains( component.getCiName() );
+    }
+
+    public Set<String> getComponentNames() {
+        return Collections.unmodifiableSet(componentNames);
+    }
+
+    @Override
+    public String toString() {
+        return "ComponentSelection{" +
+                "componentNames=" + componentNames +
+                '}';
+    }
+}
@@ -0,0 +1,100 @@
+package com.oneops.inv;
+
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Exclusive lock on a file, shared by every inventory process on the host.
+ *
+ * When a dozen playbooks start at once against the same assembly, only the process holding the lock crawls
+ * OneOps; the rest wait for it and read what it published.  The OS drops the lock if the holder dies, so a
+ * crashed crawl never blocks anyone for longer than it took to crash.
+ */
+public class CrawlLock implements AutoCloseable
+{
+    private static final long POLL_MILLIS = 100;
+
+    private final FileChannel channel;
+
+    private final FileLock lock;
+
+    private final boolean contended;
+
+    private CrawlLock(FileChannel channel, FileLock lock, boolean contended) {
+        this.channel = channel;
+        this.lock = lock;
+        this.contended = contended;
+    }
+
+    /**
+     * Wait up to the timeout for the lock.
+     *
+     * @return The lock, or {@code null} if someone else still holds it when the timeout runs out
+     */
+    @Nullable
+    public static CrawlLock acquire(File file, long timeoutMillis) throws IOException, InventoryException {
+        File directory = file.getParentFile();
+        if( directory != null && !directory.isDirectory() && !directory.mkdirs() ) {
+            throw new IOException("Unable to create lock directory: " + directory);
+        }
+
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        boolean contended = false;
+        try {
+            while( true ) {
+                FileLock lock = tryLock(channel);
+                if( lock != null ) {
+                    return new CrawlLock(channel, lock, contended);
+                }
+
+                contended = true;
+                if( System.currentTimeMillis() >= deadline ) {
+                    channel.close();
+                    return null;
+                }
+                Thread.sleep(POLL_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            channel.close();
+            Thread.currentThread().interrupt();
+            throw new InventoryException("Interrupted waiting for " + file, e);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Nullable
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Held by another thread of this JVM - just as busy as if another process held it.
+            return null;
+        }
+    }
+
+    /**
+     * Whether we had to wait for someone else to release the lock first.  If so, they probably published
+     * what we were about to fetch.
+     */
+    public boolean isContended() {
+        return contended;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            lock.release();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.oneops.inv;
+
+import com.oneops.api.resource.model.CiResource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The parts of an environment the inventory uses, and its global variables.
+ */
+public final class EnvironmentRecord
+{
+    private final long ciId;
+
+    private final String name;
+
+    private final String nsPath;
+
+    private final String profile;
+
+    private final String availability;
+
+    private final List<VariableRecord> globalVariables;
+
+    private final VariableBlock globalVariableBlock;
+
+    public EnvironmentRecord(CiResource environment, List<CiResource> globalVariables) {
+        this.ciId = environment.getCiId();
+        this.name = HostRecord.intern(environment.getCiName());
+        this.nsPath = HostRecord.intern(environment.getNsPath());
+        this.profile = HostRecord.intern(HostRecord.attribute(environment, "profile"));
+        this.availability = HostRecord.intern(HostRecord.attribute(environment, "availability"));
+
+        List<VariableRecord> variables = new ArrayList<VariableRecord>(globalVariables.size());
+        for( CiResource variable : globalVariables ) {
+            variables.add( new VariableRecord(variable) );
+        }
+        this.globalVariables = Collections.unmodifiableList(variables);
+        this.globalVariableBlock = new VariableBlock(this.globalVariables);
+    }
+
+    public long getCiId() {
+        return ciId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getNsPath() {
+        return nsPath;
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public String getAvailability() {
+        return availability;
+    }
+
+    public List<VariableRecord> getGlobalVariables() {
+        return globalVariables;
+    }
+
+    public VariableBlock getGlobalVariableBlock() {
+        return globalVariableBlock;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        EnvironmentRecord that = (EnvironmentRecord) o;
+
+        return ciId == that.ciId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(ciId);
+    }
+
+    @Override
+    public String toString() {
+        return "EnvironmentRecord{" +
+                "ciId=" + ciId +
+                ", name='" + name + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,87 @@
+package com.oneops.inv;
+
+import com.oneops.api.exception.OneOpsClientAPIException;
+import com.oneops.api.resource.model.CiResource;
+
+import javax.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * {@link OneOpsSource} that reports every call it passes through to {@link InventoryEvents}, with the org,
+ * environment, platform and component it was about.
+ *
+ * Like {@link StatsSource}, it belongs next to the source that does the work so only real calls are reported.
+ */
+public class EventSource implements OneOpsSource
+{
+    private interface Call<T>
+    {
+        T call() throws OneOpsClientAPIException;
+    }
+
+    private final OneOpsSource delegate;
+
+    private final InventoryEvents events;
+
+    private final String org;
+
+    public EventSource(OneOpsSource delegate, InventoryEvents events, String org) {
+        this.delegate = delegate;
+        this.events = events;
+        this.org = org;
+    }
+
+    @Override
+    public List<CiResource> listClouds() throws OneOpsClientAPIException {
+        return report("listClouds", null, null, null, delegate::listClouds);
+    }
+
+    @Override
+    public List<CiResource> listEnvironments() throws OneOpsClientAPIException {
+        return report("listEnvironments", null, null, null, delegate::listEnvironments);
+    }
+
+    @Override
+    public CiResource getEnvironment(String env) throws OneOpsClientAPIException {
+        return report("getEnvironment", env, null, null, () -> delegate.getEnvironment(env));
+    }
+
+    @Override
+    public List<CiResource> listPlatforms(String env) throws OneOpsClientAPIException {
+        return report("listPlatforms", env, null, null, () -> delegate.listPlatforms(env));
+    }
+
+    @Override
+    public List<CiResource> listGlobalVariables(String env) throws OneOpsClientAPIException {
+        return report("listGlobalVariables", env, null, null, () -> delegate.listGlobalVariables(env));
+    }
+
+    @Override
+    public List<CiResource> listPlatformComponents(String env, String platform) throws OneOpsClientAPIException {
+        return report("listPlatformComponents", env, platform, null, () -> delegate.listPlatformComponents(env, platform));
+    }
+
+    @Override
+    public List<CiResource> listPlatformVariables(String env, String platform) throws OneOpsClientAPIException {
+        return report("listPlatformVariables", env, platform, null, () -> delegate.listPlatformVariables(env, platform));
+    }
+
+    @Override
+    public List<CiResource> listInstances(String env, String platform, String component) throws OneOpsClientAPIException {
+        return report("listInstances", env, platform, component, () -> delegate.listInstances(env, platform, component));
+    }
+
+    private <T> T report(String method, @Nullable String env, @Nullable String platform, @Nullable String component,
+                         Call<T> call) throws OneOpsClientAPIException {
+        InventoryEvents.Call event = events.beginCall(method, org, env, platform, component);
+        boolean failed = true;
+        try {
+            T result = call.call();
+            failed = false;
+            return result;
+        } finally {
+            event.end(failed);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.oneops.inv;
+
+import com.oneops.api.exception.OneOpsClientAPIException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs OneOps API calls on a bounded pool of worker threads.
+ *
+ * Crawling an assembly is almost entirely network wait, so we fan the calls out and let the caller merge
+ * the results.  Callers are expected to submit one "round" at a time with {@link #fetchAll(List, Fetch)} and
+ * wait for it from their own thread - never submit from inside a fetch, or a small pool can deadlock.
+ */
+public class FetchEngine implements AutoCloseable
+{
+    /**
+     * A single unit of work, usually one OneOps API call.
+     */
+    public interface Fetch<T, R>
+    {
+        R fetch(T item) throws OneOpsClientAPIException, InventoryException;
+    }
+
+    private final ExecutorService executor;
+
+    /**
+     * Whether closing this shuts the threads down, {@code false} for a {@link #share()}.
+     */
+    private final boolean owner;
+
+    /**
+     * @param parallelism Maximum number of API calls in flight at once
+     */
+    public FetchEngine(int parallelism) {
+        if( parallelism < 1 ) {
+            throw new IllegalArgumentException("Fetch parallelism must be at least 1: " + parallelism);
+        }
+        this.executor = Executors.newFixedThreadPool(parallelism, new FetchThreadFactory());
+        this.owner = true;
+    }
+
+    private FetchEngine(ExecutorService executor) {
+        this.executor = executor;
+        this.owner = false;
+    }
+
+    /**
+     * An engine running its fetches on the same threads as this one, for another caller to submit rounds to
+     * at the same time.  The parallelism is shared between them all.  Closing it leaves the threads running;
+     * they stop when this engine is closed.
+     */
+    public FetchEngine share() {
+        return new FetchEngine(executor);
+    }
+
+    /**
+     * Apply the fetch to every item concurrently and wait for all of them.
+     *
+     * @return Results in the same order as the items, regardless of completion order
+     * @throws OneOpsClientAPIException The first API failure, in item order
+     */
+    public <T, R> List<R> fetchAll(List<T> items, Fetch<T, R> fetch) throws OneOpsClientAPIException, InventoryException {
+        List<Future<R>> futures = new ArrayList<Future<R>>(items.size());
+        for( T item : items ) {
+            futures.add( executor.submit(() -> fetch.fetch(item)) );
+        }
+
+        List<R> results = new ArrayList<R>(items.size());
+        try {
+            for( Future<R> future : futures ) {
+                results.add( await(future) );
+            }
+        } finally {
+            // If one call failed there is no point in waiting for the rest of the round.
+            for( Future<R> future : futures ) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    private static <R> R await(Future<R> future) throws OneOpsClientAPIException, InventoryException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InventoryException("Interrupted while gathering inventory", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if( cause instanceof OneOpsClientAPIException ) {
+                throw (OneOpsClientAPIException) cause;
+            }
+            if( cause instanceof InventoryException ) {
+                throw (InventoryException) cause;
+            }
+            if( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            }
+            if( cause instanceof Error ) {
+                throw (Error) cause;
+            }
+            throw new InventoryException("Error gathering inventory", cause);
+        }
+    }
+
+    @Override
+    public void close() {
+        if( owner ) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Daemon threads so a stuck HTTP call can never keep the JVM alive after we've printed our output.
+     */
+    private static class FetchThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "oo-fetch-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
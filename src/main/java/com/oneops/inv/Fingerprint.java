@@ -0,0 +1,85 @@
+package com.oneops.inv;
+
+import com.oneops.api.resource.model.CiResource;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A checksum of CiResources, to tell whether OneOps has changed anything since they were last fetched.
+ *
+ * Every field, attribute and additional property counts, with object keys sorted, so two fetches of the same
+ * CIs give the same fingerprint whatever order their maps iterate in.  The order of lists does count.
+ */
+public final class Fingerprint
+{
+    private Fingerprint() {
+    }
+
+    /**
+     * Fingerprint of CiResources, lists of them, and strings - such as an earlier fingerprint.
+     */
+    public static String of(Object... parts) {
+        StringBuilder canonical = new StringBuilder();
+        for( Object part : parts ) {
+            append(canonical, part);
+            canonical.append('\n');
+        }
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("No SHA-256", e);
+        }
+        byte[] hash = digest.digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for( byte b : hash ) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void append(StringBuilder canonical, Object value) {
+        if( value instanceof CiResource ) {
+            value = CiResourceJson.toJson((CiResource) value);
+        } else if( value instanceof List ) {
+            JSONArray array = new JSONArray();
+            for( Object element : (List<?>) value ) {
+                array.put(element instanceof CiResource ? CiResourceJson.toJson((CiResource) element) : element);
+            }
+            value = array;
+        } else {
+            value = JSONObject.wrap(value);
+        }
+
+        if( value instanceof JSONObject ) {
+            JSONObject object = (JSONObject) value;
+            List<String> keys = new ArrayList<String>(object.keySet());
+            Collections.sort(keys);
+            canonical.append('{');
+            for( String key : keys ) {
+                canonical.append(JSONObject.quote(key)).append(':');
+                append(canonical, object.opt(key));
+                canonical.append(',');
+            }
+            canonical.append('}');
+        } else if( value instanceof JSONArray ) {
+            JSONArray array = (JSONArray) value;
+            canonical.append('[');
+            for( int i = 0; i < array.length(); i++ ) {
+                append(canonical, array.opt(i));
+                canonical.append(',');
+            }
+            canonical.append(']');
+        } else {
+            canonical.append(JSONObject.valueToString(value));
+        }
+    }
+}
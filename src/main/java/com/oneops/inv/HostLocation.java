@@ -0,0 +1,50 @@
+package com.oneops.inv;
+
+/**
+ * Where a host lives in its assembly: the environment and platform that have to be crawled to find it again.
+ */
+public class HostLocation
+{
+    private final String environment;
+
+    private final String platform;
+
+    public HostLocation(String environment, String platform) {
+        this.environment = environment;
+        this.platform = platform;
+    }
+
+    public String getEnvironment() {
+        return environment;
+    }
+
+    public String getPlatform() {
+        return platform;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        HostLocation that = (HostLocation) o;
+
+        if (!environment.equals(that.environment)) return false;
+        return platform.equals(that.platform);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = environment.hashCode();
+        result = 31 * result + platform.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "HostLocation{" +
+                "environment='" + environment + '\'' +
+                ", platform='" + platform + '\'' +
+                '}';
+    }
+}
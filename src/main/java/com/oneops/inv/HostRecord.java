@@ -0,0 +1,290 @@
+package com.oneops.inv;
+
+import com.oneops.api.resource.model.CiResource;
+
+import javax.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compute, with everything its hostvars need from the compute and from its hostname and os siblings.
+ *
+ * The operations CiResources carry every attribute OneOps has, plus a JSON document packed into a string, and
+ * an assembly has several of them per host.  We copy out the few fields the inventory prints as soon as a
+ * platform is gathered, and let the CiResources go.
+ */
+public final class HostRecord
+{
+    private static final Set<String> METADATA_FIELDS = new HashSet<String>(Arrays.asList(
+            "organization", "assembly", "environment", "platform", "owner", "mgmt_url", "component", "instance"));
+
+    private final long ciId;
+
+    private final String ciName;
+
+    private final String componentName;
+
+    private final String nsPath;
+
+    private final String cloud;
+
+    private final PlatformRecord platform;
+
+    @Nullable
+    private final String hostId;
+
+    // Compute attributes
+    private final String publicIp;
+    private final String privateIp;
+    private final String instanceName;
+    private final String instanceId;
+    private final String physicalHostId;
+    private final String hypervisor;
+    private final String availabilityZone;
+    private final String size;
+    private final String cores;
+    private final String ram;
+    private final String serverImageName;
+    private final String serverImageId;
+    private final String vmState;
+
+    // From the "metadata" attribute, as JSON values
+    private final Object organization;
+    private final Object assembly;
+    private final Object environment;
+    private final Object platformName;
+    private final Object owner;
+    private final Object mgmtUrl;
+    private final Object component;
+    private final Object instance;
+
+    // From the siblings
+    @Nullable
+    private final List<String> hostnames;
+    @Nullable
+    private final String osType;
+    @Nullable
+    private final String osName;
+
+    /**
+     * @param compute The compute operations instance
+     * @param componentName Name of the compute's transition component
+     * @param platform The platform the compute is in
+     * @param hostId The host identifier, worked out according to the host method
+     * @param hostnames Hostnames of the compute's hostname sibling, or {@code null} if it has none
+     * @param os The compute's os sibling, or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public HostRecord(CiResource compute, String componentName, PlatformRecord platform, @Nullable String hostId,
+                      @Nullable List<String> hostnames, @Nullable CiResource os) {
+        this.ciId = compute.getCiId();
+        this.ciName = compute.getCiName();
+        this.componentName = intern(componentName);
+        this.nsPath = intern(compute.getNsPath());
+        this.cloud = intern(((Map<String,String>) compute.getAdditionalProperties().get("deployedTo")).get("ciName"));
+        this.platform = platform;
+        this.hostId = hostId;
+
+        this.publicIp = attribute(compute, "public_ip");
+        this.privateIp = attribute(compute, "private_ip");
+        this.instanceName = attribute(compute, "instance_name");
+        this.instanceId = attribute(compute, "instance_id");
+        this.physicalHostId = attribute(compute, "host_id");
+        this.hypervisor = intern(attribute(compute, "hypervisor"));
+        this.availabilityZone = intern(attribute(compute, "availability_zone"));
+        this.size = intern(attribute(compute, "size"));
+        this.cores = intern(attribute(compute, "cores"));
+        this.ram = intern(attribute(compute, "ram"));
+        this.serverImageName = intern(attribute(compute, "server_image_name"));
+        this.serverImageId = intern(attribute(compute, "server_image_id"));
+        this.vmState = intern(attribute(compute, "vm_state"));
+
+        /**
+         * There is a "metadata" property in additional properties that is a string of JSON.  We pull our fields
+         * out of it once per host.
+         */
+        Map<String, Object> metadata = JsonFields.fields( attribute(compute, "metadata"), METADATA_FIELDS );
+        this.organization = internValue(metadata.get("organization"));
+        this.assembly = internValue(metadata.get("assembly"));
+        this.environment = internValue(metadata.get("environment"));
+        this.platformName = internValue(metadata.get("platform"));
+        this.owner = internValue(metadata.get("owner"));
+        this.mgmtUrl = internValue(metadata.get("mgmt_url"));
+        this.component = internValue(metadata.get("component"));
+        this.instance = metadata.get("instance");
+
+        this.hostnames = hostnames == null ? null : Collections.unmodifiableList(hostnames);
+        this.osType = os == null ? null : intern(attribute(os, "ostype"));
+        this.osName = os == null ? null : intern(attribute(os, "osname"));
+    }
+
+    /**
+     * An attribute of a CiResource as a string, or {@code null} if it isn't set.
+     */
+    @Nullable
+    static String attribute(CiResource ci, String name) {
+        Object value = ci.getCiAttributes().getAdditionalProperties().get(name);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * Names, sizes and images repeat across every host of an assembly, so we keep one copy of each.
+     */
+    @Nullable
+    static String intern(@Nullable String value) {
+        return value == null ? null : value.intern();
+    }
+
+    @Nullable
+    private static Object internValue(@Nullable Object value) {
+        return value instanceof String ? ((String) value).intern() : value;
+    }
+
+    public long getCiId() {
+        return ciId;
+    }
+
+    public String getCiName() {
+        return ciName;
+    }
+
+    public String getComponentName() {
+        return componentName;
+    }
+
+    public String getNsPath() {
+        return nsPath;
+    }
+
+    public String getCloud() {
+        return cloud;
+    }
+
+    public PlatformRecord getPlatform() {
+        return platform;
+    }
+
+    /**
+     * The host identifier in the inventory, {@code null} if a hostname was asked for and there is none.
+     */
+    @Nullable
+    public String getHostId() {
+        return hostId;
+    }
+
+    public String getPublicIp() {
+        return publicIp;
+    }
+
+    public String getPrivateIp() {
+        return privateIp;
+    }
+
+    public String getInstanceName() {
+        return instanceName;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * The "host_id" attribute - the hypervisor host the compute runs on, not our host identifier.
+     */
+    public String getPhysicalHostId() {
+        return physicalHostId;
+    }
+
+    public String getHypervisor() {
+        return hypervisor;
+    }
+
+    public String getAvailabilityZone() {
+        return availabilityZone;
+    }
+
+    public String getSize() {
+        return size;
+    }
+
+    public String getCores() {
+        return cores;
+    }
+
+    public String getRam() {
+        return ram;
+    }
+
+    public String getServerImageName() {
+        return serverImageName;
+    }
+
+    public String getServerImageId() {
+        return serverImageId;
+    }
+
+    public String getVmState() {
+        return vmState;
+    }
+
+    public Object getOrganization() {
+        return organization;
+    }
+
+    public Object getAssembly() {
+        return assembly;
+    }
+
+    public Object getEnvironment() {
+        return environment;
+    }
+
+    public Object getPlatformName() {
+        return platformName;
+    }
+
+    public Object getOwner() {
+        return owner;
+    }
+
+    public Object getMgmtUrl() {
+        return mgmtUrl;
+    }
+
+    public Object getComponent() {
+        return component;
+    }
+
+    public Object getInstance() {
+        return instance;
+    }
+
+    @Nullable
+    public List<String> getHostnames() {
+        return hostnames;
+    }
+
+    @Nullable
+    public String getOsType() {
+        return osType;
+    }
+
+    @Nullable
+    public String getOsName() {
+        return osName;
+    }
+
+    @Override
+    public String toString() {
+        return "HostRecord{" +
+                "ciId=" + ciId +
+                ", ciName='" + ciName + '\'' +
+                ", hostId='" + hostId + '\'' +
+                '}';
+    }
+}
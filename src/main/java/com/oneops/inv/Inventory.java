@@ -2,17 +2,21 @@ package com.oneops.inv;
 
 import com.oneops.api.OOInstance;
 import com.oneops.api.exception.OneOpsClientAPIException;
-import com.oneops.api.resource.Cloud;
-import com.oneops.api.resource.Design;
-import com.oneops.api.resource.Operation;
-import com.oneops.api.resource.Transition;
 import com.oneops.api.resource.model.CiResource;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.*;
+import java.util.regex.Pattern;
 
 
 /**
@@ -20,18 +24,61 @@ import java.util.*;
  */
 public class Inventory
 {
+    /**
+     * Number of OneOps API calls gathered concurrently unless told otherwise.
+     */
+    public static final int DEFAULT_FETCH_PARALLELISM = 8;
+
+    /**
+     * Number of threads rendering hostvars unless told otherwise.
+     */
+    public static final int DEFAULT_RENDER_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Hosts rendered at a time when streaming.  Enough to keep every render thread busy, few enough that
+     * --list still only holds a small part of the hostvars in memory.
+     */
+    private static final int RENDER_BATCH = 1024;
+
+    /**
+     * Flight Recorder events if this JDK has them, looked up once.
+     */
+    private static final InventoryEvents DEFAULT_EVENTS = InventoryEvents.load();
+
     private String org;
     private String assembly;
     private String env;
     private String apiToken;
     private String endpoint;
     private String hostMethod;
+    private int fetchParallelism = DEFAULT_FETCH_PARALLELISM;
+    private int renderParallelism = DEFAULT_RENDER_PARALLELISM;
+    private boolean hostVariables = true;
+    private ComponentSelection componentSelection;
+    @Nullable
+    private File recordFile;
+    @Nullable
+    private File replayFile;
+    @Nullable
+    private RecordingSource recording;
+    @Nullable
+    private InventoryStats stats;
+    private InventoryEvents events = DEFAULT_EVENTS;
+    @Nullable
+    private FetchEngine fetchEngine;
+    @Nullable
+    private SharedClouds sharedClouds;
+    @Nullable
+    private CallGovernor callGovernor;
+    @Nullable
+    private String groupPrefix;
     
     /* 
     A regular expression to match valid IPv4 addresses. This is used to exclude IP addresses from the list of hostnames.
     as oneops returns the IP as a hostname, causing IPs to be used even when OO_HOST_METHOD is set to "hostname"
     */
     private static final String IPV4_REGEX = "((25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)\\.){3}(25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)";
+    private static final Pattern IPV4_PATTERN = Pattern.compile(IPV4_REGEX);
 
     /**
      * A confusing group of collections.  Quick explanation - we grab all the compute
@@ -41,83 +88,50 @@ public class Inventory
      * It's confusing, but read the comments inline and you'll understand the purpose of each one.
      */
 
-    // All Compute Type CiResources for an Assembly
-    private List<CiResource> allHosts = new ArrayList<CiResource>();
+    // All computes for an Assembly, projected to HostRecords as soon as their platform is gathered
+    private List<HostRecord> allHosts = new ArrayList<HostRecord>();
 
     // All Cloud CiResources - Used to lookup Cloud names from compute references
     private Map<String,CiResource> allClouds = new HashMap<String,CiResource>();
 
     /**
-     *     Map of CiResources by the host identifier (which is configurable via hostMethod)
+     *     Map of hosts by the host identifier (which is configurable via hostMethod)
      *
      *     Why do we need this?  OneOps doesn't provide a way to look up a compute by IP address directly.
      *     We generate this index when we iterate through computes.   This seems like a hack, and I'm sure
      *     we could make a separate call to the Search API to gather this data.
      */
-    private Map<String, CiResource> hostsById = new HashMap<String, CiResource>();
-
-    /**
-     *     Mapping between compute operations CiResource and the associated compute transition CiResource
-     *
-     *     Confused?  You should be - many "operations" CiResources for a compute instance map to a "transition"
-     *     CiResource for this compute. Because certain assemblies use multiple compute components within a platform
-     *     we need to reference the compute oo_component_name.  This is mostly to enable the use case for teams that
-     *     handle data that have multiple compute components (not a common use case, but an important one.)
-     */
-    private Map<CiResource,CiResource> computeComponent = new HashMap<CiResource,CiResource>();
+    private Map<String, HostRecord> hostsById = new HashMap<String, HostRecord>();
 
     /**
-     * A Map between the name of the compute component and a map of computes by "instance id" - see below
-     *
-     * What is an instance name? If a component instance is named "compute-1111223-2" the instance name is "1111223-2" this
-     * identifier is used to identify the dependencies and relationships between related components.   This Map
-     * stores a key "hostname" and the map it contains stores instance-ids.
-     *
-     * Why? When we generate hostvars we need to find an instance's sibling component for "os" and "hostname".
-     *
-     * Yes, this is confusing.  A better API that returns a group of related CiResources would help here.
+     * These Maps are here to hold Ansible groups.  We populate these as we cycle through all hosts.  Linked, so
+     * groups come out in the order they were gathered.
      */
-    private Map<String,Map<String,CiResource>> instanceMapsByComponentName = new HashMap<String,Map<String,CiResource>>();
+    // Hosts grouped by Environment
+    private Map<EnvironmentRecord, List<HostRecord>> envHosts = new LinkedHashMap<EnvironmentRecord, List<HostRecord>>();
 
-    /**
-     * Every cloud is associated with zero or more cloud variables.  We include these as hostvars
-     */
-    private Map<CiResource, List<CiResource>> cloudVarsMap = new HashMap<CiResource, List<CiResource>>();
+    // Hosts grouped by Platform
+    private Map<PlatformRecord, List<HostRecord>> platformHosts = new LinkedHashMap<PlatformRecord, List<HostRecord>>();
 
-    /**
-     * Every environment is associated with zero or more global variables.  We include these both
-     * as groupvars and as hostvars.
-     */
-    private Map<CiResource, List<CiResource>> globalVarsMap = new HashMap<CiResource, List<CiResource>>();
+    // Hosts grouped by Platform and Compute Type
+    private Map<PlatformCompute, List<HostRecord>> platformComputeHosts = new LinkedHashMap<PlatformCompute, List<HostRecord>>();
 
     /**
-     * Every platform is associated with zero or more local variables.  We include these both
-     * as groupvars and as hostvars.
+     * What every environment and platform was last gathered from, so {@link #refresh()} can tell which ones
+     * changed.  Only kept when refreshing incrementally, see {@link #setRefreshMaxAge(long)}.
      */
-    private Map<CiResource, List<CiResource>> platformVarsMap = new HashMap<CiResource, List<CiResource>>();
+    private Map<String, EnvironmentState> environmentStates = new HashMap<String, EnvironmentState>();
+    private Map<List<String>, PlatformState> platformStates = new HashMap<List<String>, PlatformState>();
 
+    // The states of the gather before, while refresh() gathers
+    private Map<String, EnvironmentState> previousEnvironmentStates = Collections.emptyMap();
+    private Map<List<String>, PlatformState> previousPlatformStates = Collections.emptyMap();
 
     /**
-     * These Maps are here to hold Ansible groups.  We populate these as we cycle through all hosts.
+     * Milliseconds an unchanged platform's hosts are reused by {@link #refresh()}, 0 to gather everything
+     * every time.
      */
-    // List of Compute Typed CiResources grouped by Assembly
-    private Map<CiResource, List<CiResource>> assemblyHosts = new HashMap<CiResource, List<CiResource>>();
-
-    // List of Compute Typed CiResources grouped by Environment
-    private Map<CiResource, List<CiResource>> envHosts = new HashMap<CiResource, List<CiResource>>();
-
-    // List of Compute Typed CiResources grouped by Platform
-    private Map<CiResource, List<CiResource>> platformHosts = new HashMap<CiResource, List<CiResource>>();
-
-    // List of Compute Typed CiResources grouped by Platform and Compute Type
-    private Map<PlatformCompute, List<CiResource>> platformComputeHosts = new HashMap<PlatformCompute, List<CiResource>>();
-
-    /**
-     * Allows us to quickly get a reference to the environment and platform for a particular host or platform.
-     */
-    private Map<CiResource,CiResource> envByHostMap = new HashMap<CiResource,CiResource>();
-    private Map<CiResource,CiResource> envByPlatformMap = new HashMap<CiResource, CiResource>();
-    private Map<CiResource,CiResource> platformByHostMap = new HashMap<CiResource,CiResource>();
+    private long refreshMaxAge;
 
 
 
@@ -136,6 +150,7 @@ public class Inventory
         this.apiToken = apiToken;
         this.endpoint = endpoint;
         this.hostMethod = hostMethod;
+        this.componentSelection = ComponentSelection.forList();
     }
 
     /**
@@ -143,155 +158,726 @@ public class Inventory
      * method will invoke OneOps APIs and iterate through all computes.
      */
     public void initialize() throws InventoryException {
-        OOInstance instance = new OOInstance();
+        initialize(createSource());
+        saveRecording();
+    }
+
+    /**
+     * Initialize the Inventory object from the given source of OneOps data.  Pass a {@link MemoizingSource}
+     * unless the source already avoids repeated calls.
+     */
+    public void initialize(OneOpsSource source) throws InventoryException {
+        long start = System.nanoTime();
+        InventoryEvents.Phase phase = events.beginPhase(InventoryStats.PHASE_GATHER);
+        gatherOneOpsData(source, env);
+        phase.end(allHosts.size(), groupCount());
+        addPhase(InventoryStats.PHASE_GATHER, start);
+    }
+
+    /**
+     * Initialize the Inventory object with just enough OneOps data to generate a single host, instead of
+     * crawling the whole assembly.
+     *
+     * @param hostId The host identifier, as given to --host
+     * @param location Where the host was last seen, or {@code null} if we don't know
+     * @return {@code false} if the host wasn't found
+     */
+    public boolean initializeHost(String hostId, @Nullable HostLocation location) throws InventoryException {
+        boolean found = initializeHost(createSource(), hostId, location);
+        saveRecording();
+        return found;
+    }
+
+    /**
+     * Initialize the Inventory object with just enough data from the given source to generate a single host.
+     */
+    public boolean initializeHost(OneOpsSource source, String hostId, @Nullable HostLocation location) throws InventoryException {
+        long start = System.nanoTime();
+        InventoryEvents.Phase phase = events.beginPhase(InventoryStats.PHASE_GATHER);
+        boolean found = gatherHost(source, env, hostId, location);
+        phase.end(allHosts.size(), groupCount());
+        addPhase(InventoryStats.PHASE_GATHER, start);
+        return found;
+    }
+
+    /**
+     * Gather the inventory again, into the same indexes.
+     *
+     * When refreshing incrementally, environments, platforms, their components and their variables are
+     * listed again - a few small calls per platform - and a platform whose CIs all have the same fingerprint
+     * as last time keeps the hosts it had, without listing its instances, the large and slow part of a crawl.
+     * Changes that only touch operations instances, such as a compute replaced in place, don't show in any of
+     * those CIs, which is why a platform's hosts are only reused until they are older than the maximum age.
+     * The indexes come out in the same order a full gather would give, so the output is the same.
+     */
+    public void refresh() throws InventoryException {
+        refresh(createSource());
+        saveRecording();
+    }
+
+    /**
+     * Gather the inventory again from the given source, see {@link #refresh()}.
+     */
+    public void refresh(OneOpsSource source) throws InventoryException {
+        previousEnvironmentStates = environmentStates;
+        previousPlatformStates = platformStates;
+        environmentStates = new HashMap<String, EnvironmentState>();
+        platformStates = new HashMap<List<String>, PlatformState>();
+
+        allHosts.clear();
+        allClouds.clear();
+        hostsById.clear();
+        envHosts.clear();
+        platformHosts.clear();
+        platformComputeHosts.clear();
+        try {
+            initialize(source);
+        } catch (InventoryException e) {
+            // Nothing was merged, so the next refresh can still reuse what the last good one gathered
+            environmentStates = previousEnvironmentStates;
+            platformStates = previousPlatformStates;
+            throw e;
+        } finally {
+            previousEnvironmentStates = Collections.emptyMap();
+            previousPlatformStates = Collections.emptyMap();
+        }
+    }
+
+    /**
+     * How long {@link #refresh()} may reuse the hosts of a platform whose CIs haven't changed, in milliseconds.
+     * 0, the default, gathers every platform on every refresh.
+     */
+    public void setRefreshMaxAge(long refreshMaxAge) {
+        this.refreshMaxAge = refreshMaxAge;
+    }
+
+    private boolean isIncremental() {
+        return refreshMaxAge > 0;
+    }
+
+    private OneOpsSource createSource() throws InventoryException {
+        OneOpsSource source;
+        if( replayFile != null ) {
+            source = loadReplay(replayFile);
+        } else {
+            OOInstance instance = new OOInstance();
+
+            instance.setAuthtoken(apiToken);
+            instance.setOrgname(org);
+            instance.setEndpoint(endpoint);
+            instance.setAssembly(assembly);
+            instance.setEnvironment(env);
+
+            source = new ClientSource(instance, assembly);
+        }
+
+        if( stats != null ) {
+            source = new StatsSource(source, stats);
+        }
+        if( events.isActive() ) {
+            source = new EventSource(source, events, org);
+        }
+        if( callGovernor != null && replayFile == null ) {
+            source = new ResilientSource(source, callGovernor);
+        }
+        if( recordFile != null && replayFile == null ) {
+            recording = new RecordingSource(source, org, assembly);
+            source = recording;
+        }
+        return new MemoizingSource(source);
+    }
+
+    private ReplaySource loadReplay(File file) throws InventoryException {
+        ReplaySource replay;
+        try {
+            replay = ReplaySource.load(file);
+        } catch (IOException e) {
+            throw new InventoryException("Error reading OneOps recording " + file, e);
+        }
+        if( !replay.getOrg().equals(org) || !replay.getAssembly().equals(assembly) ) {
+            throw new InventoryException("OneOps recording " + file + " is of " + replay.getOrg() + "/"
+                    + replay.getAssembly() + ", not " + org + "/" + assembly);
+        }
+        return replay;
+    }
 
-        instance.setAuthtoken(apiToken);
-        instance.setOrgname(org);
-        instance.setEndpoint(endpoint);
-        instance.setAssembly(assembly);
-        instance.setEnvironment(env);
+    /**
+     * Save what was recorded while initializing, if we were asked to record.
+     */
+    private void saveRecording() throws InventoryException {
+        if( recording == null ) {
+            return;
+        }
+        try {
+            recording.save(recordFile);
+        } catch (IOException e) {
+            throw new InventoryException("Error writing OneOps recording " + recordFile, e);
+        }
+    }
 
-        gatherOneOpsData(instance, assembly, env);
+    /**
+     * Record every OneOps response the next {@link #initialize()} or {@link #initializeHost(String, HostLocation)}
+     * receives into this file, for {@link #setReplayFile(File)} to play back.
+     */
+    public void setRecordFile(@Nullable File recordFile) {
+        this.recordFile = recordFile;
+    }
+
+    /**
+     * Initialize from the OneOps responses recorded in this file instead of calling OneOps.
+     */
+    public void setReplayFile(@Nullable File replayFile) {
+        this.replayFile = replayFile;
+    }
+
+    /**
+     * Where to record API call latencies and phase times, {@code null} not to.  Calls are only timed when
+     * OneOps is called through {@link #initialize()} or {@link #initializeHost(String, HostLocation)}.
+     */
+    public void setStats(@Nullable InventoryStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Where to report API calls and phases, for a profiler.  Defaults to Flight Recorder events when the JDK
+     * has them.
+     */
+    public void setEvents(InventoryEvents events) {
+        this.events = events;
+    }
+
+    /**
+     * Run API calls on a share of this engine instead of on threads of our own, so inventories crawled at the
+     * same time keep to one budget of calls in flight.  {@code null} for our own, sized by the fetch parallelism.
+     */
+    public void setFetchEngine(@Nullable FetchEngine fetchEngine) {
+        this.fetchEngine = fetchEngine;
+    }
+
+    /**
+     * List clouds through these, shared with the other inventories of the org, instead of on our own.
+     */
+    public void setSharedClouds(@Nullable SharedClouds sharedClouds) {
+        this.sharedClouds = sharedClouds;
+    }
+
+    /**
+     * Put this in front of every environment, platform and platform compute group name, and qualify platform
+     * groups with their environment even when there is only one, so the groups of several inventories can be
+     * merged.  {@code null}, the default, leaves the names as they are.
+     */
+    public void setGroupPrefix(@Nullable String groupPrefix) {
+        this.groupPrefix = groupPrefix;
+    }
+
+    /**
+     * Make live API calls through this, shared with every inventory calling the same OneOps, so they are paced
+     * and retried together.  {@code null}, the default, calls OneOps directly.  Never used when replaying.
+     */
+    public void setCallGovernor(@Nullable CallGovernor callGovernor) {
+        this.callGovernor = callGovernor;
+    }
+
+    private FetchEngine newFetchEngine() {
+        return fetchEngine != null ? fetchEngine.share() : new FetchEngine(fetchParallelism);
+    }
+
+    /**
+     * Number of groups in the list: oo, and every environment, platform and platform compute group.
+     */
+    int groupCount() {
+        return 1 + envHosts.size() + platformHosts.size() + platformComputeHosts.size();
+    }
+
+    /**
+     * Names of every group but oo, in the order they are listed.
+     */
+    List<String> groupNames() {
+        List<String> names = new ArrayList<String>(groupCount() - 1);
+        for(EnvironmentRecord environment : envHosts.keySet()) {
+            names.add(environmentGroupName(environment));
+        }
+        for(PlatformRecord platform : platformHosts.keySet()) {
+            names.add(platformGroupName(platform));
+        }
+        for(PlatformCompute platformCompute : platformComputeHosts.keySet()) {
+            names.add(platformComputeGroupName(platformCompute));
+        }
+        return names;
+    }
+
+    /**
+     * Add the time since start to a phase, if we are keeping stats.
+     */
+    private void addPhase(String phase, long start) {
+        if( stats != null ) {
+            stats.addPhase(phase, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Maximum number of OneOps API calls we keep in flight while gathering.  1 gives the old sequential crawl.
+     */
+    public void setFetchParallelism(int fetchParallelism) {
+        this.fetchParallelism = fetchParallelism;
+    }
+
+    /**
+     * Maximum number of threads rendering hostvars for {@link #writeList(Writer)} and
+     * {@link #writeSnapshot(OutputStream)}.  1 renders them one after another on the calling thread.
+     */
+    public void setRenderParallelism(int renderParallelism) {
+        this.renderParallelism = renderParallelism;
+    }
+
+    /**
+     * Whether every host's hostvars repeat its global and platform variables.  Without them the variables are
+     * only in the environment and platform groups, which Ansible merges into each host anyway, and the list is
+     * a fraction of the size.
+     */
+    public void setHostVariables(boolean hostVariables) {
+        this.hostVariables = hostVariables;
+    }
+
+    /**
+     * Which sibling component instances to gather.  Defaults to everything --list needs.
+     */
+    public void setComponentSelection(ComponentSelection componentSelection) {
+        this.componentSelection = componentSelection;
     }
 
     /**
      * Connect to OneOps, gather all components and hosts associated with an assembly, and
      * populate the various indexes we use to generate inventory JSON.
      *
-     * @param instance A OneOps OOInstance
-     * @param assembly The name of an assembly
+     * The API calls are fanned out in three rounds - environments, then platforms, then components - and
+     * nothing touches the indexes until every round is done.  The merge then runs on this thread and visits
+     * everything in the same order the sequential crawl did, so the output doesn't depend on timing.
+     *
+     * @param source Where to read OneOps data from
+     * @param env The name of an environment, or empty for the whole assembly
      */
-    private void gatherOneOpsData(OOInstance instance, String assembly, String env) throws InventoryException {
+    private void gatherOneOpsData(OneOpsSource source, String env) throws InventoryException {
         // Get all the Platforms
-        try {
+        try (FetchEngine engine = newFetchEngine()) {
 
             // Gather all known clouds for this instance.  We gather this because there are references
             // to clouds and we need to retrieve variables and cloud configuration.
-            Cloud cloud = new Cloud(instance);
-            List<CiResource> clouds = cloud.listClouds();
+            List<CiResource> clouds = sharedClouds != null ? sharedClouds.listClouds(source) : source.listClouds();
             for( CiResource cld : clouds ) {
                 allClouds.put( cld.getCiName(), cld );
 
                 // TODO: THERES NO WAY TO GET CLOUD VARIABLES?  WHAT?
             }
 
-            // Create DTO objects for this environment.
-            Design design = new Design(instance, assembly);
-            Transition transition = new Transition(instance, assembly);
-
+            List<CiResource> environments;
             if( StringUtils.isEmpty(env)) {
                 // If we are targeting an assembly we need to gather computes across all environments
-                List<CiResource> environments = transition.listEnvironments();
-                for (CiResource environment : environments) {
-                    gatherEnvironmentOneOpsData(instance, assembly, environment.getCiName(), design, transition, environment);
-                }
+                environments = source.listEnvironments();
             } else {
                 // If we're targeting an environment we only need to gather computes for one environment
-                gatherEnvironmentOneOpsData(instance, assembly, env, design, transition, transition.getEnvironment(env));
+                environments = Collections.singletonList(source.getEnvironment(env));
+            }
+
+            List<EnvironmentFetch> environmentFetches =
+                    engine.fetchAll(environments, environment -> fetchEnvironment(source, environment));
+
+            List<PlatformFetch> platformFetches = new ArrayList<PlatformFetch>();
+            for( EnvironmentFetch environmentFetch : environmentFetches ) {
+                platformFetches.addAll( environmentFetch.platforms );
+            }
+            engine.fetchAll(platformFetches, platformFetch -> fetchPlatform(source, platformFetch));
+
+            List<ComponentFetch> componentFetches = new ArrayList<ComponentFetch>();
+            for( PlatformFetch platformFetch : platformFetches ) {
+                if( platformFetch.reused == null ) {
+                    componentFetches.addAll( platformFetch.components );
+                }
+            }
+            engine.fetchAll(componentFetches, componentFetch -> fetchComponent(source, componentFetch));
+
+            for( EnvironmentFetch environmentFetch : environmentFetches ) {
+                mergeEnvironmentOneOpsData(environmentFetch);
             }
 
         } catch ( OneOpsClientAPIException e ) {
-            // TODO: Better error handling please.
-            e.printStackTrace();
-            System.err.println( "Error interacting with OneOps" );
+            // Nothing is merged until every call succeeded, so the indexes never hold part of a crawl
+            throw new InventoryException("Error interacting with OneOps", e);
         }
     }
 
-    private void gatherEnvironmentOneOpsData(OOInstance instance, String assembly, String env, Design design, Transition transition, CiResource environment) throws OneOpsClientAPIException, InventoryException {
-        Operation operation = new Operation(instance, assembly, environment.getCiName());
-        List<CiResource> platforms = transition.listPlatforms(env);
-        globalVarsMap.put(environment, transition.listGlobalVariables(environment.getCiName()));
+    /**
+     * Gather only the platform a host lives in.
+     *
+     * If we know where the host was last seen that costs a handful of API calls, one environment and one
+     * platform.  If we don't, or it has moved, we search the platforms a batch at a time and stop at the first
+     * batch that has it - there is no API to look a compute up by IP address or hostname.
+     *
+     * @param source Where to read OneOps data from
+     * @param env The name of an environment, or empty for the whole assembly
+     * @param hostId The host identifier to look for
+     * @param location Where the host was last seen, or {@code null}
+     * @return {@code false} if the host wasn't found
+     */
+    private boolean gatherHost(OneOpsSource source, String env, String hostId, @Nullable HostLocation location) throws InventoryException {
+        try (FetchEngine engine = newFetchEngine()) {
+            PlatformFetch searched = null;
+
+            if( location != null && (StringUtils.isEmpty(env) || env.equals(location.getEnvironment())) ) {
+                try {
+                    EnvironmentFetch environmentFetch = fetchEnvironment(source, source.getEnvironment(location.getEnvironment()));
+                    for( PlatformFetch platformFetch : environmentFetch.platforms ) {
+                        if( platformFetch.platform.getCiName().equals(location.getPlatform()) ) {
+                            searched = platformFetch;
+                            gatherPlatforms(source, engine, Collections.singletonList(platformFetch));
+                        }
+                    }
+                } catch ( OneOpsUnavailableException e ) {
+                    throw e;
+                } catch ( OneOpsClientAPIException e ) {
+                    // The environment is gone, look everywhere else
+                }
+                if( hostsById.containsKey(hostId) ) {
+                    return true;
+                }
+            }
 
-        for (CiResource platform : platforms) {
-            // Gather a list of components in the platform.
-            List<CiResource> components = transition.listPlatformComponents(env,platform.getCiName());
+            List<CiResource> environments;
+            if( StringUtils.isEmpty(env)) {
+                environments = source.listEnvironments();
+            } else {
+                environments = Collections.singletonList(source.getEnvironment(env));
+            }
 
-            envByPlatformMap.put(platform, environment);
+            List<PlatformFetch> platformFetches = new ArrayList<PlatformFetch>();
+            for( EnvironmentFetch environmentFetch : engine.fetchAll(environments, environment -> fetchEnvironment(source, environment)) ) {
+                for( PlatformFetch platformFetch : environmentFetch.platforms ) {
+                    if( searched == null || !sameCi(platformFetch.environmentFetch.environment, searched.environmentFetch.environment)
+                            || !sameCi(platformFetch.platform, searched.platform) ) {
+                        platformFetches.add( platformFetch );
+                    }
+                }
+            }
 
-            // Create a Map of CiResource instances indexed by components and instance name.
-            gatherInstanceMapsByComponentName(operation, environment, platform, components);
-            platformVarsMap.put(platform, transition.listPlatformVariables(environment.getCiName(), platform.getCiName()));
+            for( int from = 0; from < platformFetches.size(); from += fetchParallelism ) {
+                int to = Math.min(from + fetchParallelism, platformFetches.size());
+                gatherPlatforms(source, engine, platformFetches.subList(from, to));
+                if( hostsById.containsKey(hostId) ) {
+                    return true;
+                }
+            }
 
-            // Retrieve all hosts from these platforms
-            gatherAllHosts(operation,
-                    environment,
-                    platform,
-                    components);
+        } catch ( OneOpsClientAPIException e ) {
+            throw new InventoryException("Error interacting with OneOps", e);
+        }
+        return false;
+    }
+
+    private static boolean sameCi(CiResource a, CiResource b) {
+        return StringUtils.equals(a.getCiName(), b.getCiName());
+    }
+
+    /**
+     * Fetch and merge a few platforms.
+     */
+    private void gatherPlatforms(OneOpsSource source, FetchEngine engine, List<PlatformFetch> platformFetches)
+            throws OneOpsClientAPIException, InventoryException {
+        engine.fetchAll(platformFetches, platformFetch -> fetchPlatform(source, platformFetch));
+
+        List<ComponentFetch> componentFetches = new ArrayList<ComponentFetch>();
+        for( PlatformFetch platformFetch : platformFetches ) {
+            componentFetches.addAll( platformFetch.components );
+        }
+        engine.fetchAll(componentFetches, componentFetch -> fetchComponent(source, componentFetch));
+
+        for( PlatformFetch platformFetch : platformFetches ) {
+            mergePlatformOneOpsData(platformFetch);
+        }
+    }
+
+    /**
+     * Fetch the platforms and global variables of one environment.  Runs on a fetch thread.
+     */
+    private EnvironmentFetch fetchEnvironment(OneOpsSource source, CiResource environment) throws OneOpsClientAPIException {
+        EnvironmentFetch fetch = new EnvironmentFetch(environment);
+        for( CiResource platform : source.listPlatforms(environment.getCiName()) ) {
+            fetch.platforms.add( new PlatformFetch(fetch, platform) );
+        }
+        fetch.globalVars = source.listGlobalVariables(environment.getCiName());
+        if( isIncremental() ) {
+            fetch.fingerprint = Fingerprint.of(environment, fetch.globalVars);
+        }
+        return fetch;
+    }
+
+    /**
+     * Fetch the components and local variables of one platform.  Runs on a fetch thread.
+     */
+    private PlatformFetch fetchPlatform(OneOpsSource source, PlatformFetch fetch) throws OneOpsClientAPIException {
+        CiResource environment = fetch.environmentFetch.environment;
+        String envName = environment.getCiName();
+        String platformName = fetch.platform.getCiName();
+
+        // Gather a list of components in the platform.
+        for( CiResource component : source.listPlatformComponents(envName, platformName) ) {
+            fetch.components.add( new ComponentFetch(environment, fetch.platform, component) );
+        }
+        fetch.variables = source.listPlatformVariables(envName, platformName);
+
+        if( isIncremental() ) {
+            List<CiResource> components = new ArrayList<CiResource>(fetch.components.size());
+            for( ComponentFetch componentFetch : fetch.components ) {
+                components.add( componentFetch.component );
+            }
+            fetch.fingerprint = Fingerprint.of(fetch.environmentFetch.fingerprint, fetch.platform, components, fetch.variables);
+
+            PlatformState previous = previousPlatformStates.get(Arrays.asList(envName, platformName));
+            if( previous != null && previous.fingerprint.equals(fetch.fingerprint)
+                    && System.currentTimeMillis() - previous.gatheredAt < refreshMaxAge ) {
+                fetch.reused = previous;
+            }
+        }
+        return fetch;
+    }
+
+    /**
+     * Fetch the operations instances of one component.  Runs on a fetch thread.
+     *
+     * Sibling instances are only listed for components in the {@link ComponentSelection}.  Errors OneOps answers
+     * listing them are ignored, exactly like the sequential crawl did, but not an API that stayed unavailable
+     * through every retry - that would quietly drop hostvars - and not a failure listing computes.
+     *
+     * A compute component that is also selected is asked for twice, but the memoizing source turns that into
+     * a single API call.
+     */
+    private ComponentFetch fetchComponent(OneOpsSource source, ComponentFetch fetch) throws OneOpsClientAPIException {
+        String envName = fetch.environment.getCiName();
+        String platformName = fetch.platform.getCiName();
+        String componentName = fetch.component.getCiName();
+
+        if( componentSelection.isSelected(fetch.component) ) {
+            try {
+                fetch.instances = source.listInstances(envName, platformName, componentName);
+            } catch(OneOpsUnavailableException e) {
+                throw e;
+            } catch(OneOpsClientAPIException e) {
+                //System.err.println( "Error fetching instances of " + component.getCiName());
+            }
         }
+
+        if( isCompute(fetch.component) ) {
+            fetch.computes = source.listInstances(envName, platformName, componentName);
+        }
+        return fetch;
+    }
+
+    /**
+     * Populate the indexes from everything fetched for one environment.  This is the only place the
+     * indexes are written, and it only ever runs on the thread that called {@link #initialize()}.
+     */
+    private void mergeEnvironmentOneOpsData(EnvironmentFetch fetch) throws InventoryException {
+        for (PlatformFetch platformFetch : fetch.platforms) {
+            mergePlatformOneOpsData(platformFetch);
+        }
+    }
+
+    /**
+     * Project everything fetched for one platform into records and drop it into the indexes.  Nothing keeps a
+     * reference to the fetched CiResources after this.
+     */
+    private void mergePlatformOneOpsData(PlatformFetch platformFetch) throws InventoryException {
+        EnvironmentFetch environmentFetch = platformFetch.environmentFetch;
+        if( environmentFetch.record == null ) {
+            mergeEnvironmentRecord(environmentFetch);
+        }
+
+        if( platformFetch.reused != null ) {
+            // Unchanged since the last gather - put its hosts back as they were
+            PlatformState state = platformFetch.reused;
+            for( Map.Entry<String, List<HostRecord>> computes : state.computesByComponent.entrySet() ) {
+                indexHosts(state.record, computes.getKey(), computes.getValue());
+            }
+            platformStates.put(Arrays.asList(environmentFetch.environment.getCiName(), platformFetch.platform.getCiName()), state);
+            return;
+        }
+
+        // Create a Map of CiResource instances indexed by components and instance name.
+        Map<String,Map<String,CiResource>> instanceMapsByComponentName = gatherInstanceMapsByComponentName(platformFetch.components);
+
+        // Get the first FQDN resource in the platform
+        CiResource fqdn = null;
+        Map<String, CiResource> fqdnByInstanceNum = instanceMapsByComponentName.get(ComponentSelection.FQDN);
+        if( fqdnByInstanceNum != null && fqdnByInstanceNum.size() > 0 ) {
+            fqdn = (CiResource) fqdnByInstanceNum.values().toArray()[0];
+        }
+
+        PlatformRecord platform = new PlatformRecord(platformFetch.platform, environmentFetch.record,
+                platformFetch.variables, fqdn);
+
+        // Retrieve all hosts from these platforms
+        Map<String, List<HostRecord>> computesByComponent = gatherAllHosts(platform,
+                platformFetch.components,
+                instanceMapsByComponentName);
+
+        if( isIncremental() ) {
+            platformStates.put(Arrays.asList(environmentFetch.environment.getCiName(), platformFetch.platform.getCiName()),
+                    new PlatformState(platformFetch.fingerprint, platform, computesByComponent, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Project an environment when the first of its platforms is merged, or reuse the record from the last
+     * gather if nothing about the environment changed - reused platforms still point at it.
+     */
+    private void mergeEnvironmentRecord(EnvironmentFetch environmentFetch) {
+        String name = environmentFetch.environment.getCiName();
+        EnvironmentState previous = previousEnvironmentStates.get(name);
+        if( previous != null && previous.fingerprint.equals(environmentFetch.fingerprint) ) {
+            environmentFetch.record = previous.record;
+        } else {
+            environmentFetch.record = new EnvironmentRecord(environmentFetch.environment, environmentFetch.globalVars);
+        }
+        if( isIncremental() ) {
+            environmentStates.put(name, new EnvironmentState(environmentFetch.fingerprint, environmentFetch.record));
+        }
+    }
+
+    /**
+     * GOTCHA: To identify computes we're checking the Class Name of the transition component.
+     * If it contains ".Compute" then we assume this is a host for Ansible.
+     */
+    private static boolean isCompute(CiResource component) {
+        return component.getCiClassName().contains(".Compute");
     }
 
     /**
      * Note this is possibly a misnomer - this gathers all the hosts, but it also drops each host into
      * a series of Ansible group buckets as defined in the specification.
      *
-     * @param operation OO API Operation object
-     * @param environment CiResource corresponding to the environment
-     * @param platform CiResource corresponding to the platform
-     * @param components A list of  CiResources for a compute
-     * @throws OneOpsClientAPIException
+     * @param platform The platform, with its environment
+     * @param components The fetched components of the platform, with their compute instances
+     * @param instanceMapsByComponentName The platform's sibling instances, see {@link #gatherInstanceMapsByComponentName(List)}
+     * @return The hosts of each compute component, in the order they were indexed
      */
-    private void gatherAllHosts(Operation operation,
-                                CiResource environment,
-                                CiResource platform,
-                                List<CiResource> components)
-            throws OneOpsClientAPIException, InventoryException {
-        for( CiResource component : components ) {
+    private Map<String, List<HostRecord>> gatherAllHosts(PlatformRecord platform,
+                                                         List<ComponentFetch> components,
+                                                         Map<String,Map<String,CiResource>> instanceMapsByComponentName)
+            throws InventoryException {
+        Map<String, List<HostRecord>> computesByComponent = new LinkedHashMap<String, List<HostRecord>>();
+
+        for( ComponentFetch componentFetch : components ) {
+            CiResource component = componentFetch.component;
+
+            if( isCompute(component) ) {
+                List<HostRecord> computes = new ArrayList<HostRecord>(componentFetch.computes.size());
+                for( CiResource compute : componentFetch.computes ) {
+                    computes.add( projectHost(compute, component.getCiName(), platform, instanceMapsByComponentName) );
+                }
+                indexHosts(platform, component.getCiName(), computes);
+                computesByComponent.put(component.getCiName(), computes);
+            }
+        }
+        return computesByComponent;
+    }
 
-            // GOTCHA: To identify computes we're checking the Class Name of the transition component.
-            // If it contains ".Compute" then we assume this is a host for Ansible.
-            if( component.getCiClassName().contains(".Compute") ) {
-                List<CiResource> computes = operation.listInstances( platform.getCiName(), component.getCiName() );
+    /**
+     * Drop the hosts of one compute component into the Ansible group buckets.
+     */
+    private void indexHosts(PlatformRecord platform, String componentName, List<HostRecord> computes) {
+        EnvironmentRecord environment = platform.getEnvironment();
 
-                // Add CiResources to all hosts
-                allHosts.addAll( computes );
+        // Add hosts to all hosts
+        allHosts.addAll( computes );
 
-                // Add CiResources to the envHosts
-                if(!envHosts.containsKey(environment)) {
-                    envHosts.put(environment, new ArrayList<CiResource>());
-                }
-                envHosts.get(environment).addAll(computes);
+        // Add hosts to the envHosts
+        if(!envHosts.containsKey(environment)) {
+            envHosts.put(environment, new ArrayList<HostRecord>());
+        }
+        envHosts.get(environment).addAll(computes);
 
-                // Add CiResources to the platformHosts
-                if(!platformHosts.containsKey(platform)) {
-                    platformHosts.put(platform, new ArrayList<CiResource>());
-                }
-                platformHosts.get(platform).addAll(computes);
-
-                /**
-                 * Add CiResources to the platformComputeHosts
-                 *
-                 * This is here to expose Ansible groups at the sub-platform level.  Specifically to enable teams like
-                 * BFD that have multiple compute component types.
-                 */
-                PlatformCompute platformCompute = new PlatformCompute(platform, component.getCiName());
-                if( !platformComputeHosts.containsKey( platformCompute ) ) {
-                    platformComputeHosts.put(platformCompute, new ArrayList<CiResource>());
-                }
-                platformComputeHosts.get(platformCompute).addAll(computes);
-
-                for( CiResource compute : computes ) {
-                    // This relates the operations instance of each component to the
-                    // transition component for the compute
-                    computeComponent.put( compute, component );
-
-                    // Add to hostsById
-                    // GOTCHA: OneOps has two IP addresses public and private.  I've
-                    //         made an assumption that the public_id address is what we
-                    //         are using for Ansible.
-                    String hostId = computeHostId(compute);
-                    hostsById.put( hostId, compute );
-
-                    // Two annoying maps that let us look up the corresponding env and platform for a compute
-                    envByHostMap.put( compute, environment );
-                    platformByHostMap.put( compute, platform );
-                }
+        // Add hosts to the platformHosts
+        if(!platformHosts.containsKey(platform)) {
+            platformHosts.put(platform, new ArrayList<HostRecord>());
+        }
+        platformHosts.get(platform).addAll(computes);
 
+        /**
+         * Add hosts to the platformComputeHosts
+         *
+         * This is here to expose Ansible groups at the sub-platform level.  Specifically to enable teams like
+         * BFD that have multiple compute component types.
+         */
+        PlatformCompute platformCompute = new PlatformCompute(platform, componentName);
+        if( !platformComputeHosts.containsKey( platformCompute ) ) {
+            platformComputeHosts.put(platformCompute, new ArrayList<HostRecord>());
+        }
+        platformComputeHosts.get(platformCompute).addAll(computes);
+
+        for( HostRecord host : computes ) {
+            // Add to hostsById
+            // GOTCHA: OneOps has two IP addresses public and private.  I've
+            //         made an assumption that the public_id address is what we
+            //         are using for Ansible.
+            if( host.getHostId() != null ) {
+                hostsById.put( host.getHostId().trim(), host );
             }
         }
     }
 
     /**
-     * This method iterates through all of the component instances (for everything, not just computes) and
+     * Copy what the hostvars need out of a compute and its hostname and os siblings.
+     *
+     * Confused?  Many "operations" CiResources for a compute instance map to a "transition" CiResource for this
+     * compute.  Because certain assemblies use multiple compute components within a platform we keep the name of
+     * the compute component for oo_component_name.
+     */
+    private HostRecord projectHost(CiResource compute,
+                                   String componentName,
+                                   PlatformRecord platform,
+                                   Map<String,Map<String,CiResource>> instanceMapsByComponentName)
+            throws InventoryException {
+        // Get the instance number for this computer - we need this to jump to sibling instances for
+        // hostname and os
+        String instanceNum = extractInstanceNum(compute);
+
+        // If there is a hostname component, grab the hostnames for this compute instance.
+        List<String> hostnames = null;
+        Map<String,CiResource> hostnamesByInstanceNum = instanceMapsByComponentName.get(ComponentSelection.HOSTNAME);
+        if( hostnamesByInstanceNum != null && hostnamesByInstanceNum.containsKey( instanceNum ) ) {
+            CiResource hostname = hostnamesByInstanceNum.get( instanceNum );
+            hostnames = parseHostnames( HostRecord.attribute(hostname, "entries") );
+        }
+
+        // If there is an OS, grab the OS name and type for this compute instance.
+        CiResource os = null;
+        Map<String,CiResource> osByInstanceNum = instanceMapsByComponentName.get(ComponentSelection.OS);
+        if( osByInstanceNum != null ) {
+            os = osByInstanceNum.get( instanceNum );
+        }
+
+        String hostId = computeHostId(compute, hostnamesByInstanceNum != null, hostnames);
+        return new HostRecord(compute, componentName, platform, hostId, hostnames, os);
+    }
+
+    /**
+     * The hostnames in a hostname instance's "entries", a JSON object keyed by name.
+     */
+    private static List<String> parseHostnames(@Nullable String entriesStr) {
+        List<String> hostnames = new ArrayList<String>();
+        if( entriesStr != null ) {
+            // Through a HashSet, so the names come out in the order org.json used to give us and host ids
+            // picked from the first name don't change.
+            Set<String> names = new HashSet<String>();
+            JsonFields.names(entriesStr, names);
+            hostnames.addAll(names);
+            // remove the IP if it's present -- an IP address should not be included as a hostname.
+            hostnames.removeIf(Inventory::isIpAddress);
+        }
+        return hostnames;
+    }
+
+    /**
+     * This method iterates through the component instances picked by the {@link ComponentSelection} and
      * it creates a collection of CiResources for operations instances indexed by the component name and
      * the "instance name" (see below)
      *
@@ -301,38 +887,43 @@ public class Inventory
      * "extractInstanceNum" works.
      *
      * Warning, this method is confusing.  We need it because the CiResource for a compute instance in operations
-     * does not contain a reference to related instances.
+     * does not contain a reference to related instances.  The maps only live while a platform is merged.
+     *
+     * What is an instance name? If a component instance is named "compute-1111223-2" the instance name is "1111223-2" this
+     * identifier is used to identify the dependencies and relationships between related components.
      *
-     * @param operation
-     * @param platform
-     * @param components
-     * @throws OneOpsClientAPIException
+     * @param components The fetched components of a platform, with their instances
+     * @return A map of instances by instance name for every selected component in the platform, keyed by component name
      */
-    private void gatherInstanceMapsByComponentName(Operation operation, CiResource environment, CiResource platform, List<CiResource> components) throws OneOpsClientAPIException {
-        // Gather Hostnames by IP Address
-        for( CiResource component : components ) {
-            String compositeCiName = environment.getCiName() + ":" + platform.getCiName() + ":" + component.getCiName();
+    private Map<String,Map<String,CiResource>> gatherInstanceMapsByComponentName(List<ComponentFetch> components) {
+        Map<String,Map<String,CiResource>> instanceMapsByComponentName = new HashMap<String,Map<String,CiResource>>();
+
+        for( ComponentFetch componentFetch : components ) {
+            if( !componentSelection.isSelected(componentFetch.component) ) {
+                continue;
+            }
+
+            String componentName = componentFetch.component.getCiName();
             Map<String,CiResource> instancesByInstanceNum;
-            if( instanceMapsByComponentName.containsKey( compositeCiName ) ) {
-                instancesByInstanceNum = instanceMapsByComponentName.get( compositeCiName );
+            if( instanceMapsByComponentName.containsKey( componentName ) ) {
+                instancesByInstanceNum = instanceMapsByComponentName.get( componentName );
             } else {
                 instancesByInstanceNum = new HashMap<String,CiResource>();
-                instanceMapsByComponentName.put( compositeCiName, instancesByInstanceNum );
+                instanceMapsByComponentName.put( componentName, instancesByInstanceNum );
             }
-            try {
-                List<CiResource> componentInstances = operation.listInstances(platform.getCiName(), component.getCiName());
-                for (CiResource componentInstance : componentInstances) {
+
+            // Null when OneOps answered listing the instances with an error
+            if( componentFetch.instances != null ) {
+                for (CiResource componentInstance : componentFetch.instances) {
 
                     // Ugly - have to parse the name of the component to get the instance number.
                     String instanceNum = extractInstanceNum(componentInstance);
                     instancesByInstanceNum.put(instanceNum, componentInstance);
 
                 }
-            } catch(OneOpsClientAPIException e) {
-                //System.err.println( "Error fetching instances of " + component.getCiName());
-
             }
         }
+        return instanceMapsByComponentName;
     }
 
     /**
@@ -341,20 +932,164 @@ public class Inventory
      * @throws InventoryException
      */
     public JSONObject generateList() throws InventoryException {
+        InventoryEvents.Phase phase = events.beginPhase("generateList");
         JSONObject json = new JSONObject();
 
         // Generate Host Vars for all Computes
+        long start = System.nanoTime();
         JSONObject meta = new JSONObject();
         json.put("_meta", meta );
         generateHostvars(meta);
+        addPhase(InventoryStats.PHASE_HOSTVARS, start);
+
+        start = System.nanoTime();
         generateOOGroup(json);
 
         generateEnvironmentGroups(json);
         generatePlatformGroups(json);
         generatePlatformComputeGroups(json);
+        addPhase(InventoryStats.PHASE_GROUPS, start);
+        phase.end(allHosts.size(), groupCount());
         return json;
     }
 
+    /**
+     * Write the same inventory as {@link #generateList()} to the writer as it is generated, instead of building
+     * it all in memory first.  Only one host's hostvars, or one group, is held at a time - this is what keeps
+     * --list on a large assembly from needing hundreds of MB of heap.
+     *
+     * The writer is not flushed or closed.
+     */
+    public void writeList(Writer writer) throws InventoryException, IOException {
+        InventoryEvents.Phase phase = events.beginPhase("writeList");
+        long start = System.nanoTime();
+        long generated = generationNanos();
+
+        JsonStreamWriter json = new JsonStreamWriter(writer, 2);
+        json.beginObject(2 + envHosts.size() + platformHosts.size() + platformComputeHosts.size());
+
+        // Generate Host Vars for all Computes
+        json.key("_meta").beginObject(1);
+        json.key("hostvars");
+        writeHostvars(json);
+        json.endObject();
+        json.key("oo").value(generateGroup(() -> generateOOGroup()));
+        writeGroups(json);
+        json.endObject();
+
+        addSerialization(start, generated);
+        phase.end(allHosts.size(), groupCount());
+    }
+
+    /**
+     * Write every group but oo into an object the caller has begun, with room for {@link #groupCount()} - 1 keys.
+     */
+    void writeGroups(JsonStreamWriter json) throws InventoryException, IOException {
+        for(EnvironmentRecord environment : envHosts.keySet()) {
+            json.key(environmentGroupName(environment)).value(generateGroup(() -> generateEnvironmentGroup(environment)));
+        }
+        for(PlatformRecord platform : platformHosts.keySet()) {
+            json.key(platformGroupName(platform)).value(generateGroup(() -> generatePlatformGroup(platform)));
+        }
+        for(PlatformCompute platformCompute : platformComputeHosts.keySet()) {
+            json.key(platformComputeGroupName(platformCompute))
+                    .value(generateGroup(() -> generatePlatformComputeGroup(platformCompute)));
+        }
+    }
+
+    /**
+     * Write the same inventory as {@link #generateList()} as an {@link InventorySnapshot}, which a later process
+     * can answer --host and --list from without parsing JSON.
+     *
+     * The stream is not closed.
+     */
+    public void writeSnapshot(OutputStream out) throws InventoryException, IOException {
+        InventoryEvents.Phase phase = events.beginPhase("writeSnapshot");
+        long start = System.nanoTime();
+        long generated = generationNanos();
+        InventorySnapshot.Builder snapshot = new InventorySnapshot.Builder();
+
+        List<HostRecord> hosts = new ArrayList<HostRecord>(hostsByHostId().values());
+        try (RenderEngine engine = new RenderEngine(renderParallelism)) {
+            long rendering = System.nanoTime();
+            List<String> hostvars = engine.renderAll(hosts, this::renderHostJson);
+            addPhase(InventoryStats.PHASE_HOSTVARS, rendering);
+            for( int i = 0; i < hosts.size(); i++ ) {
+                snapshot.addHost(hosts.get(i).getHostId(), hostvars.get(i));
+            }
+        }
+
+        snapshot.addGroup("oo", groupVars(generateGroup(this::generateOOGroup)), hostIds(allHosts));
+        for(EnvironmentRecord environment : envHosts.keySet()) {
+            snapshot.addGroup(environmentGroupName(environment),
+                    groupVars(generateGroup(() -> generateEnvironmentGroup(environment))),
+                    hostIds(envHosts.get(environment)));
+        }
+        for(PlatformRecord platform : platformHosts.keySet()) {
+            snapshot.addGroup(platformGroupName(platform), groupVars(generateGroup(() -> generatePlatformGroup(platform))),
+                    hostIds(platformHosts.get(platform)));
+        }
+        for(PlatformCompute platformCompute : platformComputeHosts.keySet()) {
+            snapshot.addGroup(platformComputeGroupName(platformCompute), null,
+                    hostIds(platformComputeHosts.get(platformCompute)));
+        }
+
+        snapshot.writeTo(out);
+        addSerialization(start, generated);
+        phase.end(allHosts.size(), groupCount());
+    }
+
+    /**
+     * Generates a piece of inventory.
+     */
+    private interface Generate<T>
+    {
+        T generate() throws InventoryException;
+    }
+
+    /**
+     * Generate a group, counting the time towards the groups phase.
+     */
+    private <T> T generateGroup(Generate<T> generate) throws InventoryException {
+        long start = System.nanoTime();
+        T group = generate.generate();
+        addPhase(InventoryStats.PHASE_GROUPS, start);
+        return group;
+    }
+
+    /**
+     * Time spent generating hostvars and groups so far.
+     */
+    private long generationNanos() {
+        if( stats == null ) {
+            return 0;
+        }
+        return stats.getPhaseNanos(InventoryStats.PHASE_HOSTVARS) + stats.getPhaseNanos(InventoryStats.PHASE_GROUPS);
+    }
+
+    /**
+     * Count the time since start towards serialization, except for what went into generating hostvars and groups
+     * in between - the streaming writers interleave the three.
+     */
+    private void addSerialization(long start, long generatedAtStart) {
+        if( stats != null ) {
+            long elapsed = System.nanoTime() - start;
+            stats.addPhase(InventoryStats.PHASE_SERIALIZATION, elapsed - (generationNanos() - generatedAtStart));
+        }
+    }
+
+    private static String groupVars(JSONObject group) {
+        return group.getJSONObject("vars").toString(2);
+    }
+
+    private static List<String> hostIds(List<HostRecord> hosts) {
+        List<String> hostIds = new ArrayList<String>(hosts.size());
+        for( HostRecord host : hosts ) {
+            hostIds.add( host.getHostId() );
+        }
+        return hostIds;
+    }
+
     /**
      * Generate the JSONObject for the Ansible Dynamic Inventory Host
      * @return JSONObject populated with dynamic inventory for the --host ip argument
@@ -363,23 +1098,31 @@ public class Inventory
     public JSONObject generateHost(String ipAddress) throws InventoryException {
         JSONObject json = new JSONObject();
 
-        /**
-         * Yes, this is inefficient.  I wish there was a better way to query for an individual host, but
-         * Ansible inventories from cloud providers are designed to be cached.  We should build a quick caching
-         * layer so we don't kill the OneOps API.  (This is common for other public cloud Ansible integrations)
-         */
-        for( CiResource host : allHosts ) {
-            JSONObject hostObj = new JSONObject();
-
-            String hostId = computeHostId(host);
-            if (StringUtils.equals(hostId.trim(), ipAddress)) {
-                generateHostJson(host, json);
-            }
+        HostRecord host = hostsById.get(ipAddress);
+        if( host != null ) {
+            long start = System.nanoTime();
+            InventoryEvents.Phase phase = events.beginPhase("generateHost");
+            generateHostJson(host, json);
+            phase.end(1, 0);
+            addPhase(InventoryStats.PHASE_HOSTVARS, start);
         }
 
         return json;
     }
 
+    /**
+     * Where every gathered host lives, by host identifier, so a later --host can go straight there with
+     * {@link #initializeHost(String, HostLocation)}.
+     */
+    public Map<String, HostLocation> getHostLocations() {
+        Map<String, HostLocation> locations = new LinkedHashMap<String, HostLocation>();
+        for( Map.Entry<String, HostRecord> entry : hostsById.entrySet() ) {
+            PlatformRecord platform = entry.getValue().getPlatform();
+            locations.put( entry.getKey(), new HostLocation(platform.getEnvironment().getName(), platform.getName()) );
+        }
+        return locations;
+    }
+
     /**
      * Add platform compute Ansible groups to the List JSON - these are groups that are relevant for assemblies
      * that define multiple compute components in a single platform (a rare, but important usecase)
@@ -389,19 +1132,25 @@ public class Inventory
     private void generatePlatformComputeGroups(JSONObject json) throws InventoryException {
         // Generate the platform compute groups
         for(PlatformCompute platformCompute : platformComputeHosts.keySet()) {
-            JSONArray platComp = new JSONArray();
-            for(CiResource host : platformComputeHosts.get(platformCompute) ) {
-                String publicIp = computeHostId(host);
-                platComp.put( publicIp );
-            }
+            json.put(platformComputeGroupName(platformCompute), generatePlatformComputeGroup(platformCompute));
+        }
+    }
 
-            String groupIdentifier = "platform-" + platformCompute.getPlatform().getCiName() + "-" + platformCompute.getComputeType();
-            if( StringUtils.isEmpty( this.env ) ) {
-                groupIdentifier = "env-" + envByPlatformMap.get( platformCompute.getPlatform() ).getCiName() + "-" + groupIdentifier;
-            }
+    private JSONArray generatePlatformComputeGroup(PlatformCompute platformCompute) throws InventoryException {
+        JSONArray platComp = new JSONArray();
+        for(HostRecord host : platformComputeHosts.get(platformCompute) ) {
+            String publicIp = host.getHostId();
+            platComp.put( publicIp );
+        }
+        return platComp;
+    }
 
-            json.put(groupIdentifier, platComp);
+    private String platformComputeGroupName(PlatformCompute platformCompute) {
+        String groupIdentifier = "platform-" + platformCompute.getPlatform().getName() + "-" + platformCompute.getComputeType();
+        if( isEnvironmentInGroupNames() ) {
+            groupIdentifier = "env-" + platformCompute.getPlatform().getEnvironment().getName() + "-" + groupIdentifier;
         }
+        return prefixGroupName(groupIdentifier);
     }
 
     /**
@@ -411,56 +1160,44 @@ public class Inventory
      */
     private void generatePlatformGroups(JSONObject json) throws InventoryException {
         // Generate the platform groups
-        for(CiResource platform : platformHosts.keySet()) {
-            CiResource environment = envByPlatformMap.get(platform);
-
-            JSONObject plat = new JSONObject();
-            JSONArray hosts = new JSONArray();
-            for(CiResource host : platformHosts.get(platform) ) {
-                String publicIp = computeHostId(host);
-                hosts.put( publicIp );
-            }
-            plat.put("hosts", hosts);
-
-            JSONObject vars = new JSONObject();
-            addGlobalVariables(environment, vars );
-            addPlatformVariables(platform, vars);
-
-            String compositeCiNameFqdn = environment.getCiName() + ":" + platform.getCiName() + ":fqdn";
-            // If there is a hostname component, grab the hostnames for this compute instance.
-            if( instanceMapsByComponentName.containsKey(compositeCiNameFqdn)) {
-
-                if( instanceMapsByComponentName.containsKey(compositeCiNameFqdn) ) {
-                    Map<String, CiResource> fqdnByInstanceNum = instanceMapsByComponentName.get(compositeCiNameFqdn);
+        for(PlatformRecord platform : platformHosts.keySet()) {
+            json.put(platformGroupName(platform), generatePlatformGroup(platform));
+        }
+    }
 
-                    if( fqdnByInstanceNum.values() != null && fqdnByInstanceNum.values().size() > 0 ) {
-                        // Get the first FQDN resource in the platform
-                        CiResource fqdn = (CiResource) fqdnByInstanceNum.values().toArray()[0];
-                        Map<String, Object> fqdnProperties = fqdn.getCiAttributes().getAdditionalProperties();
+    private JSONObject generatePlatformGroup(PlatformRecord platform) throws InventoryException {
+        JSONObject plat = new JSONObject();
+        JSONArray hosts = new JSONArray();
+        for(HostRecord host : platformHosts.get(platform) ) {
+            String publicIp = host.getHostId();
+            hosts.put( publicIp );
+        }
+        plat.put("hosts", hosts);
 
-                        // Populate the Short Aliases for the FQDN as a Groupvar
-                        if (!StringUtils.isEmpty((String) fqdnProperties.get("aliases"))) {
-                            vars.put("fqdn_aliases", new JSONArray((String) fqdnProperties.get("aliases")));
-                        }
-
-                        // Populate the Full Aliases for the FQDN as a Groupvar
-                        if (!StringUtils.isEmpty((String) fqdnProperties.get("full_aliases"))) {
-                            vars.put("fqdn_full_aliases", new JSONArray((String) fqdnProperties.get("full_aliases")));
-                        }
-                    }
-                }
-            }
+        JSONObject vars = new JSONObject();
+        addGlobalVariables(platform.getEnvironment(), vars );
+        addPlatformVariables(platform, vars);
 
+        // Populate the Short Aliases for the FQDN as a Groupvar
+        if (platform.getFqdnAliases() != null) {
+            vars.put("fqdn_aliases", new JSONArray(platform.getFqdnAliases()));
+        }
 
-            plat.put("vars", vars);
+        // Populate the Full Aliases for the FQDN as a Groupvar
+        if (platform.getFqdnFullAliases() != null) {
+            vars.put("fqdn_full_aliases", new JSONArray(platform.getFqdnFullAliases()));
+        }
 
-            String groupIdentifier = "platform-" + platform.getCiName();
-            if( StringUtils.isEmpty( this.env ) ) {
-                groupIdentifier = "env-" + envByPlatformMap.get( platform ).getCiName() + "-" + groupIdentifier;
-            }
+        plat.put("vars", vars);
+        return plat;
+    }
 
-            json.put(groupIdentifier, plat );
+    private String platformGroupName(PlatformRecord platform) {
+        String groupIdentifier = "platform-" + platform.getName();
+        if( isEnvironmentInGroupNames() ) {
+            groupIdentifier = "env-" + platform.getEnvironment().getName() + "-" + groupIdentifier;
         }
+        return prefixGroupName(groupIdentifier);
     }
 
     /**
@@ -472,29 +1209,47 @@ public class Inventory
      */
     private void generateEnvironmentGroups(JSONObject json) throws InventoryException {
         // Generate the environment group
-        for(CiResource environment : envHosts.keySet()) {
-            JSONObject env = new JSONObject();
-            JSONArray hosts = new JSONArray();
-            for(CiResource host : envHosts.get(environment) ) {
-                String publicIp = computeHostId(host);
-                hosts.put( publicIp );
-            }
-            env.put("hosts", hosts);
+        for(EnvironmentRecord environment : envHosts.keySet()) {
+            json.put(environmentGroupName(environment), generateEnvironmentGroup(environment));
+        }
+    }
 
-            Map ciAddlProps = environment.getCiAttributes().getAdditionalProperties();
-            JSONObject vars = new JSONObject();
-            vars.put("oo_env_id", environment.getCiId());
-            vars.put("oo_env_name", environment.getCiName());
-            vars.put("oo_env_namespace", environment.getNsPath());
-            vars.put("oo_env_profile", ciAddlProps.get("profile") );
-            vars.put("oo_env_availability", ciAddlProps.get("availability") );
+    private JSONObject generateEnvironmentGroup(EnvironmentRecord environment) throws InventoryException {
+        JSONObject env = new JSONObject();
+        JSONArray hosts = new JSONArray();
+        for(HostRecord host : envHosts.get(environment) ) {
+            String publicIp = host.getHostId();
+            hosts.put( publicIp );
+        }
+        env.put("hosts", hosts);
 
-            addGlobalVariables( environment, vars );
+        JSONObject vars = new JSONObject();
+        vars.put("oo_env_id", environment.getCiId());
+        vars.put("oo_env_name", environment.getName());
+        vars.put("oo_env_namespace", environment.getNsPath());
+        vars.put("oo_env_profile", environment.getProfile() );
+        vars.put("oo_env_availability", environment.getAvailability() );
 
-            env.put("vars", vars);
+        addGlobalVariables( environment, vars );
 
-            json.put("env-" + environment.getCiName(), env );
-        }
+        env.put("vars", vars);
+        return env;
+    }
+
+    private String environmentGroupName(EnvironmentRecord environment) {
+        return prefixGroupName("env-" + environment.getName());
+    }
+
+    /**
+     * Whether platform groups are qualified with their environment: always for a whole assembly, and with a
+     * group prefix, so several environments of one assembly crawled into a {@link MultiInventory} don't clash.
+     */
+    private boolean isEnvironmentInGroupNames() {
+        return StringUtils.isEmpty( this.env ) || groupPrefix != null;
+    }
+
+    private String prefixGroupName(String groupIdentifier) {
+        return groupPrefix == null ? groupIdentifier : groupPrefix + groupIdentifier;
     }
 
     /**
@@ -503,17 +1258,21 @@ public class Inventory
      * @param json
      */
     private void generateOOGroup(JSONObject json) throws InventoryException {
+        json.put("oo", generateOOGroup());
+    }
+
+    private JSONObject generateOOGroup() throws InventoryException {
         // Generate the oo group with all hosts
         JSONObject ooGroup = new JSONObject();
         JSONArray ooHosts = new JSONArray();
-        for(CiResource host : allHosts) {
-            String publicIp = computeHostId(host);
+        for(HostRecord host : allHosts) {
+            String publicIp = host.getHostId();
             ooHosts.put( publicIp );
         }
         ooGroup.put("hosts", ooHosts);
         JSONObject ooVars = new JSONObject();
         ooGroup.put("vars", ooVars);
-        json.put("oo", ooGroup);
+        return ooGroup;
     }
 
     /**
@@ -525,120 +1284,171 @@ public class Inventory
         JSONObject hostvars = new JSONObject();
         meta.put("hostvars", hostvars);
 
-        for( CiResource host : allHosts ) {
+        for( HostRecord host : allHosts ) {
             JSONObject hostObj = new JSONObject();
             String publicIp = generateHostJson(host, hostObj);
             hostvars.put( publicIp, hostObj);
         }
     }
 
+    /**
+     * Stream all the hostvars in _meta for the List JSON, a batch of hosts at a time.  Each batch is rendered
+     * in parallel and written in host order, so the output doesn't depend on the number of threads.
+     *
+     * Like {@link #generateHostvars(JSONObject)}, when two computes share a host id the last one wins.
+     */
+    private void writeHostvars(JsonStreamWriter json) throws InventoryException, IOException {
+        List<HostRecord> hosts = new ArrayList<HostRecord>(hostsByHostId().values());
+
+        json.beginObject(hosts.size());
+        writeHostvars(json, hosts);
+        json.endObject();
+    }
+
+    /**
+     * Write the hostvars of some of the hosts into an object the caller has begun, in the order they are listed.
+     */
+    void writeHostvars(JsonStreamWriter json, Set<String> hostIds) throws InventoryException, IOException {
+        List<HostRecord> hosts = new ArrayList<HostRecord>();
+        for( HostRecord host : hostsByHostId().values() ) {
+            if( hostIds.contains(host.getHostId()) ) {
+                hosts.add(host);
+            }
+        }
+        writeHostvars(json, hosts);
+    }
+
+    private void writeHostvars(JsonStreamWriter json, List<HostRecord> hosts) throws InventoryException, IOException {
+        try (RenderEngine engine = new RenderEngine(renderParallelism)) {
+            for( int from = 0; from < hosts.size(); from += RENDER_BATCH ) {
+                List<HostRecord> batch = hosts.subList(from, Math.min(from + RENDER_BATCH, hosts.size()));
+                long rendering = System.nanoTime();
+                List<String> hostvars = engine.renderAll(batch, this::renderHostJson);
+                addPhase(InventoryStats.PHASE_HOSTVARS, rendering);
+                for( int i = 0; i < batch.size(); i++ ) {
+                    json.key(batch.get(i).getHostId()).renderedValue(hostvars.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * One host per host id, in the order the hostvars are listed.
+     */
+    private Map<String, HostRecord> hostsByHostId() {
+        Map<String, HostRecord> hostsByHostId = new LinkedHashMap<String, HostRecord>();
+        for( HostRecord host : allHosts ) {
+            hostsByHostId.put( host.getHostId(), host );
+        }
+        return hostsByHostId;
+    }
+
+    /**
+     * Ids of the hosts in the order the hostvars are listed, each once.
+     */
+    List<String> getHostIds() {
+        return new ArrayList<String>(hostsByHostId().keySet());
+    }
+
     /**
      * Generate hostvars.  This is used in both the List JSON output and the Host JSON output.
      *
-     * Please note that this method is full of acrobatics.  If you follow how we jump to sibling instances of
-     * hostname and os, you'll understand what's happening here.
+     * The acrobatics of jumping to the sibling instances of hostname and os happened when the host was gathered,
+     * see {@link #projectHost(CiResource, String, PlatformRecord, Map)}.
      *
      * @param host
      * @param hostObj
      * @return
      */
-    private String generateHostJson(CiResource host, JSONObject hostObj) throws InventoryException {
-        Map ciAddlProps = host.getCiAttributes().getAdditionalProperties();
-
+    private String generateHostJson(HostRecord host, JSONObject hostObj) throws InventoryException {
         // BIG ASSUMPTION: Public IP is what we use for host in Ansible.
-        String hostId = computeHostId(host);
+        String hostId = host.getHostId();
 
-        String publicIp = (String) ciAddlProps.get("public_ip");
         hostObj.put("ansible_ssh_host", hostId );
-        hostObj.put("oo_public_ip", publicIp );
-        hostObj.put("oo_instance_name", ciAddlProps.get("instance_name"));
-        hostObj.put("oo_instance_id", ciAddlProps.get("instance_id"));
+        hostObj.put("oo_public_ip", host.getPublicIp() );
+        hostObj.put("oo_instance_name", host.getInstanceName());
+        hostObj.put("oo_instance_id", host.getInstanceId());
         hostObj.put("oo_namespace", host.getNsPath());
 
-        /**
-         * BEGIN I HATE EVERYTHING ABOUT THIS
-         *
-         * There is a "metadata" property in additional properties that is
-         * a string of JSON.  We have to parse it.
-         *
-         * I don't know if this the OneOps API packing a JSON document into a JSON string into a JSON document or
-         * something else, but it's painful.  We should look at this.
-         */
-        String metadataStr = (String) ciAddlProps.get("metadata");
-        JSONObject metadata = new JSONObject( metadataStr );
-
-        hostObj.put("oo_organization", metadata.get("organization"));
-        hostObj.put("oo_assembly", metadata.get("assembly"));
-        hostObj.put("oo_environment", metadata.get("environment"));
-        hostObj.put("oo_platform", metadata.get("platform"));
-        hostObj.put("oo_owner", metadata.get("owner"));
-        hostObj.put("oo_mgmt_url", metadata.get("mgmt_url"));
-        hostObj.put("oo_component", metadata.get("component"));
-        hostObj.put("oo_instance", metadata.get("instance"));
-        /**
-         * END I HATE EVERYTHING ABOUT THIS
-         */
-
+        hostObj.put("oo_organization", host.getOrganization());
+        hostObj.put("oo_assembly", host.getAssembly());
+        hostObj.put("oo_environment", host.getEnvironment());
+        hostObj.put("oo_platform", host.getPlatformName());
+        hostObj.put("oo_owner", host.getOwner());
+        hostObj.put("oo_mgmt_url", host.getMgmtUrl());
+        hostObj.put("oo_component", host.getComponent());
+        hostObj.put("oo_instance", host.getInstance());
 
         hostObj.put("oo_compute_name", host.getCiName());
-        hostObj.put("oo_component_name", computeComponent.get( host ).getCiName());
+        hostObj.put("oo_component_name", host.getComponentName());
 
         // Adds the name of the cloud for this compute
-        hostObj.put("oo_cloud", ((Map<String,String>) host.getAdditionalProperties().get("deployedTo")).get("ciName"));
-
-        hostObj.put("oo_host_id", ciAddlProps.get("host_id"));
-        hostObj.put("oo_hypervisor", ciAddlProps.get("hypervisor"));
-        hostObj.put("oo_availability_zone", ciAddlProps.get("availability_zone"));
-        hostObj.put("oo_instance_size", ciAddlProps.get("size"));
-        hostObj.put("oo_num_cores", ciAddlProps.get("cores"));
-        hostObj.put("oo_ram", ciAddlProps.get("ram"));
-        hostObj.put("oo_server_image_name", ciAddlProps.get("server_image_name"));
-        hostObj.put("oo_server_image_id", ciAddlProps.get("server_image_id"));
-        hostObj.put("oo_private_ip", ciAddlProps.get("private_ip"));
-        hostObj.put("oo_vm_state", ciAddlProps.get("vm_state"));
+        hostObj.put("oo_cloud", host.getCloud());
+
+        hostObj.put("oo_host_id", host.getPhysicalHostId());
+        hostObj.put("oo_hypervisor", host.getHypervisor());
+        hostObj.put("oo_availability_zone", host.getAvailabilityZone());
+        hostObj.put("oo_instance_size", host.getSize());
+        hostObj.put("oo_num_cores", host.getCores());
+        hostObj.put("oo_ram", host.getRam());
+        hostObj.put("oo_server_image_name", host.getServerImageName());
+        hostObj.put("oo_server_image_id", host.getServerImageId());
+        hostObj.put("oo_private_ip", host.getPrivateIp());
+        hostObj.put("oo_vm_state", host.getVmState());
+
+        // Hostnames and OS come from the sibling hostname and os instances, if there are any.
+        if( host.getHostnames() != null ) {
+            hostObj.put("oo_hostnames", host.getHostnames() );
+        }
+        hostObj.put("oo_os_type", host.getOsType());
+        hostObj.put("oo_os_name", host.getOsName());
 
-        // Get the instance number for this computer - we need this to jump to sibling instances for
-        // hostname and os
-        String instanceNum = extractInstanceNum(host);
-        String environmentName = metadata.get("environment").toString();
-        String platformName = metadata.get("platform").toString();
+        if( hostVariables ) {
+            addGlobalVariables(host.getPlatform().getEnvironment(), hostObj);
+            addPlatformVariables(host.getPlatform(), hostObj);
+        }
 
-        String compositeCiNameHostname = environmentName + ":" + platformName + ":hostname";
-        // If there is a hostname component, grab the hostnames for this compute instance.
-        if( instanceMapsByComponentName.containsKey(compositeCiNameHostname)) {
-
-            Map<String,CiResource> hostnamesByInstanceNum = instanceMapsByComponentName.get(compositeCiNameHostname);
-            // Retrieve related hostname component (if there is one)
-            if( hostnamesByInstanceNum.containsKey( instanceNum ) ) {
-                CiResource hostname = hostnamesByInstanceNum.get( instanceNum );
-
-                String entriesStr = (String) hostname.getCiAttributes().getAdditionalProperties().get("entries");
-                JSONObject entries = new JSONObject(entriesStr);
-                Set<String> hosts = entries.keySet();
-                hosts.removeIf(name -> name.matches(IPV4_REGEX));
-                hostObj.put("oo_hostnames", hosts );
-            }
+        return hostId;
+    }
 
+    /**
+     * Render a host's hostvars as {@link JSONObject#toString(int)} would.  Runs on a render thread.
+     */
+    private String renderHostJson(HostRecord host) throws InventoryException {
+        StringWriter hostvars = new StringWriter();
+        try {
+            writeHostJson(host, new JsonStreamWriter(hostvars, 2));
+        } catch (IOException e) {
+            // Nothing to fail writing to a StringWriter
+            throw new IllegalStateException(e);
         }
+        return hostvars.toString();
+    }
 
-        String compositeCiNameOs = environmentName + ":" + platformName + ":os";
-        // If there is an OS, grab the OS name and type for this compute instance.
-        if( instanceMapsByComponentName.containsKey(compositeCiNameOs)) {
-
-            Map<String,CiResource> osByInstanceNum = instanceMapsByComponentName.get(compositeCiNameOs);
-            // Retrieve related os component (if there is one)
-            if( osByInstanceNum.containsKey( instanceNum ) ) {
-                CiResource os = osByInstanceNum.get( instanceNum );
-                hostObj.put("oo_os_type", os.getCiAttributes().getAdditionalProperties().get("ostype"));
-                hostObj.put("oo_os_name", os.getCiAttributes().getAdditionalProperties().get("osname"));
+    /**
+     * Stream the hostvars of {@link #generateHostJson(HostRecord, JSONObject)}, copying in the global and platform
+     * variables as they were rendered once for the whole environment and platform.
+     */
+    private void writeHostJson(HostRecord host, JsonStreamWriter json) throws InventoryException, IOException {
+        JSONObject hostObj = new JSONObject();
+        generateHostJson(host, hostObj);
+
+        VariableBlock globalVars = host.getPlatform().getEnvironment().getGlobalVariableBlock();
+        VariableBlock platformVars = host.getPlatform().getVariableBlock();
+
+        json.beginObject(hostObj.length());
+        for( String key : hostObj.keySet() ) {
+            Object value = hostObj.get(key);
+            json.key(key);
+            if( value == globalVars.getJson() ) {
+                json.renderedValue(globalVars.getRendered());
+            } else if( value == platformVars.getJson() ) {
+                json.renderedValue(platformVars.getRendered());
+            } else {
+                json.value(value);
             }
-
         }
-
-        addGlobalVariables(envByHostMap.get(host), hostObj);
-        addPlatformVariables(platformByHostMap.get(host), hostObj);
-
-        return hostId;
+        json.endObject();
     }
 
     /**
@@ -660,89 +1470,127 @@ public class Inventory
      * Users can chose either "public_ip", "private_ip", or "hostname"
      *
      * Getting a public or private IP address is straightforward.  Getting a hostname requires a lot of
-     * CiResource instance traversal.
+     * CiResource instance traversal, which {@link #projectHost(CiResource, String, PlatformRecord, Map)} has done.
      *
      * @param compute
+     * @param hasHostnameComponent Whether the compute's platform has a hostname component
+     * @param hostnames The compute's hostnames, or {@code null} if it has no hostname instance
      * @return
      */
-    private String computeHostId(CiResource compute) throws InventoryException {
-        Map ciAddlProps = compute.getCiAttributes().getAdditionalProperties();
+    private String computeHostId(CiResource compute, boolean hasHostnameComponent, @Nullable List<String> hostnames)
+            throws InventoryException {
         String hostId = null;
 
         if( this.hostMethod.equals("public_ip")) {
-            hostId = (String) ciAddlProps.get("public_ip");
+            hostId = HostRecord.attribute(compute, "public_ip");
         } else if( this.hostMethod.equals("private_ip")) {
-            hostId = (String) ciAddlProps.get("private_ip");
+            hostId = HostRecord.attribute(compute, "private_ip");
         } else if( this.hostMethod.equals("hostname")) {
-            // Get the instance number for this computer - we need this to jump to sibling instances for
-            // hostname and os
-            String instanceNum = extractInstanceNum(compute);
-
-
-            String metadataStr = (String) ciAddlProps.get("metadata");
-            JSONObject metadata = new JSONObject( metadataStr );
-            String environment = metadata.get("environment").toString();
-            String platform = metadata.get("platform").toString();
-
-            String compositeCiNameHostname = environment + ":" + platform + ":hostname";
-            // If there is a hostname component, grab the hostnames for this compute instance.
-            if( instanceMapsByComponentName.containsKey(compositeCiNameHostname)) {
-                Map<String,CiResource> hostnamesByInstanceNum =
-                        instanceMapsByComponentName.get(compositeCiNameHostname);
-                // Retrieve related hostname component (if there is one)
-                if( hostnamesByInstanceNum.containsKey( instanceNum ) ) {
-                    CiResource hostname = hostnamesByInstanceNum.get( instanceNum );
-
-                    String entriesStr = (String) hostname.getCiAttributes().getAdditionalProperties().get("entries");
-                    JSONObject entries = new JSONObject(entriesStr);
-                    ArrayList<String> hostnames = new ArrayList<String>();
-                    hostnames.addAll( entries.keySet() );
-                    // remove the IP if it's present -- an IP address should not be included as a hostname. 
-                    hostnames.removeIf(host -> host.matches(IPV4_REGEX));
-                    hostId = hostnames.get(0);
-                }
-            } else {
+            if( !hasHostnameComponent ) {
                 throw new InventoryException("You've configured a host method of 'hostname', but this design doesn't have a hostname component");
             }
+            if( hostnames != null && !hostnames.isEmpty() ) {
+                hostId = hostnames.get(0);
+            }
         }
         return hostId;
     }
 
-    private void addCloudVariables(CiResource cloud, JSONObject hostObj) {
-        List<CiResource> cloudVars = cloudVarsMap.get( cloud );
-        JSONObject cloudVarsObj = new JSONObject();
-        for( CiResource cloudVar : cloudVars ) {
-            boolean secure = new Boolean( (String) cloudVar.getCiAttributes().getAdditionalProperties().get("secure") );
-            String valueProp = secure ? "encrypted_value" : "value";
-            cloudVarsObj.put( cloudVar.getCiName(),
-                    (String) cloudVar.getCiAttributes().getAdditionalProperties().get( valueProp ) );
+    private static boolean isIpAddress(String name) {
+        return IPV4_PATTERN.matcher(name).matches();
+    }
+
+    private void addGlobalVariables(EnvironmentRecord environment, JSONObject hostObj) {
+        hostObj.put("global", environment.getGlobalVariableBlock().getJson() );
+    }
+
+    private void addPlatformVariables(PlatformRecord platform, JSONObject vars) {
+        vars.put("platform", platform.getVariableBlock().getJson() );
+    }
+
+    /**
+     * What one fetch round brought back for an environment, a platform, or a component.  These are filled in on
+     * the fetch threads and only read after {@link FetchEngine#fetchAll} returns.
+     */
+    private static class EnvironmentFetch
+    {
+        final CiResource environment;
+        final List<PlatformFetch> platforms = new ArrayList<PlatformFetch>();
+        List<CiResource> globalVars;
+        // Only when refreshing incrementally
+        String fingerprint;
+        // Projected when the first of its platforms is merged
+        EnvironmentRecord record;
+
+        EnvironmentFetch(CiResource environment) {
+            this.environment = environment;
         }
-        hostObj.put("cloud", cloudVarsObj );
     }
 
-    private void addGlobalVariables(CiResource environment, JSONObject hostObj) {
-        List<CiResource> globalVars = globalVarsMap.get( environment );
-        JSONObject globalVarsObj = new JSONObject();
-        for( CiResource globalVar : globalVars ) {
-            boolean secure = new Boolean( (String) globalVar.getCiAttributes().getAdditionalProperties().get("secure") );
-            String valueProp = secure ? "encrypted_value" : "value";
-            globalVarsObj.put( globalVar.getCiName(),
-                    (String) globalVar.getCiAttributes().getAdditionalProperties().get( valueProp ) );
+    private static class PlatformFetch
+    {
+        final EnvironmentFetch environmentFetch;
+        final CiResource platform;
+        final List<ComponentFetch> components = new ArrayList<ComponentFetch>();
+        List<CiResource> variables;
+        // Only when refreshing incrementally
+        String fingerprint;
+        // The platform as it was last gathered, if nothing changed since - its instances aren't fetched
+        PlatformState reused;
+
+        PlatformFetch(EnvironmentFetch environmentFetch, CiResource platform) {
+            this.environmentFetch = environmentFetch;
+            this.platform = platform;
         }
-        hostObj.put("global", globalVarsObj );
     }
 
-    private void addPlatformVariables(CiResource platform, JSONObject vars) {
-        List<CiResource> platformVars = platformVarsMap.get( platform );
-        JSONObject platformVarsObj = new JSONObject();
-        for( CiResource platformVar : platformVars ) {
-            boolean secure = new Boolean( (String) platformVar.getCiAttributes().getAdditionalProperties().get("secure") );
-            String valueProp = secure ? "encrypted_value" : "value";
-            platformVarsObj.put( platformVar.getCiName(),
-                    (String) platformVar.getCiAttributes().getAdditionalProperties().get( valueProp ) );
+    private static class ComponentFetch
+    {
+        final CiResource environment;
+        final CiResource platform;
+        final CiResource component;
+        List<CiResource> instances;
+        List<CiResource> computes;
+
+        ComponentFetch(CiResource environment, CiResource platform, CiResource component) {
+            this.environment = environment;
+            this.platform = platform;
+            this.component = component;
         }
-        vars.put("platform", platformVarsObj );
     }
 
+    /**
+     * An environment as it was last gathered, kept between refreshes.
+     */
+    private static class EnvironmentState
+    {
+        final String fingerprint;
+        final EnvironmentRecord record;
+
+        EnvironmentState(String fingerprint, EnvironmentRecord record) {
+            this.fingerprint = fingerprint;
+            this.record = record;
+        }
+    }
 
+    /**
+     * A platform as it was last gathered, with the hosts of each of its compute components, kept between
+     * refreshes.
+     */
+    private static class PlatformState
+    {
+        final String fingerprint;
+        final PlatformRecord record;
+        final Map<String, List<HostRecord>> computesByComponent;
+        // When its instances were fetched, in milliseconds since the epoch
+        final long gatheredAt;
+
+        PlatformState(String fingerprint, PlatformRecord record, Map<String, List<HostRecord>> computesByComponent,
+                      long gatheredAt) {
+            this.fingerprint = fingerprint;
+            this.record = record;
+            this.computesByComponent = computesByComponent;
+            this.gatheredAt = gatheredAt;
+        }
+    }
 }
@@ -0,0 +1,411 @@
+package com.oneops.inv;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import javax.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local cache of rendered --list inventories.
+ *
+ * Ansible runs the inventory script over and over, and without a cache every run crawls the whole assembly.
+ * Entries are gzip-compressed JSON files named after a hash of everything that changes the output (org,
+ * assembly, env, endpoint and host method), and are replaced atomically so a reader never sees half a file.
+ *
+ * An expired entry can still be served for a grace period while a single background process refreshes it
+ * (stale-while-revalidate).  Whoever wants to start that refresh has to {@link #claimRefresh(String) claim} it.
+ *
+ * Processes that need to crawl take the entry's {@link #lockFile(String) lock file} first, so concurrent
+ * processes make one crawl between them instead of one each.
+ *
+ * An entry can come with an {@link InventorySnapshot} of the same inventory, which answers --host without
+ * parsing the whole list.
+ *
+ * Next to each entry we keep a {@link #writeHostIndex(String, Map) host index} of where every host lives, which
+ * lets --host fetch a single platform instead of crawling.  Hosts rarely move, so the index doesn't expire; a
+ * host that has moved is simply searched for.
+ */
+public class InventoryCache
+{
+    /**
+     * Renders an inventory into the cache.
+     */
+    public interface Content
+    {
+        void writeTo(Writer writer) throws IOException, InventoryException;
+    }
+
+    /**
+     * Writes an {@link InventorySnapshot} into the cache.
+     */
+    public interface SnapshotContent
+    {
+        void writeTo(OutputStream out) throws IOException, InventoryException;
+    }
+
+    /**
+     * A refresh claim older than this is assumed to belong to a process that died before writing.
+     */
+    private static final long REFRESH_CLAIM_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final File directory;
+
+    private final long ttlMillis;
+
+    private final long graceMillis;
+
+    /**
+     * @param directory Where to keep cache files, created on first write
+     * @param ttlSeconds How long an entry is served before we crawl again
+     */
+    public InventoryCache(File directory, long ttlSeconds) {
+        this(directory, ttlSeconds, 0);
+    }
+
+    /**
+     * @param directory Where to keep cache files, created on first write
+     * @param ttlSeconds How long an entry is served before we crawl again
+     * @param graceSeconds How long after expiry an entry may still be served while it is refreshed
+     */
+    public InventoryCache(File directory, long ttlSeconds, long graceSeconds) {
+        this.directory = directory;
+        this.ttlMillis = ttlSeconds * 1000L;
+        this.graceMillis = graceSeconds * 1000L;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Cache key for one inventory.  Hashed because env may be empty and endpoints are full of slashes.
+     */
+    public static String key(String org, String assembly, @Nullable String env, String endpoint, String hostMethod) {
+        return key(org, assembly, env, endpoint, hostMethod, false);
+    }
+
+    /**
+     * Cache key for one inventory, which may leave global and platform variables out of hostvars.
+     */
+    public static String key(String org, String assembly, @Nullable String env, String endpoint, String hostMethod,
+                             boolean groupVarsOnly) {
+        String coordinates = org + "\n" + assembly + "\n" + (env == null ? "" : env) + "\n" + endpoint + "\n" + hostMethod;
+        if( groupVarsOnly ) {
+            // Only appended when set, so entries cached before the option existed keep their keys
+            coordinates += "\ngroup-vars-only";
+        }
+        return hash(coordinates);
+    }
+
+    /**
+     * Key for the inventory of several targets crawled together.  {@code oo-wrapper.py} works the same keys out
+     * for the daemon, so the two must change together.
+     */
+    public static String key(List<Target> targets, String endpoint, String hostMethod, boolean groupVarsOnly) {
+        String coordinates = "targets\n" + StringUtils.join(targets, " ") + "\n" + endpoint + "\n" + hostMethod;
+        if( groupVarsOnly ) {
+            coordinates += "\ngroup-vars-only";
+        }
+        return hash(coordinates);
+    }
+
+    private static String hash(String coordinates) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(coordinates.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for( byte b : hash ) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Look up an entry, whether or not it is still fresh.
+     *
+     * @return The entry, or {@code null} if nothing has been cached for the key
+     */
+    @Nullable
+    public Entry lookup(String key) {
+        File file = file(key);
+        if( !file.isFile() ) {
+            return null;
+        }
+        long modified = file.lastModified();
+
+        // Snapshots are written after the list, one older than the list is left over from an earlier crawl.
+        File snapshot = snapshotFile(key);
+        if( !snapshot.isFile() || snapshot.lastModified() < modified ) {
+            snapshot = null;
+        }
+        return new Entry(file, snapshot, modified, System.currentTimeMillis() - modified);
+    }
+
+    public boolean isFresh(Entry entry) {
+        return entry.getAgeMillis() < ttlMillis;
+    }
+
+    /**
+     * Expired, but still within the grace period - serve it, and refresh it in the background.
+     */
+    public boolean isStale(Entry entry) {
+        return !isFresh(entry) && entry.getAgeMillis() < ttlMillis + graceMillis;
+    }
+
+    /**
+     * How far past its TTL an entry is, zero if it is still fresh.
+     */
+    public long getStalenessMillis(Entry entry) {
+        return Math.max(0, entry.getAgeMillis() - ttlMillis);
+    }
+
+    /**
+     * Claim the right to refresh an entry.  Only one process gets {@code true} until the entry is written again,
+     * or until the claim is old enough that its owner must have died.
+     */
+    public boolean claimRefresh(String key) throws IOException {
+        createDirectory();
+
+        Path marker = refreshMarker(key);
+        File markerFile = marker.toFile();
+        if( markerFile.exists() && System.currentTimeMillis() - markerFile.lastModified() > REFRESH_CLAIM_MILLIS ) {
+            Files.deleteIfExists(marker);
+        }
+
+        try {
+            Files.createFile(marker);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Store a rendered inventory, replacing any previous entry for the key.
+     */
+    public void write(String key, String inventory) throws IOException {
+        try {
+            write(key, writer -> writer.write(inventory));
+        } catch (InventoryException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Render an inventory straight into the cache, replacing any previous entry for the key.  If rendering fails
+     * the previous entry is left alone.
+     */
+    public void write(String key, Content content) throws IOException, InventoryException {
+        replaceCompressed(file(key), content);
+
+        // The entry is fresh again, whoever claimed the refresh is done (or beaten to it).
+        Files.deleteIfExists(refreshMarker(key));
+    }
+
+    /**
+     * Store where every host of an inventory lives, replacing any previous index for the key.
+     */
+    public void writeHostIndex(String key, Map<String, HostLocation> locations) throws IOException {
+        JSONObject index = new JSONObject();
+        for( Map.Entry<String, HostLocation> location : locations.entrySet() ) {
+            index.put(location.getKey(), new JSONArray()
+                    .put(location.getValue().getEnvironment())
+                    .put(location.getValue().getPlatform()));
+        }
+        try {
+            replaceCompressed(hostIndexFile(key), index::write);
+        } catch (InventoryException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Store a snapshot of the entry's inventory.  Write it after the entry itself, it is only used while it is
+     * at least as new as the entry.
+     */
+    public void writeSnapshot(String key, SnapshotContent content) throws IOException, InventoryException {
+        replace(snapshotFile(key), content);
+    }
+
+    /**
+     * Look up where a host was when its inventory was last crawled.
+     *
+     * @return The location, or {@code null} if the host isn't in the index or there is no readable index
+     */
+    @Nullable
+    public HostLocation lookupHost(String key, String hostId) {
+        File file = hostIndexFile(key);
+        if( !file.isFile() ) {
+            return null;
+        }
+        try (Reader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8))) {
+            JSONArray location = new JSONObject(new JSONTokener(reader)).optJSONArray(hostId);
+            if( location == null ) {
+                return null;
+            }
+            return new HostLocation(location.getString(0), location.getString(1));
+        } catch (IOException | JSONException e) {
+            System.err.println("Ignoring unreadable host index: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Write a gzip-compressed text file of the entry atomically.
+     */
+    private void replaceCompressed(File file, Content content) throws IOException, InventoryException {
+        replace(file, out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(out), StandardCharsets.UTF_8));
+            content.writeTo(writer);
+            writer.close();
+        });
+    }
+
+    /**
+     * Write a file of the entry atomically.
+     */
+    private void replace(File file, SnapshotContent content) throws IOException, InventoryException {
+        createDirectory();
+        try (AtomicFile atomic = new AtomicFile(file)) {
+            try (OutputStream out = atomic.openStream()) {
+                content.writeTo(out);
+            }
+            atomic.commit();
+        }
+    }
+
+    private void createDirectory() throws IOException {
+        if( !directory.isDirectory() && !directory.mkdirs() ) {
+            throw new IOException("Unable to create cache directory: " + directory);
+        }
+    }
+
+    /**
+     * Lock file for {@link CrawlLock}, one per entry.
+     */
+    public File lockFile(String key) {
+        return new File(directory, key + ".lock");
+    }
+
+    private File file(String key) {
+        return new File(directory, key + ".json.gz");
+    }
+
+    private File snapshotFile(String key) {
+        return new File(directory, key + ".snapshot");
+    }
+
+    private File hostIndexFile(String key) {
+        return new File(directory, key + ".hosts.json.gz");
+    }
+
+    private Path refreshMarker(String key) {
+        return new File(directory, key + ".refresh").toPath();
+    }
+
+    /**
+     * A cached inventory and how old it is.
+     */
+    public static class Entry
+    {
+        private final File file;
+
+        @Nullable
+        private final File snapshot;
+
+        private final long modifiedMillis;
+
+        private final long ageMillis;
+
+        Entry(File file, @Nullable File snapshot, long modifiedMillis, long ageMillis) {
+            this.file = file;
+            this.snapshot = snapshot;
+            this.modifiedMillis = modifiedMillis;
+            this.ageMillis = ageMillis;
+        }
+
+        public long getAgeMillis() {
+            return ageMillis;
+        }
+
+        /**
+         * Snapshot of the same inventory, or {@code null} if there is none.
+         */
+        @Nullable
+        public File getSnapshot() {
+            return snapshot;
+        }
+
+        /**
+         * Whether the entry was written at or after the given time.  File systems with coarse timestamps may
+         * round a write made just before the time onto it, which is still recent enough for us.
+         */
+        public boolean isWrittenSince(long timeMillis) {
+            return modifiedMillis >= timeMillis - 1000;
+        }
+
+        /**
+         * Read the rendered inventory.
+         */
+        public String read() throws IOException {
+            StringWriter inventory = new StringWriter();
+            copyTo(inventory);
+            return inventory.toString();
+        }
+
+        /**
+         * Copy the rendered inventory to the writer without holding all of it in memory.
+         */
+        public void copyTo(Writer writer) throws IOException {
+            try (Reader reader = openReader()) {
+                char[] buffer = new char[8192];
+                int count;
+                while( (count = reader.read(buffer)) != -1 ) {
+                    writer.write(buffer, 0, count);
+                }
+            }
+        }
+
+        public Reader openReader() throws IOException {
+            return new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" +
+                    "file=" + file +
+                    ", ageMillis=" + ageMillis +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.oneops.inv;
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Long-running inventory server.
+ *
+ * Crawls once at startup, then again on a schedule, and answers requests from {@code oo-wrapper.py} over a
+ * localhost TCP port.  Each refresh renders a complete {@link RenderedInventory} and swaps it in atomically,
+ * so requests are always answered from memory and never wait for a crawl - a failed refresh just leaves the
+ * previous inventory in place.
+ *
+ * The protocol is one line per connection holding the {@link InventoryCache#key} of the inventory the caller
+ * wants, then the usual arguments, "--list" or "--host 10.1.2.3".  The reply is the same JSON the command-line
+ * would print, and the server closes the connection.  A caller asking for any other inventory - another
+ * assembly, environment or endpoint - gets an empty reply, so it doesn't run against the wrong hosts.
+ */
+public class InventoryDaemon
+{
+    /**
+     * Produces the current --list inventory, crawling OneOps.
+     */
+    public interface Crawler
+    {
+        JSONObject crawl() throws InventoryException;
+    }
+
+    private static final int REQUEST_TIMEOUT_MILLIS = 10000;
+
+    private final Crawler crawler;
+
+    private final String key;
+
+    private final int port;
+
+    private final long refreshSeconds;
+
+    private final AtomicReference<RenderedInventory> current = new AtomicReference<RenderedInventory>();
+
+    /**
+     * @param crawler How to build the inventory
+     * @param key Key of the inventory the crawler builds, which requests must ask for
+     * @param port Localhost port to listen on
+     * @param refreshSeconds Delay between the end of one crawl and the start of the next
+     */
+    public InventoryDaemon(Crawler crawler, String key, int port, long refreshSeconds) {
+        this.crawler = crawler;
+        this.key = key;
+        this.port = port;
+        this.refreshSeconds = refreshSeconds;
+    }
+
+    /**
+     * Crawl, then serve requests until the thread is interrupted or the socket fails.
+     *
+     * @throws InventoryException If the first crawl fails - there's nothing to serve without it
+     */
+    public void run() throws InventoryException, IOException {
+        refresh();
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("oo-daemon-refresh"));
+        scheduler.scheduleWithFixedDelay(this::refreshQuietly, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+
+        ExecutorService handlers = Executors.newFixedThreadPool(4, daemonThreads("oo-daemon-request"));
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.err.println("Serving inventory on " + server.getLocalSocketAddress());
+            while( !Thread.currentThread().isInterrupted() ) {
+                Socket socket = server.accept();
+                handlers.execute(() -> handle(socket));
+            }
+        } finally {
+            scheduler.shutdownNow();
+            handlers.shutdownNow();
+        }
+    }
+
+    /**
+     * Crawl and swap in a new inventory.
+     */
+    public void refresh() throws InventoryException {
+        current.set( RenderedInventory.render(crawler.crawl()) );
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (InventoryException | RuntimeException e) {
+            System.err.println("Inventory refresh failed, still serving the inventory from "
+                    + new Date(current.get().getRenderedAt()) + ": " + e);
+        }
+    }
+
+    /**
+     * Answer a request line from the current inventory.
+     *
+     * @return The reply, or {@code null} for a request we don't understand or for another inventory
+     */
+    public String answer(String request) {
+        RenderedInventory inventory = current.get();
+        String[] args = request.trim().split("\\s+");
+        if( !args[0].equals(key) ) {
+            return null;
+        }
+        if( args.length == 2 && args[1].equals("--list") ) {
+            return inventory.getList();
+        }
+        if( args.length == 3 && args[1].equals("--host") ) {
+            return inventory.getHost(args[2]);
+        }
+        return null;
+    }
+
+    private void handle(Socket socket) {
+        try (Socket client = socket) {
+            client.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+            String request = reader.readLine();
+            String reply = request != null ? answer(request) : null;
+
+            // An empty reply tells the wrapper to fall back to running the jar.
+            if( reply != null ) {
+                Writer writer = new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8);
+                writer.write(reply);
+                writer.write('\n');
+                writer.flush();
+            }
+        } catch (IOException e) {
+            // The client went away, nothing to tell it.
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,166 @@
+package com.oneops.inv;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What changed between two {@link InventorySnapshot}s, as one compact JSON object per line:
+ *
+ * <pre>
+ *   {"op":"add","host":"10.0.0.1","hostvars":{...}}
+ *   {"op":"change","host":"10.0.0.2","set":{"oo_size":"L"},"unset":["oo_tags"]}
+ *   {"op":"remove","host":"10.0.0.3"}
+ *   {"op":"group","group":"platform-web","add":["10.0.0.1"],"remove":["10.0.0.3"]}
+ * </pre>
+ *
+ * Hosts come in the order of the current snapshot, then the removed ones; groups likewise.  A change only has
+ * the hostvars that differ at the top level, with their whole new value.  Hostvars are compared as the strings
+ * they were rendered to first, so only the hosts that changed are parsed.
+ */
+public class InventoryDiff
+{
+    private InventoryDiff() {
+    }
+
+    /**
+     * Write the differences, nothing if there are none.  The writer is not flushed or closed.
+     *
+     * @param previous The saved inventory, or {@code null} if there is none and everything is new
+     * @return Number of lines written
+     */
+    public static int write(@Nullable InventorySnapshot previous, InventorySnapshot current, Writer writer)
+            throws IOException {
+        JsonStreamWriter json = new JsonStreamWriter(writer, 0);
+        int lines = 0;
+
+        Set<String> currentHosts = new HashSet<String>();
+        for( int host = 0; host < current.getHostCount(); host++ ) {
+            String hostId = current.getHostId(host);
+            String hostvars = current.getHostvars(host);
+            currentHosts.add(hostId);
+
+            String previousHostvars = previous == null ? null : previous.getHost(hostId.trim());
+            if( previousHostvars == null ) {
+                json.beginObject(3).key("op").value("add").key("host").value(hostId)
+                        .key("hostvars").value(new JSONObject(hostvars)).endObject();
+                lines = line(writer, lines);
+            } else if( !previousHostvars.equals(hostvars) && writeChange(json, hostId, new JSONObject(previousHostvars),
+                    new JSONObject(hostvars)) ) {
+                lines = line(writer, lines);
+            }
+        }
+
+        if( previous != null ) {
+            for( int host = 0; host < previous.getHostCount(); host++ ) {
+                String hostId = previous.getHostId(host);
+                if( !currentHosts.contains(hostId) ) {
+                    json.beginObject(2).key("op").value("remove").key("host").value(hostId).endObject();
+                    lines = line(writer, lines);
+                }
+            }
+        }
+
+        Map<String, List<String>> previousGroups = new LinkedHashMap<String, List<String>>();
+        if( previous != null ) {
+            for( int group = 0; group < previous.getGroupCount(); group++ ) {
+                previousGroups.put(previous.getGroupName(group), previous.getGroupHostIds(group));
+            }
+        }
+        for( int group = 0; group < current.getGroupCount(); group++ ) {
+            String name = current.getGroupName(group);
+            List<String> members = previousGroups.remove(name);
+            if( writeMembership(json, name, members == null ? Collections.<String>emptyList() : members,
+                    current.getGroupHostIds(group)) ) {
+                lines = line(writer, lines);
+            }
+        }
+        // Whatever is left is gone
+        for( Map.Entry<String, List<String>> group : previousGroups.entrySet() ) {
+            if( writeMembership(json, group.getKey(), group.getValue(), Collections.<String>emptyList()) ) {
+                lines = line(writer, lines);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @return {@code false} if the hostvars only differ in layout and nothing was written
+     */
+    private static boolean writeChange(JsonStreamWriter json, String hostId, JSONObject before, JSONObject after)
+            throws IOException {
+        JSONObject set = new JSONObject();
+        for( String key : after.keySet() ) {
+            if( !before.has(key) || !same(before.get(key), after.get(key)) ) {
+                set.put(key, after.get(key));
+            }
+        }
+        JSONArray unset = new JSONArray();
+        for( String key : before.keySet() ) {
+            if( !after.has(key) ) {
+                unset.put(key);
+            }
+        }
+        if( set.length() == 0 && unset.length() == 0 ) {
+            return false;
+        }
+
+        json.beginObject(4).key("op").value("change").key("host").value(hostId)
+                .key("set").value(set).key("unset").value(unset).endObject();
+        return true;
+    }
+
+    /**
+     * @return {@code false} if the group has the same hosts and nothing was written
+     */
+    private static boolean writeMembership(JsonStreamWriter json, String group, List<String> before, List<String> after)
+            throws IOException {
+        Set<String> beforeSet = new LinkedHashSet<String>(before);
+        Set<String> afterSet = new LinkedHashSet<String>(after);
+        JSONArray added = new JSONArray();
+        for( String hostId : afterSet ) {
+            if( !beforeSet.contains(hostId) ) {
+                added.put(hostId);
+            }
+        }
+        JSONArray removed = new JSONArray();
+        for( String hostId : beforeSet ) {
+            if( !afterSet.contains(hostId) ) {
+                removed.put(hostId);
+            }
+        }
+        if( added.length() == 0 && removed.length() == 0 ) {
+            return false;
+        }
+
+        json.beginObject(4).key("op").value("group").key("group").value(group)
+                .key("add").value(added).key("remove").value(removed).endObject();
+        return true;
+    }
+
+    private static boolean same(Object before, Object after) {
+        if( before instanceof JSONObject ) {
+            return ((JSONObject) before).similar(after);
+        }
+        if( before instanceof JSONArray ) {
+            return ((JSONArray) before).similar(after);
+        }
+        return before.equals(after);
+    }
+
+    private static int line(Writer writer, int lines) throws IOException {
+        writer.write('\n');
+        return lines + 1;
+    }
+}
@@ -0,0 +1,82 @@
+package com.oneops.inv;
+
+import javax.annotation.Nullable;
+
+/**
+ * Hooks around every OneOps API call and every crawl and generation phase, for a profiler to see them.
+ *
+ * This does nothing.  When the JDK has Flight Recorder and the jar was built with it (the jfr profile, on by
+ * default from JDK 11), {@link #load()} returns FlightRecorderEvents instead, which turns the hooks into JFR
+ * events that JDK Mission Control shows next to the threads and allocations.  Disabled JFR events cost a
+ * field check, so the hooks stay in all the time.
+ */
+public class InventoryEvents
+{
+    private static final String FLIGHT_RECORDER_EVENTS = "com.oneops.inv.FlightRecorderEvents";
+
+    /**
+     * Hooks that do nothing.
+     */
+    public static final InventoryEvents NONE = new InventoryEvents();
+
+    /**
+     * A call in progress.
+     */
+    public interface Call
+    {
+        void end(boolean failed);
+    }
+
+    /**
+     * A phase in progress.
+     */
+    public interface Phase
+    {
+        /**
+         * @param hosts Hosts the phase gathered or generated
+         * @param groups Groups the phase gathered or generated
+         */
+        void end(int hosts, int groups);
+    }
+
+    private static final Call NO_CALL = failed -> { };
+
+    private static final Phase NO_PHASE = (hosts, groups) -> { };
+
+    /**
+     * The Flight Recorder events if they are available, otherwise {@link #NONE}.
+     */
+    public static InventoryEvents load() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (InventoryEvents) Class.forName(FLIGHT_RECORDER_EVENTS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // A Java 8 runtime, or a jar built without the jfr profile
+            return NONE;
+        }
+    }
+
+    /**
+     * Start of a OneOps API call.
+     *
+     * @param method Name of the {@link OneOpsSource} method
+     */
+    public Call beginCall(String method, String org, @Nullable String env, @Nullable String platform,
+                          @Nullable String component) {
+        return NO_CALL;
+    }
+
+    /**
+     * Start of a crawl or generation phase, such as "gather" or "writeList".
+     */
+    public Phase beginPhase(String phase) {
+        return NO_PHASE;
+    }
+
+    /**
+     * Whether the hooks do anything, so callers can skip wrapping things in them.
+     */
+    public boolean isActive() {
+        return false;
+    }
+}
@@ -4,4 +4,8 @@ public class InventoryException extends Exception {
     public InventoryException(String message) {
         super(message);
     }
+
+    public InventoryException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
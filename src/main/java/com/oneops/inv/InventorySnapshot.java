@@ -0,0 +1,338 @@
+package com.oneops.inv;
+
+import org.json.JSONArray;
+
+import javax.annotation.Nullable;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A rendered inventory in a compact binary file that is read through a {@link MappedByteBuffer}.
+ *
+ * A new JVM answering --host from the JSON cache has to parse the whole list to find one host.  From a snapshot
+ * it hashes the host id, probes the index and reads one string, which touches a few pages no matter how big the
+ * assembly is.  --list streams the groups straight out of the buffer without building any JSON tree.
+ *
+ * Layout, all ints big-endian:
+ * <pre>
+ *   header   MAGIC, VERSION, host count, group count, index slot count,
+ *            offsets of the hosts, index, groups and strings sections
+ *   hosts    per host: id string, hostvars string
+ *   index    open addressing on the trimmed host id's hashCode, linear probing: host number + 1, 0 if empty
+ *   groups   offset of each group record, then the records: name string, vars string (-1 for a group that
+ *            is just a list of hosts), host count, host numbers
+ *   strings  string table: byte length and UTF-8 bytes, each distinct string once
+ * </pre>
+ * A "string" anywhere else is an offset into the string table.  Hostvars and group vars are stored as
+ * {@code toString(2)} renders them, and indented to fit when written into a list.
+ */
+public class InventorySnapshot
+{
+    private static final int MAGIC = 0x4F4F494E;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 9 * 4;
+
+    private final ByteBuffer buffer;
+
+    private final int hostCount;
+
+    private final int groupCount;
+
+    private final int slotCount;
+
+    private final int hostsOffset;
+
+    private final int indexOffset;
+
+    private final int groupsOffset;
+
+    private final int stringsOffset;
+
+    private InventorySnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if( buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC ) {
+            throw new IOException("Not an inventory snapshot");
+        }
+        if( buffer.getInt(4) != VERSION ) {
+            throw new IOException("Unsupported inventory snapshot version: " + buffer.getInt(4));
+        }
+        hostCount = buffer.getInt(8);
+        groupCount = buffer.getInt(12);
+        slotCount = buffer.getInt(16);
+        hostsOffset = buffer.getInt(20);
+        indexOffset = buffer.getInt(24);
+        groupsOffset = buffer.getInt(28);
+        stringsOffset = buffer.getInt(32);
+
+        // A damaged file with a good header must fail here, not with an index error half way through a lookup
+        if( hostCount < 0 || groupCount < 0 || slotCount < 1
+                || hostsOffset != HEADER_BYTES
+                || indexOffset != hostsOffset + hostCount * 8L
+                || groupsOffset != indexOffset + slotCount * 4L
+                || stringsOffset < groupsOffset + groupCount * 4L
+                || stringsOffset > buffer.limit() ) {
+            throw new IOException("Damaged inventory snapshot");
+        }
+    }
+
+    /**
+     * Map a snapshot file.  The mapping stays valid after the file is replaced, the old contents are kept
+     * until the buffer is garbage collected.
+     */
+    public static InventorySnapshot open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            return new InventorySnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int getHostCount() {
+        return hostCount;
+    }
+
+    /**
+     * Hostvars of a single host, rendered like {@code toString(2)}.
+     *
+     * @return The hostvars, or {@code null} if there is no such host
+     */
+    @Nullable
+    public String getHost(String hostId) {
+        int slot = slot(hostId, slotCount);
+        // The writer leaves at least half the slots empty, so only a damaged index goes all the way round
+        for( int probes = 0; probes < slotCount; probes++ ) {
+            int host = buffer.getInt(indexOffset + slot * 4) - 1;
+            if( host < 0 ) {
+                return null;
+            }
+            if( hostId.equals(getHostId(host).trim()) ) {
+                return getHostvars(host);
+            }
+            slot = (slot + 1) % slotCount;
+        }
+        return null;
+    }
+
+    /**
+     * Write the full --list inventory, laid out exactly as {@link Inventory#writeList(Writer)} does.
+     *
+     * The writer is not flushed or closed.
+     */
+    public void writeList(Writer writer) throws IOException {
+        JsonStreamWriter json = new JsonStreamWriter(writer, 2);
+        json.beginObject(1 + groupCount);
+
+        json.key("_meta").beginObject(1);
+        json.key("hostvars").beginObject(hostCount);
+        for( int host = 0; host < hostCount; host++ ) {
+            json.key(getHostId(host));
+            json.renderedValue(getHostvars(host));
+        }
+        json.endObject();
+        json.endObject();
+
+        for( int group = 0; group < groupCount; group++ ) {
+            int vars = buffer.getInt(groupRecord(group) + 4);
+            JSONArray hosts = new JSONArray(getGroupHostIds(group));
+
+            json.key(getGroupName(group));
+            if( vars < 0 ) {
+                json.value(hosts);
+            } else {
+                json.beginObject(2).key("hosts").value(hosts).key("vars").renderedValue(string(vars)).endObject();
+            }
+        }
+        json.endObject();
+    }
+
+    /**
+     * Id of the n-th host, as the list has it.
+     */
+    public String getHostId(int host) {
+        return string(buffer.getInt(hostsOffset + host * 8));
+    }
+
+    /**
+     * Hostvars of the n-th host, rendered like {@code toString(2)}.
+     */
+    public String getHostvars(int host) {
+        return string(buffer.getInt(hostsOffset + host * 8 + 4));
+    }
+
+    public int getGroupCount() {
+        return groupCount;
+    }
+
+    public String getGroupName(int group) {
+        return string(buffer.getInt(groupRecord(group)));
+    }
+
+    /**
+     * Ids of the hosts in the n-th group, in order.
+     */
+    public List<String> getGroupHostIds(int group) {
+        int record = groupRecord(group);
+        int size = buffer.getInt(record + 8);
+        List<String> hostIds = new ArrayList<String>(size);
+        for( int i = 0; i < size; i++ ) {
+            hostIds.add( getHostId(buffer.getInt(record + 12 + i * 4)) );
+        }
+        return hostIds;
+    }
+
+    private int groupRecord(int group) {
+        return groupsOffset + buffer.getInt(groupsOffset + group * 4);
+    }
+
+    private String string(int ref) {
+        int position = stringsOffset + ref;
+        byte[] bytes = new byte[buffer.getInt(position)];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + 4);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int slot(String hostId, int slotCount) {
+        return (hostId.hashCode() & 0x7fffffff) % slotCount;
+    }
+
+    /**
+     * Collects a rendered inventory and writes it as a snapshot.  Hosts have to be added before the groups
+     * that reference them.
+     */
+    public static class Builder
+    {
+        private final List<Integer> hosts = new ArrayList<Integer>();
+
+        private final Map<String, Integer> hostNumbers = new HashMap<String, Integer>();
+
+        private final List<int[]> groups = new ArrayList<int[]>();
+
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+        private final List<byte[]> stringBytes = new ArrayList<byte[]>();
+
+        private int stringsSize;
+
+        /**
+         * @param hostId The host identifier, as the list has it
+         * @param hostvars The host's hostvars rendered with {@code toString(2)}
+         */
+        public Builder addHost(String hostId, String hostvars) {
+            if( hostNumbers.containsKey(hostId) ) {
+                throw new IllegalArgumentException("Duplicate host: " + hostId);
+            }
+            hostNumbers.put(hostId, hosts.size() / 2);
+            hosts.add(string(hostId));
+            hosts.add(string(hostvars));
+            return this;
+        }
+
+        /**
+         * @param name The group name
+         * @param vars The group vars rendered with {@code toString(2)}, or {@code null} for a group that is only
+         *             a list of hosts
+         * @param hostIds Ids of hosts already added, in order
+         */
+        public Builder addGroup(String name, @Nullable String vars, List<String> hostIds) {
+            int[] group = new int[3 + hostIds.size()];
+            group[0] = string(name);
+            group[1] = vars == null ? -1 : string(vars);
+            group[2] = hostIds.size();
+            for( int i = 0; i < hostIds.size(); i++ ) {
+                Integer host = hostNumbers.get(hostIds.get(i));
+                if( host == null ) {
+                    throw new IllegalArgumentException("Group " + name + " has unknown host: " + hostIds.get(i));
+                }
+                group[3 + i] = host;
+            }
+            groups.add(group);
+            return this;
+        }
+
+        private int string(String value) {
+            Integer ref = strings.get(value);
+            if( ref == null ) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                ref = stringsSize;
+                strings.put(value, ref);
+                stringBytes.add(bytes);
+                stringsSize += 4 + bytes.length;
+            }
+            return ref;
+        }
+
+        public void writeTo(OutputStream stream) throws IOException {
+            int hostCount = hosts.size() / 2;
+            // Half full at most, so a probe for a missing host ends quickly
+            int slotCount = Math.max(1, hostCount * 2);
+            int[] index = new int[slotCount];
+            for( Map.Entry<String, Integer> host : hostNumbers.entrySet() ) {
+                int slot = slot(host.getKey().trim(), slotCount);
+                while( index[slot] != 0 ) {
+                    slot = (slot + 1) % slotCount;
+                }
+                index[slot] = host.getValue() + 1;
+            }
+
+            int groupsSize = groups.size() * 4;
+            for( int[] group : groups ) {
+                groupsSize += group.length * 4;
+            }
+
+            int hostsOffset = HEADER_BYTES;
+            int indexOffset = hostsOffset + hosts.size() * 4;
+            int groupsOffset = indexOffset + slotCount * 4;
+            int stringsOffset = groupsOffset + groupsSize;
+
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(hostCount);
+            out.writeInt(groups.size());
+            out.writeInt(slotCount);
+            out.writeInt(hostsOffset);
+            out.writeInt(indexOffset);
+            out.writeInt(groupsOffset);
+            out.writeInt(stringsOffset);
+
+            for( int ref : hosts ) {
+                out.writeInt(ref);
+            }
+            for( int slot : index ) {
+                out.writeInt(slot);
+            }
+
+            int record = groups.size() * 4;
+            for( int[] group : groups ) {
+                out.writeInt(record);
+                record += group.length * 4;
+            }
+            for( int[] group : groups ) {
+                for( int value : group ) {
+                    out.writeInt(value);
+                }
+            }
+
+            for( byte[] bytes : stringBytes ) {
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.oneops.inv;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where the time of a run went: the latency of every OneOps API call by method, the API time spent on each
+ * platform, and the time of each generation phase.
+ *
+ * Calls are recorded by a {@link StatsSource} from the fetch threads, phases by {@link Inventory} and
+ * {@link Main}; everything is safe to record from several threads at once.  {@link #toJson()} is the summary
+ * --stats prints.
+ */
+public class InventoryStats
+{
+    public static final String PHASE_GATHER = "gather";
+    public static final String PHASE_HOSTVARS = "hostvars";
+    public static final String PHASE_GROUPS = "groups";
+    public static final String PHASE_SERIALIZATION = "serialization";
+
+    /**
+     * Platforms listed in the summary, slowest first.
+     */
+    static final int SLOWEST_PLATFORMS = 10;
+
+    private final Map<String, Latencies> calls = new LinkedHashMap<String, Latencies>();
+
+    private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+
+    private final Map<List<String>, Latencies> platforms = new LinkedHashMap<List<String>, Latencies>();
+
+    /**
+     * Record one OneOps API call.
+     *
+     * @param method Name of the {@link OneOpsSource} method
+     * @param env Environment the call was about, or {@code null}
+     * @param platform Platform the call was about, or {@code null}
+     * @param nanos How long it took
+     * @param failed Whether it threw
+     */
+    public synchronized void addCall(String method, @Nullable String env, @Nullable String platform, long nanos,
+                                     boolean failed) {
+        Latencies latencies = calls.get(method);
+        if( latencies == null ) {
+            latencies = new Latencies();
+            calls.put(method, latencies);
+        }
+        latencies.add(nanos, failed);
+
+        if( env != null && platform != null ) {
+            List<String> key = Arrays.asList(env, platform);
+            Latencies platformLatencies = platforms.get(key);
+            if( platformLatencies == null ) {
+                platformLatencies = new Latencies();
+                platforms.put(key, platformLatencies);
+            }
+            platformLatencies.add(nanos, failed);
+        }
+    }
+
+    /**
+     * Add time spent in a phase.  Phases can be entered more than once, their times add up.
+     */
+    public synchronized void addPhase(String phase, long nanos) {
+        Long total = phases.get(phase);
+        phases.put(phase, total == null ? nanos : total + nanos);
+    }
+
+    /**
+     * Total time recorded for a phase, 0 if it never ran.
+     */
+    public synchronized long getPhaseNanos(String phase) {
+        Long total = phases.get(phase);
+        return total == null ? 0 : total;
+    }
+
+    /**
+     * Number of calls recorded of a method.
+     */
+    public synchronized int getCallCount(String method) {
+        Latencies latencies = calls.get(method);
+        return latencies == null ? 0 : latencies.size;
+    }
+
+    /**
+     * The summary, times in milliseconds:
+     * <pre>
+     * {
+     *   "phases": { "gather": 2104.6, "hostvars": 388.1, "groups": 12.9, "serialization": 97.3 },
+     *   "calls": { "listInstances": { "count": 412, "errors": 0, "total_ms": ..., "p50_ms": ..., "p99_ms": ..., "max_ms": ... }, ... },
+     *   "slowest_platforms": [ { "environment": "prod", "platform": "web", "calls": 9, "errors": 0, "total_ms": ..., "max_ms": ... }, ... ]
+     * }
+     * </pre>
+     */
+    public synchronized JSONObject toJson() {
+        JSONObject json = new JSONObject();
+
+        JSONObject phasesJson = new JSONObject();
+        for( Map.Entry<String, Long> phase : phases.entrySet() ) {
+            phasesJson.put(phase.getKey(), millis(phase.getValue()));
+        }
+        json.put("phases", phasesJson);
+
+        JSONObject callsJson = new JSONObject();
+        for( Map.Entry<String, Latencies> call : calls.entrySet() ) {
+            Latencies latencies = call.getValue();
+            callsJson.put(call.getKey(), new JSONObject()
+                    .put("count", latencies.size)
+                    .put("errors", latencies.errors)
+                    .put("total_ms", millis(latencies.total))
+                    .put("p50_ms", millis(latencies.percentile(50)))
+                    .put("p99_ms", millis(latencies.percentile(99)))
+                    .put("max_ms", millis(latencies.percentile(100))));
+        }
+        json.put("calls", callsJson);
+
+        List<Map.Entry<List<String>, Latencies>> slowest =
+                new ArrayList<Map.Entry<List<String>, Latencies>>(platforms.entrySet());
+        Collections.sort(slowest, Comparator.comparingLong(
+                (Map.Entry<List<String>, Latencies> platform) -> platform.getValue().total).reversed());
+        JSONArray platformsJson = new JSONArray();
+        for( Map.Entry<List<String>, Latencies> platform : slowest.subList(0, Math.min(SLOWEST_PLATFORMS, slowest.size())) ) {
+            Latencies latencies = platform.getValue();
+            platformsJson.put(new JSONObject()
+                    .put("environment", platform.getKey().get(0))
+                    .put("platform", platform.getKey().get(1))
+                    .put("calls", latencies.size)
+                    .put("errors", latencies.errors)
+                    .put("total_ms", millis(latencies.total))
+                    .put("max_ms", millis(latencies.percentile(100))));
+        }
+        json.put("slowest_platforms", platformsJson);
+
+        return json;
+    }
+
+    /**
+     * Nanoseconds as milliseconds, to the microsecond.
+     */
+    private static double millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos) / 1000.0;
+    }
+
+    /**
+     * Every latency of something, kept so percentiles are exact - even a large assembly makes only thousands
+     * of calls.
+     */
+    private static class Latencies
+    {
+        private long[] nanos = new long[16];
+        private int size;
+        private int errors;
+        private long total;
+        private boolean sorted = true;
+
+        void add(long latency, boolean failed) {
+            if( size == nanos.length ) {
+                nanos = Arrays.copyOf(nanos, size * 2);
+            }
+            nanos[size++] = latency;
+            total += latency;
+            if( failed ) {
+                errors++;
+            }
+            sorted = false;
+        }
+
+        /**
+         * Nearest-rank percentile, 0 if there are no latencies.
+         */
+        long percentile(int percent) {
+            if( size == 0 ) {
+                return 0;
+            }
+            if( !sorted ) {
+                Arrays.sort(nanos, 0, size);
+                sorted = true;
+            }
+            int rank = (int) Math.ceil(percent / 100.0 * size);
+            return nanos[Math.max(rank, 1) - 1];
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.oneops.inv;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a static --list inventory file up to date.
+ *
+ * Crawls on a schedule, hashes the rendered list, and only when it hashes differently from what the file holds
+ * renders it again into a temporary file next to the file and renames that over the old one.  Readers such as
+ * {@code ansible-playbook -i file} or AWX always see a whole inventory, and a crawl that found nothing new
+ * writes nothing.  A failed crawl leaves the file as it was.
+ */
+public class InventoryWatcher
+{
+    /**
+     * Crawls OneOps.
+     */
+    public interface Crawler
+    {
+        /**
+         * @return The current inventory, which writes the same list every time it's asked
+         */
+        ListWriter crawl() throws InventoryException, IOException;
+    }
+
+    /**
+     * Writes a --list inventory.
+     */
+    public interface ListWriter
+    {
+        void writeList(Writer list) throws InventoryException, IOException;
+    }
+
+    /**
+     * Where the list goes when all we want is its hash.
+     */
+    private static final OutputStream NOWHERE = new OutputStream()
+    {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private final Crawler crawler;
+
+    private final File output;
+
+    private final long intervalSeconds;
+
+    /**
+     * SHA-256 of what the output file holds, {@code null} before it was first read or written.
+     */
+    private byte[] writtenHash;
+
+    /**
+     * @param crawler How to build the inventory
+     * @param output The inventory file to keep up to date
+     * @param intervalSeconds Delay between the end of one crawl and the start of the next
+     */
+    public InventoryWatcher(Crawler crawler, File output, long intervalSeconds) {
+        this.crawler = crawler;
+        this.output = output;
+        this.intervalSeconds = intervalSeconds;
+    }
+
+    /**
+     * Crawl, then crawl again every interval until the thread is interrupted.
+     *
+     * @throws InventoryException If the first crawl fails - there's no inventory to write without it
+     * @throws IOException If the file can't be written the first time
+     */
+    public void run() throws InventoryException, IOException {
+        refresh();
+        System.err.println("Writing inventory to " + output + " every " + intervalSeconds + "s");
+
+        try {
+            while( !Thread.currentThread().isInterrupted() ) {
+                TimeUnit.SECONDS.sleep(intervalSeconds);
+                refreshQuietly();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Crawl and replace the file if the inventory changed.
+     *
+     * @return Whether the file was replaced
+     */
+    public boolean refresh() throws InventoryException, IOException {
+        ListWriter list = crawler.crawl();
+
+        // Hash it without writing it anywhere, and only write it out when the hash changed
+        MessageDigest digest = sha256();
+        write(list, new DigestOutputStream(NOWHERE, digest));
+        byte[] hash = digest.digest();
+        if( writtenHash == null && output.isFile() ) {
+            writtenHash = hashFile(output);
+        }
+        if( Arrays.equals(hash, writtenHash) ) {
+            return false;
+        }
+
+        try (AtomicFile atomic = new AtomicFile(output)) {
+            write(list, atomic.openStream());
+            atomic.commit();
+        }
+        writtenHash = hash;
+        return true;
+    }
+
+    private static void write(ListWriter list, OutputStream out) throws InventoryException, IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            list.writeList(writer);
+            writer.write('\n');
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (InventoryException | IOException | RuntimeException e) {
+            System.err.println("Inventory refresh failed, leaving " + output + " as it was: " + e);
+        }
+    }
+
+    private static byte[] hashFile(File file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int count;
+            while( (count = in.read(buffer)) != -1 ) {
+                digest.update(buffer, 0, count);
+            }
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("No SHA-256", e);
+        }
+    }
+}
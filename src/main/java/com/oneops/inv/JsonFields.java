@@ -0,0 +1,265 @@
+package com.oneops.inv;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pulls a few fields out of the JSON documents OneOps packs into string attributes - a compute's "metadata",
+ * a hostname's "entries", an FQDN's "aliases" - in a single pass, without building a JSONObject for them.
+ *
+ * Parsing those with org.json used to dominate the CPU profile of --list: every host built a map of its whole
+ * metadata to read eight strings out of it.  Values we don't ask for are skipped over, not parsed.
+ *
+ * Only strict JSON is accepted, which is what OneOps writes; anything else is a {@link JSONException}.
+ */
+public final class JsonFields
+{
+    private final String json;
+
+    private int position;
+
+    private JsonFields(String json) {
+        this.json = json;
+    }
+
+    /**
+     * Read the named fields of a JSON object, as the values {@link JSONObject} would have: strings are unescaped,
+     * numbers and booleans keep their type, and objects and arrays are parsed.
+     *
+     * @return The fields that are present and not {@code null}, by name
+     */
+    public static Map<String, Object> fields(String json, Set<String> names) {
+        JsonFields parser = new JsonFields(json);
+        Map<String, Object> fields = new HashMap<String, Object>();
+
+        parser.expect('{');
+        if( !parser.consume('}') ) {
+            do {
+                String name = parser.readString();
+                parser.expect(':');
+                if( names.contains(name) ) {
+                    Object value = parser.readValue();
+                    if( value != null ) {
+                        fields.put(name, value);
+                    }
+                    if( fields.size() == names.size() ) {
+                        // Everything we came for, never mind the rest
+                        return fields;
+                    }
+                } else {
+                    parser.skipValue();
+                }
+            } while( parser.consume(',') );
+            parser.expect('}');
+        }
+        parser.expectEnd();
+        return fields;
+    }
+
+    /**
+     * Add the names of a JSON object's fields to the collection, in document order.
+     */
+    public static void names(String json, Collection<String> names) {
+        JsonFields parser = new JsonFields(json);
+
+        parser.expect('{');
+        if( !parser.consume('}') ) {
+            do {
+                names.add( parser.readString() );
+                parser.expect(':');
+                parser.skipValue();
+            } while( parser.consume(',') );
+            parser.expect('}');
+        }
+        parser.expectEnd();
+    }
+
+    /**
+     * Read a JSON array of strings.
+     */
+    public static List<String> strings(String json) {
+        JsonFields parser = new JsonFields(json);
+        List<String> strings = new ArrayList<String>();
+
+        parser.expect('[');
+        if( !parser.consume(']') ) {
+            do {
+                strings.add( parser.readString() );
+            } while( parser.consume(',') );
+            parser.expect(']');
+        }
+        parser.expectEnd();
+        return strings;
+    }
+
+    @Nullable
+    private Object readValue() {
+        skipWhitespace();
+        char c = peek();
+        if( c == '"' ) {
+            return readString();
+        }
+        int start = position;
+        skipValue();
+        String value = json.substring(start, position);
+        if( c == '{' ) {
+            return new JSONObject(value);
+        }
+        if( c == '[' ) {
+            return new JSONArray(value);
+        }
+        Object scalar = JSONObject.stringToValue(value);
+        return scalar == JSONObject.NULL ? null : scalar;
+    }
+
+    private void skipValue() {
+        skipWhitespace();
+        char c = peek();
+        if( c == '"' ) {
+            skipString();
+        } else if( c == '{' || c == '[' ) {
+            // Count brackets, strings are the only place they can hide
+            int depth = 0;
+            do {
+                c = peek();
+                if( c == '"' ) {
+                    skipString();
+                    continue;
+                }
+                if( c == '{' || c == '[' ) {
+                    depth++;
+                } else if( c == '}' || c == ']' ) {
+                    depth--;
+                }
+                position++;
+            } while( depth > 0 );
+        } else {
+            int start = position;
+            while( position < json.length() && ",}] \t\r\n".indexOf(json.charAt(position)) == -1 ) {
+                position++;
+            }
+            if( position == start ) {
+                throw error("Expected a value");
+            }
+        }
+    }
+
+    private String readString() {
+        skipWhitespace();
+        if( peek() != '"' ) {
+            throw error("Expected a string");
+        }
+        int start = ++position;
+
+        // Most strings have no escapes and can be cut straight out of the document
+        while( peek() != '"' ) {
+            if( json.charAt(position) == '\\' ) {
+                return readEscapedString(start);
+            }
+            position++;
+        }
+        return json.substring(start, position++);
+    }
+
+    private String readEscapedString(int start) {
+        StringBuilder value = new StringBuilder(json.substring(start, position));
+        while( true ) {
+            char c = peek();
+            position++;
+            if( c == '"' ) {
+                return value.toString();
+            }
+            if( c != '\\' ) {
+                value.append(c);
+                continue;
+            }
+            c = peek();
+            position++;
+            switch( c ) {
+                case 'b': value.append('\b'); break;
+                case 't': value.append('\t'); break;
+                case 'n': value.append('\n'); break;
+                case 'f': value.append('\f'); break;
+                case 'r': value.append('\r'); break;
+                case 'u':
+                    if( position + 4 > json.length() ) {
+                        throw error("Illegal escape");
+                    }
+                    try {
+                        value.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Illegal escape");
+                    }
+                    position += 4;
+                    break;
+                case '"':
+                case '\\':
+                case '/':
+                    value.append(c);
+                    break;
+                default:
+                    throw error("Illegal escape");
+            }
+        }
+    }
+
+    private void skipString() {
+        position++;
+        while( peek() != '"' ) {
+            if( json.charAt(position) == '\\' ) {
+                position++;
+            }
+            position++;
+        }
+        position++;
+    }
+
+    private void skipWhitespace() {
+        while( position < json.length() && Character.isWhitespace(json.charAt(position)) ) {
+            position++;
+        }
+    }
+
+    private boolean consume(char c) {
+        skipWhitespace();
+        if( position < json.length() && json.charAt(position) == c ) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        if( !consume(c) ) {
+            throw error("Expected '" + c + "'");
+        }
+    }
+
+    private void expectEnd() {
+        skipWhitespace();
+        if( position != json.length() ) {
+            throw error("Unexpected text after the document");
+        }
+    }
+
+    private char peek() {
+        if( position >= json.length() ) {
+            throw error("Unexpected end of document");
+        }
+        return json.charAt(position);
+    }
+
+    private JSONException error(String message) {
+        return new JSONException(message + " at " + position + " in " + json);
+    }
+}
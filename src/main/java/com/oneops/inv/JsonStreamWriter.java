@@ -0,0 +1,164 @@
+package com.oneops.inv;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Writes a large JSON object straight to a {@link Writer} without building it in memory first.
+ *
+ * Only the containers are streamed; the values inside are small {@link JSONObject}s and {@link JSONArray}s
+ * written with org.json's own writer.  The layout matches {@link JSONObject#toString(int)}, which puts an
+ * object with a single key on one line - that's why every object has to say up front how many keys it has.
+ */
+public class JsonStreamWriter
+{
+    private final Writer out;
+
+    private final int indentFactor;
+
+    private final Deque<Frame> frames = new ArrayDeque<Frame>();
+
+    /**
+     * Indentation for the next value.
+     */
+    private int valueIndent;
+
+    public JsonStreamWriter(Writer out, int indentFactor) {
+        this.out = out;
+        this.indentFactor = indentFactor;
+    }
+
+    /**
+     * Start an object, either at the top or as the value of the last {@link #key(String)}.
+     *
+     * @param size Exactly how many keys the object will get
+     */
+    public JsonStreamWriter beginObject(int size) throws IOException {
+        frames.push( new Frame(size, valueIndent) );
+        out.write('{');
+        return this;
+    }
+
+    public JsonStreamWriter key(String key) throws IOException {
+        Frame frame = frames.peek();
+        if( frame == null || frame.count == frame.size ) {
+            throw new IllegalStateException("Too many keys, at " + key);
+        }
+
+        if( frame.size == 1 ) {
+            valueIndent = frame.indent;
+        } else {
+            if( frame.count > 0 ) {
+                out.write(',');
+            }
+            newline(frame.indent + indentFactor);
+            valueIndent = frame.indent + indentFactor;
+        }
+        frame.count++;
+
+        out.write(JSONObject.quote(key));
+        out.write(':');
+        if( indentFactor > 0 ) {
+            out.write(' ');
+        }
+        return this;
+    }
+
+    public JsonStreamWriter value(JSONObject value) throws IOException {
+        value.write(out, indentFactor, valueIndent);
+        return this;
+    }
+
+    public JsonStreamWriter value(JSONArray value) throws IOException {
+        value.write(out, indentFactor, valueIndent);
+        return this;
+    }
+
+    /**
+     * Write any value a {@link JSONObject} can hold.
+     */
+    public JsonStreamWriter value(Object value) throws IOException {
+        if( value instanceof JSONObject ) {
+            return value((JSONObject) value);
+        }
+        if( value instanceof JSONArray ) {
+            return value((JSONArray) value);
+        }
+        out.write(JSONObject.valueToString(value));
+        return this;
+    }
+
+    /**
+     * Write a value that has already been rendered at the right indentation.
+     */
+    public JsonStreamWriter rawValue(String json) throws IOException {
+        out.write(json);
+        return this;
+    }
+
+    /**
+     * Write a value rendered at the top level, e.g. with {@link JSONObject#toString(int)}, indenting it to fit.
+     * Strings in JSON can't hold a raw line break, so every line break is one of the layout's.
+     */
+    public JsonStreamWriter renderedValue(String json) throws IOException {
+        int start = 0;
+        for( int i = json.indexOf('\n'); i != -1; i = json.indexOf('\n', start) ) {
+            out.write(json, start, i - start);
+            newline(valueIndent);
+            start = i + 1;
+        }
+        out.write(json, start, json.length() - start);
+        return this;
+    }
+
+    public JsonStreamWriter endObject() throws IOException {
+        Frame frame = frames.pop();
+        if( frame.count != frame.size ) {
+            throw new IllegalStateException("Object declared " + frame.size + " keys but got " + frame.count);
+        }
+        if( frame.size > 1 ) {
+            newline(frame.indent);
+        }
+        out.write('}');
+        valueIndent = frame.indent;
+        return this;
+    }
+
+    /**
+     * Indentation of the value that goes after the last key, for callers pre-rendering with
+     * {@link JSONObject#write(Writer, int, int)}.
+     */
+    public int getValueIndent() {
+        return valueIndent;
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private void newline(int indent) throws IOException {
+        if( indentFactor > 0 ) {
+            out.write('\n');
+        }
+        for( int i = 0; i < indent; i++ ) {
+            out.write(' ');
+        }
+    }
+
+    private static class Frame
+    {
+        final int size;
+        final int indent;
+        int count;
+
+        Frame(int size, int indent) {
+            this.size = size;
+            this.indent = indent;
+        }
+    }
+}
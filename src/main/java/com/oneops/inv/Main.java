@@ -1,5 +1,18 @@
 package com.oneops.inv;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 import javax.annotation.Nullable;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -11,7 +24,10 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import static com.google.common.base.Preconditions.checkState;
 
@@ -32,15 +48,78 @@ public class Main
     @VisibleForTesting
     static final String ENV_OO_ENV = "OO_ENV";
 
+    @VisibleForTesting
+    static final String ENV_OO_TARGETS = "OO_TARGETS";
+
     @VisibleForTesting
     static final String ENV_OO_ENDPOINT = "OO_ENDPOINT";
 
     @VisibleForTesting
     static final String ENV_OO_HOST_METHOD = "OO_HOST_METHOD";
 
+    @VisibleForTesting
+    static final String ENV_OO_FETCH_PARALLELISM = "OO_FETCH_PARALLELISM";
+
+    @VisibleForTesting
+    static final String ENV_OO_API_RATE = "OO_API_RATE";
+
+    @VisibleForTesting
+    static final String ENV_OO_API_RETRIES = "OO_API_RETRIES";
+
+    @VisibleForTesting
+    static final String ENV_OO_RENDER_PARALLELISM = "OO_RENDER_PARALLELISM";
+
+    @VisibleForTesting
+    static final String ENV_OO_GROUP_VARS_ONLY = "OO_GROUP_VARS_ONLY";
+
+    @VisibleForTesting
+    static final String ENV_OO_CACHE_TTL = "OO_CACHE_TTL";
+
+    @VisibleForTesting
+    static final String ENV_OO_CACHE_GRACE = "OO_CACHE_GRACE";
+
+    @VisibleForTesting
+    static final String ENV_OO_CACHE_DIR = "OO_CACHE_DIR";
+
+    @VisibleForTesting
+    static final String ENV_OO_CRAWL_WAIT = "OO_CRAWL_WAIT";
+
+    @VisibleForTesting
+    static final long DEFAULT_CRAWL_WAIT = 300;
+
+    @VisibleForTesting
+    static final String ENV_OO_DAEMON_PORT = "OO_DAEMON_PORT";
+
+    @VisibleForTesting
+    static final String ENV_OO_RECORD = "OO_RECORD";
+
+    @VisibleForTesting
+    static final String ENV_OO_REPLAY = "OO_REPLAY";
+
+    @VisibleForTesting
+    static final String ENV_OO_DAEMON_REFRESH = "OO_DAEMON_REFRESH";
+
+    @VisibleForTesting
+    static final String ENV_OO_INCREMENTAL_MAX_AGE = "OO_INCREMENTAL_MAX_AGE";
+
     @VisibleForTesting
     static final String DEFAULT_HOST_METHOD = "public_ip";
 
+    @VisibleForTesting
+    static final long DEFAULT_API_RATE = 0;
+
+    @VisibleForTesting
+    static final int DEFAULT_API_RETRIES = 3;
+
+    @VisibleForTesting
+    static final int DEFAULT_DAEMON_PORT = 7311;
+
+    @VisibleForTesting
+    static final long DEFAULT_DAEMON_REFRESH = 300;
+
+    @VisibleForTesting
+    static final String DEFAULT_CACHE_DIR = System.getProperty("user.home") + "/.cache/oneops-inventory";
+
     private String apiToken;
 
     private String org;
@@ -50,13 +129,126 @@ public class Main
     @Nullable
     private String env;
 
+    /**
+     * Assemblies or environments to crawl into one inventory instead of org, assembly and env; {@code null} for
+     * just the one.
+     */
+    @Nullable
+    private List<Target> targets;
+
     private String endpoint;
 
     private String hostMethod;
 
+    private int fetchParallelism = Inventory.DEFAULT_FETCH_PARALLELISM;
+
+    private int renderParallelism = Inventory.DEFAULT_RENDER_PARALLELISM;
+
+    /**
+     * OneOps API calls per second for the whole run; {@code 0} for no limit.
+     */
+    private long apiRate = DEFAULT_API_RATE;
+
+    /**
+     * Times a throttled or failed API call is retried.
+     */
+    private int apiRetries = DEFAULT_API_RETRIES;
+
+    /**
+     * Paces and retries the API calls of every inventory of the run, and keeps what it learned between the
+     * daemon's crawls.
+     */
+    @Nullable
+    private CallGovernor callGovernor;
+
+    /**
+     * Leave global and platform variables out of hostvars, they are in the environment and platform groups.
+     */
+    private boolean groupVarsOnly;
+
+    /**
+     * Seconds a cached inventory is served for; {@code 0} disables the cache.
+     */
+    private long cacheTtl;
+
+    /**
+     * Seconds past its TTL a cached inventory is still served while it is refreshed in the background.
+     */
+    private long cacheGrace;
+
+    private String cacheDir = DEFAULT_CACHE_DIR;
+
+    /**
+     * Seconds to wait for another process crawling the same inventory before crawling ourselves.
+     */
+    private long crawlWait = DEFAULT_CRAWL_WAIT;
+
+    private boolean refreshCache;
+
+    private boolean daemon;
+
+    /**
+     * Print where the time went to stderr.
+     */
+    private boolean stats;
+
+    @Nullable
+    private InventoryStats inventoryStats;
+
+    private int daemonPort = DEFAULT_DAEMON_PORT;
+
+    /**
+     * Seconds between the daemon's crawls.
+     */
+    private long daemonRefresh = DEFAULT_DAEMON_REFRESH;
+
+    /**
+     * Seconds the daemon and --watch reuse the hosts of a platform that hasn't changed; {@code 0} crawls
+     * everything.
+     */
+    private long incrementalMaxAge;
+
+    /**
+     * The inventory the daemon and --watch keep between crawls.
+     */
+    @Nullable
+    private Inventory warmInventory;
+
+    @Nullable
+    private MultiInventory warmTargets;
+
+    /**
+     * Seconds between --watch crawls; {@code 0} when not watching.
+     */
+    private long watchInterval;
+
+    /**
+     * File --watch keeps the inventory in.
+     */
+    @Nullable
+    private String outputFile;
+
+    /**
+     * File to record the OneOps responses of the crawl into.
+     */
+    @Nullable
+    private String recordFile;
+
+    /**
+     * File of recorded OneOps responses to crawl instead of OneOps.
+     */
+    @Nullable
+    private String replayFile;
+
     @Nullable
     private String host;
 
+    /**
+     * Snapshot of the last run to print the differences from, then replace.
+     */
+    @Nullable
+    private String diffFile;
+
     public String getApiToken() {
         return apiToken;
     }
@@ -106,6 +298,179 @@ public class Main
         this.hostMethod = hostMethod;
     }
 
+    public int getFetchParallelism() {
+        return fetchParallelism;
+    }
+
+    public void setFetchParallelism(final int fetchParallelism) {
+        this.fetchParallelism = fetchParallelism;
+    }
+
+    public long getApiRate() {
+        return apiRate;
+    }
+
+    public void setApiRate(final long apiRate) {
+        this.apiRate = apiRate;
+    }
+
+    public int getApiRetries() {
+        return apiRetries;
+    }
+
+    public void setApiRetries(final int apiRetries) {
+        this.apiRetries = apiRetries;
+    }
+
+    public int getRenderParallelism() {
+        return renderParallelism;
+    }
+
+    public void setRenderParallelism(final int renderParallelism) {
+        this.renderParallelism = renderParallelism;
+    }
+
+    public boolean isGroupVarsOnly() {
+        return groupVarsOnly;
+    }
+
+    public void setGroupVarsOnly(final boolean groupVarsOnly) {
+        this.groupVarsOnly = groupVarsOnly;
+    }
+
+    public long getCacheTtl() {
+        return cacheTtl;
+    }
+
+    public void setCacheTtl(final long cacheTtl) {
+        this.cacheTtl = cacheTtl;
+    }
+
+    public long getCacheGrace() {
+        return cacheGrace;
+    }
+
+    public void setCacheGrace(final long cacheGrace) {
+        this.cacheGrace = cacheGrace;
+    }
+
+    public String getCacheDir() {
+        return cacheDir;
+    }
+
+    public void setCacheDir(final String cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    public long getCrawlWait() {
+        return crawlWait;
+    }
+
+    public void setCrawlWait(final long crawlWait) {
+        this.crawlWait = crawlWait;
+    }
+
+    public boolean isRefreshCache() {
+        return refreshCache;
+    }
+
+    public void setRefreshCache(final boolean refreshCache) {
+        this.refreshCache = refreshCache;
+    }
+
+    public boolean isDaemon() {
+        return daemon;
+    }
+
+    public void setDaemon(final boolean daemon) {
+        this.daemon = daemon;
+    }
+
+    public boolean isStats() {
+        return stats;
+    }
+
+    public void setStats(final boolean stats) {
+        this.stats = stats;
+    }
+
+    public int getDaemonPort() {
+        return daemonPort;
+    }
+
+    public void setDaemonPort(final int daemonPort) {
+        this.daemonPort = daemonPort;
+    }
+
+    public long getDaemonRefresh() {
+        return daemonRefresh;
+    }
+
+    public void setDaemonRefresh(final long daemonRefresh) {
+        this.daemonRefresh = daemonRefresh;
+    }
+
+    public long getWatchInterval() {
+        return watchInterval;
+    }
+
+    public void setWatchInterval(final long watchInterval) {
+        this.watchInterval = watchInterval;
+    }
+
+    @Nullable
+    public String getOutputFile() {
+        return outputFile;
+    }
+
+    public void setOutputFile(@Nullable final String outputFile) {
+        this.outputFile = outputFile;
+    }
+
+    public long getIncrementalMaxAge() {
+        return incrementalMaxAge;
+    }
+
+    public void setIncrementalMaxAge(final long incrementalMaxAge) {
+        this.incrementalMaxAge = incrementalMaxAge;
+    }
+
+    @Nullable
+    public String getRecordFile() {
+        return recordFile;
+    }
+
+    @Nullable
+    public String getDiffFile() {
+        return diffFile;
+    }
+
+    public void setDiffFile(@Nullable final String diffFile) {
+        this.diffFile = diffFile;
+    }
+
+    public void setRecordFile(@Nullable final String recordFile) {
+        this.recordFile = recordFile;
+    }
+
+    @Nullable
+    public String getReplayFile() {
+        return replayFile;
+    }
+
+    public void setReplayFile(@Nullable final String replayFile) {
+        this.replayFile = replayFile;
+    }
+
+    @Nullable
+    public List<Target> getTargets() {
+        return targets;
+    }
+
+    public void setTargets(@Nullable final List<Target> targets) {
+        this.targets = targets;
+    }
+
     @Nullable
     public String getHost() {
         return host;
@@ -130,21 +495,46 @@ public class Main
     public void configureFromEnvironment() {
         boolean valid = true;
 
-        // Read Environment Variables for OO Coordinates
+        recordFile = StringUtils.defaultIfEmpty(readEnvironment(Main.ENV_OO_RECORD), null);
+        replayFile = StringUtils.defaultIfEmpty(readEnvironment(Main.ENV_OO_REPLAY), null);
+        if (recordFile != null && replayFile != null) {
+            System.err.println("Environment variables " + ENV_OO_RECORD + " and " + ENV_OO_REPLAY + " can't both be set");
+            valid = false;
+        }
+
+        // Read Environment Variables for OO Coordinates.  A replay doesn't talk to OneOps, so needs no token or endpoint.
         apiToken = readEnvironment(Main.ENV_OO_API_TOKEN);
-        if (StringUtils.isEmpty(apiToken)) {
+        if (StringUtils.isEmpty(apiToken) && replayFile == null) {
             System.err.println("Missing required environment variable: " + ENV_OO_API_TOKEN);
             valid = false;
         }
 
+        // A list of targets replaces the org, assembly and env
+        String targetList = readEnvironment(Main.ENV_OO_TARGETS);
+        targets = null;
+        if (!StringUtils.isEmpty(targetList)) {
+            try {
+                targets = Target.parseList(targetList);
+            }
+            catch (IllegalArgumentException e) {
+                System.err.println("Environment variable " + ENV_OO_TARGETS + " is invalid: " + e.getMessage());
+                valid = false;
+            }
+            if (recordFile != null || replayFile != null) {
+                System.err.println("Environment variable " + ENV_OO_TARGETS + " can't be set with " + ENV_OO_RECORD
+                    + " or " + ENV_OO_REPLAY);
+                valid = false;
+            }
+        }
+
         org = readEnvironment(Main.ENV_OO_ORG);
-        if (StringUtils.isEmpty(org)) {
+        if (StringUtils.isEmpty(org) && StringUtils.isEmpty(targetList)) {
             System.err.println("Missing required environment variable: " + ENV_OO_ORG);
             valid = false;
         }
 
         assembly = readEnvironment(Main.ENV_OO_ASSEMBLY);
-        if (StringUtils.isEmpty(assembly)) {
+        if (StringUtils.isEmpty(assembly) && StringUtils.isEmpty(targetList)) {
             System.err.println("Missing required environment variable: " + ENV_OO_ASSEMBLY);
             valid = false;
         }
@@ -153,8 +543,10 @@ public class Main
 
         endpoint = readEnvironment(Main.ENV_OO_ENDPOINT);
         if (StringUtils.isEmpty(endpoint)) {
-            System.err.println("Missing required environment variable: " + ENV_OO_ENDPOINT);
-            valid = false;
+            if (replayFile == null) {
+                System.err.println("Missing required environment variable: " + ENV_OO_ENDPOINT);
+                valid = false;
+            }
         }
         else if (!StringUtils.endsWith(endpoint, "/")) {
             System.err.println("Environment variable must end with a forward-slash: " + ENV_OO_ENDPOINT);
@@ -170,11 +562,139 @@ public class Main
             valid = false;
         }
 
+        Long parallelism = readNumber(Main.ENV_OO_FETCH_PARALLELISM, fetchParallelism, 1, Integer.MAX_VALUE);
+        if (parallelism == null) {
+            valid = false;
+        }
+        else {
+            fetchParallelism = parallelism.intValue();
+        }
+
+        Long rate = readNumber(Main.ENV_OO_API_RATE, apiRate, 0);
+        if (rate == null) {
+            valid = false;
+        }
+        else {
+            apiRate = rate;
+        }
+
+        Long retries = readNumber(Main.ENV_OO_API_RETRIES, apiRetries, 0, Integer.MAX_VALUE);
+        if (retries == null) {
+            valid = false;
+        }
+        else {
+            apiRetries = retries.intValue();
+        }
+
+        Long renderThreads = readNumber(Main.ENV_OO_RENDER_PARALLELISM, renderParallelism, 1,
+            RenderEngine.MAX_PARALLELISM);
+        if (renderThreads == null) {
+            valid = false;
+        }
+        else {
+            renderParallelism = renderThreads.intValue();
+        }
+
+        String varsOnly = readEnvironment(Main.ENV_OO_GROUP_VARS_ONLY);
+        if (!StringUtils.isEmpty(varsOnly)) {
+            if (!(varsOnly.equals("true") || varsOnly.equals("false"))) {
+                System.err.println("Environment variable " + ENV_OO_GROUP_VARS_ONLY + " must be set to true or false");
+                valid = false;
+            }
+            groupVarsOnly = varsOnly.equals("true");
+        }
+
+        Long ttl = readNumber(Main.ENV_OO_CACHE_TTL, cacheTtl, 0);
+        if (ttl == null) {
+            valid = false;
+        }
+        else {
+            cacheTtl = ttl;
+        }
+
+        Long grace = readNumber(Main.ENV_OO_CACHE_GRACE, cacheGrace, 0);
+        if (grace == null) {
+            valid = false;
+        }
+        else {
+            cacheGrace = grace;
+        }
+
+        Long wait = readNumber(Main.ENV_OO_CRAWL_WAIT, crawlWait, 0);
+        if (wait == null) {
+            valid = false;
+        }
+        else {
+            crawlWait = wait;
+        }
+
+        Long port = readNumber(Main.ENV_OO_DAEMON_PORT, daemonPort, 1);
+        if (port == null || port > 65535) {
+            if (port != null) {
+                System.err.println("Environment variable " + ENV_OO_DAEMON_PORT + " must be a port number");
+            }
+            valid = false;
+        }
+        else {
+            daemonPort = port.intValue();
+        }
+
+        Long refresh = readNumber(Main.ENV_OO_DAEMON_REFRESH, daemonRefresh, 1);
+        if (refresh == null) {
+            valid = false;
+        }
+        else {
+            daemonRefresh = refresh;
+        }
+
+        Long maxAge = readNumber(Main.ENV_OO_INCREMENTAL_MAX_AGE, incrementalMaxAge, 0);
+        if (maxAge == null) {
+            valid = false;
+        }
+        else {
+            incrementalMaxAge = maxAge;
+        }
+
+        String dir = readEnvironment(Main.ENV_OO_CACHE_DIR);
+        if (!StringUtils.isEmpty(dir)) {
+            cacheDir = dir;
+        }
+
         if (!valid) {
             throw new ExitNotification(1);
         }
     }
 
+    /**
+     * Read an optional whole-number environment variable.
+     *
+     * @return The value, the default if unset, or {@code null} after reporting an invalid value
+     */
+    @Nullable
+    private Long readNumber(final String name, final long defaultValue, final long minimum) {
+        return readNumber(name, defaultValue, minimum, Long.MAX_VALUE);
+    }
+
+    /**
+     * Read an optional whole-number environment variable that has to fit a range.
+     *
+     * @return The value, the default if unset, or {@code null} after reporting an invalid value
+     */
+    @Nullable
+    private Long readNumber(final String name, final long defaultValue, final long minimum, final long maximum) {
+        String value = readEnvironment(name);
+        if (StringUtils.isEmpty(value)) {
+            return defaultValue;
+        }
+        if (!StringUtils.isNumeric(value) || value.length() > 18
+            || Long.parseLong(value) < minimum || Long.parseLong(value) > maximum) {
+            System.err.println("Environment variable " + name + " must be a whole number "
+                + (maximum == Long.MAX_VALUE ? "of at least " + minimum : "from " + minimum + " to " + maximum));
+            return null;
+        }
+        return Long.parseLong(value);
+    }
+
     /**
      * Configure settings from command-line arguments.
      */
@@ -190,12 +710,67 @@ public class Main
             .hasArg()
             .build()
         );
+        options.addOption(Option.builder().longOpt("daemon")
+            .desc("Keep the inventory in memory and serve it to oo-wrapper.py on a localhost port")
+            .build()
+        );
+        options.addOption(Option.builder().longOpt("watch")
+            .desc("Crawl every interval and replace the --output file whenever the inventory changes")
+            .hasArg()
+            .argName("seconds")
+            .build()
+        );
+        options.addOption(Option.builder().longOpt("output")
+            .desc("Inventory file for --watch")
+            .hasArg()
+            .argName("file")
+            .build()
+        );
+        options.addOption(Option.builder().longOpt("diff")
+            .desc("Print what changed since the snapshot as JSON lines, then save the inventory to it")
+            .hasArg()
+            .argName("snapshot")
+            .build()
+        );
+        options.addOption(Option.builder().longOpt("refresh-cache")
+            .desc("Ignore the cached inventory and crawl OneOps again")
+            .build()
+        );
+        options.addOption(Option.builder().longOpt("stats")
+            .desc("Print API call latencies and phase timings to stderr as JSON")
+            .build()
+        );
 
         CommandLineParser parser = new DefaultParser();
         try {
             CommandLine cmd = parser.parse(options, args);
 
-            if (cmd.hasOption("list")) {
+            refreshCache = cmd.hasOption("refresh-cache");
+            stats = cmd.hasOption("stats");
+            daemon = cmd.hasOption("daemon");
+
+            if (daemon) {
+                host = null;
+            }
+            else if (cmd.hasOption("watch")) {
+                host = null;
+                String interval = cmd.getOptionValue("watch");
+                if (!StringUtils.isNumeric(interval) || interval.length() > 18 || Long.parseLong(interval) < 1) {
+                    System.err.println("Option --watch must be a whole number of seconds of at least 1");
+                    throw new ExitNotification(1);
+                }
+                watchInterval = Long.parseLong(interval);
+                outputFile = cmd.getOptionValue("output");
+                if (StringUtils.isEmpty(outputFile)) {
+                    System.err.println("Option --watch needs an --output file");
+                    throw new ExitNotification(1);
+                }
+            }
+            else if (cmd.hasOption("diff")) {
+                host = null;
+                diffFile = cmd.getOptionValue("diff");
+            }
+            else if (cmd.hasOption("list")) {
                 host = null;
             }
             else if (cmd.hasOption("host")) {
@@ -214,43 +789,442 @@ public class Main
     }
 
     public void run() {
-        checkState(apiToken != null, "Missing api-token");
-        checkState(org != null, "Missing org");
-        checkState(assembly != null, "Missing assembly");
-        checkState(endpoint != null, "Missing endpoint");
+        checkState(apiToken != null || replayFile != null, "Missing api-token");
+        checkState(org != null || targets != null, "Missing org");
+        checkState(assembly != null || targets != null, "Missing assembly");
+        checkState(endpoint != null || replayFile != null, "Missing endpoint");
+        checkState(recordFile == null || replayFile == null, "Can't record and replay at once");
         checkState(hostMethod != null, "Missing host-method");
+        checkState(fetchParallelism > 0, "Invalid fetch-parallelism");
+        checkState(renderParallelism > 0, "Invalid render-parallelism");
 
         try {
-            displayInventory(host);
+            if (daemon) {
+                new InventoryDaemon(() -> targets != null ? refreshWarmTargets().generateList() : refreshWarmInventory().generateList(),
+                    inventoryKey(), daemonPort, daemonRefresh).run();
+            }
+            else if (watchInterval > 0) {
+                new InventoryWatcher(() -> {
+                    if (targets != null) {
+                        return refreshWarmTargets()::writeList;
+                    }
+                    return refreshWarmInventory()::writeList;
+                }, new File(outputFile), watchInterval).run();
+            }
+            else {
+                inventoryStats = stats ? new InventoryStats() : null;
+                if (diffFile != null && targets != null) {
+                    die("Option --diff can't be used with " + ENV_OO_TARGETS, null);
+                }
+                if (diffFile != null) {
+                    displayDiff(new File(diffFile));
+                }
+                else {
+                    displayInventory(host);
+                }
+                if (inventoryStats != null) {
+                    System.err.println(inventoryStats.toJson());
+                }
+            }
         }
         catch (InventoryException e) {
             die("Error generating inventory", e);
         }
+        catch (IOException e) {
+            die(daemon ? "Error serving inventory" : "Error writing inventory", e);
+        }
     }
 
     /**
-     * Generate inventory for host, or if {@code null} generate a list.
+     * Create an inventory for a host, or if {@code null} for a list.
      */
-    private JSONObject generateInventory(@Nullable final String host) throws InventoryException {
+    private Inventory newInventory(@Nullable final String host) {
+        return newInventory(org, assembly, env, host);
+    }
+
+    private Inventory newInventory(final String org, final String assembly, @Nullable final String env,
+                                   @Nullable final String host) {
         // Initialize the Inventory object with the environment vars for OO
         Inventory inventory = new Inventory(org, assembly, env, apiToken, endpoint, hostMethod);
-        inventory.initialize();
+        inventory.setFetchParallelism(fetchParallelism);
+        inventory.setRenderParallelism(renderParallelism);
+        if (callGovernor == null) {
+            callGovernor = new CallGovernor(apiRate, fetchParallelism, apiRetries);
+        }
+        inventory.setCallGovernor(callGovernor);
+        inventory.setHostVariables(!groupVarsOnly);
+        inventory.setStats(inventoryStats);
+        inventory.setRecordFile(recordFile == null ? null : new File(recordFile));
+        inventory.setReplayFile(replayFile == null ? null : new File(replayFile));
         if (!StringUtils.isEmpty(host)) {
-            return inventory.generateHost(host);
+            inventory.setComponentSelection(ComponentSelection.forHost());
+        }
+        return inventory;
+    }
+
+    /**
+     * Create an inventory and crawl OneOps for a host, or if {@code null} for a list.
+     */
+    private Inventory createInventory(@Nullable final String host) throws InventoryException {
+        Inventory inventory = newInventory(host);
+        inventory.initialize();
+        return inventory;
+    }
+
+    /**
+     * Crawl for the daemon or --watch, into the same inventory every time, so crawls can be incremental.
+     */
+    private Inventory refreshWarmInventory() throws InventoryException {
+        if (warmInventory == null) {
+            Inventory inventory = newInventory(null);
+            inventory.setRefreshMaxAge(TimeUnit.SECONDS.toMillis(incrementalMaxAge));
+            inventory.initialize();
+            warmInventory = inventory;
+        }
+        else {
+            warmInventory.refresh();
+        }
+        return warmInventory;
+    }
+
+    /**
+     * Create an inventory of all the targets, for a list.
+     */
+    private MultiInventory newMultiInventory() {
+        Map<Target, Inventory> inventories = new LinkedHashMap<>();
+        for (Target target : targets) {
+            inventories.put(target, newInventory(target.getOrg(), target.getAssembly(), target.getEnv(), null));
+        }
+        return new MultiInventory(inventories, fetchParallelism);
+    }
+
+    /**
+     * Crawl all the targets for the daemon or --watch, see {@link #refreshWarmInventory()}.
+     */
+    private MultiInventory refreshWarmTargets() throws InventoryException {
+        if (warmTargets == null) {
+            MultiInventory inventory = newMultiInventory();
+            inventory.setRefreshMaxAge(TimeUnit.SECONDS.toMillis(incrementalMaxAge));
+            inventory.initialize();
+            warmTargets = inventory;
         }
         else {
-            return inventory.generateList();
+            warmTargets.refresh();
         }
+        return warmTargets;
     }
 
     /**
      * Display the inventory if anything is returned.
      */
     private void displayInventory(@Nullable final String host) throws InventoryException {
-        JSONObject inventory = generateInventory(host);
-        if (inventory != null) {
-            System.out.println(inventory.toString(2));
+        // Every run over several targets crawls them all, there is no cache entry for a combination of them
+        if (targets != null) {
+            displayTargets(host);
+            return;
+        }
+
+        // Recording or replaying is about the crawl, so never answer from the cache or put the result in it
+        if (cacheTtl > 0 && recordFile == null && replayFile == null) {
+            displayCachedInventory(host);
+            return;
+        }
+
+        if (!StringUtils.isEmpty(host)) {
+            displayHost(host, null);
+            return;
+        }
+
+        displayInventory(createInventory(null), null);
+    }
+
+    /**
+     * Crawl, print how the inventory differs from the snapshot, and replace the snapshot with it so the next
+     * run prints what changed since this one.  A missing snapshot is like an empty inventory.
+     */
+    private void displayDiff(final File snapshotFile) throws InventoryException {
+        Inventory inventory = createInventory(null);
+        try (AtomicFile atomic = new AtomicFile(snapshotFile)) {
+            try (OutputStream out = atomic.openStream()) {
+                inventory.writeSnapshot(out);
+            }
+            InventorySnapshot previous = snapshotFile.isFile() ? InventorySnapshot.open(snapshotFile) : null;
+            Writer out = stdout();
+            InventoryDiff.write(previous, InventorySnapshot.open(atomic.getTempFile()), out);
+            out.flush();
+            atomic.commit();
+        }
+        catch (IOException e) {
+            throw new InventoryException("Error diffing inventory with " + snapshotFile, e);
+        }
+    }
+
+    /**
+     * Crawl all the targets and display the list, or a host from it.
+     */
+    private void displayTargets(@Nullable final String host) throws InventoryException {
+        MultiInventory inventory = newMultiInventory();
+        inventory.initialize();
+        if (!StringUtils.isEmpty(host)) {
+            printHost(inventory.generateHost(host));
+            return;
+        }
+
+        try {
+            Writer out = stdout();
+            inventory.writeList(out);
+            out.write('\n');
+            out.flush();
+        }
+        catch (IOException e) {
+            throw new InventoryException("Error writing inventory", e);
+        }
+    }
+
+    /**
+     * Display a single host, fetching only the platform it lives in.
+     *
+     * @param location Where the host was last seen, or {@code null} to search for it
+     */
+    private void displayHost(final String host, @Nullable final HostLocation location) throws InventoryException {
+        Inventory inventory = newInventory(host);
+        inventory.initializeHost(host, location);
+        printHost(inventory.generateHost(host));
+    }
+
+    /**
+     * Print a generated host, counting the time towards serialization.
+     */
+    private void printHost(final JSONObject hostvars) {
+        long start = System.nanoTime();
+        System.out.println(hostvars.toString(2));
+        if (inventoryStats != null) {
+            inventoryStats.addPhase(InventoryStats.PHASE_SERIALIZATION, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Display a crawled inventory.  A list is streamed to stdout as it is generated.
+     */
+    private void displayInventory(final Inventory inventory, @Nullable final String host) throws InventoryException {
+        if (!StringUtils.isEmpty(host)) {
+            printHost(inventory.generateHost(host));
+            return;
+        }
+
+        try {
+            Writer out = stdout();
+            inventory.writeList(out);
+            out.write('\n');
+            out.flush();
+        }
+        catch (IOException e) {
+            throw new InventoryException("Error writing inventory", e);
+        }
+    }
+
+    /**
+     * Key of the inventory these settings crawl, for the daemon to check requests against.
+     */
+    @VisibleForTesting
+    String inventoryKey() {
+        if (targets != null) {
+            return InventoryCache.key(targets, endpoint, hostMethod, groupVarsOnly);
+        }
+        return InventoryCache.key(org, assembly, env, endpoint, hostMethod, groupVarsOnly);
+    }
+
+    /**
+     * Display the inventory from the cache, crawling and caching the full list first if the entry is missing,
+     * expired, or we were asked to refresh it.  A --host is answered from the cached list if there is one, and
+     * otherwise fetched on its own, from where the cached host index says it lives.
+     *
+     * An entry that expired less than the grace period ago is displayed anyway, and one background process is
+     * started to refresh it, so Ansible never waits for a crawl.
+     */
+    private void displayCachedInventory(@Nullable final String host) throws InventoryException {
+        InventoryCache cache = new InventoryCache(new File(cacheDir), cacheTtl, cacheGrace);
+        String key = inventoryKey();
+
+        if (!refreshCache) {
+            InventoryCache.Entry entry = cache.lookup(key);
+            if (entry != null && (cache.isFresh(entry) || cache.isStale(entry)) && displayEntry(entry, host)) {
+                if (cache.isStale(entry)) {
+                    System.err.println("Inventory cache expired " + cache.getStalenessMillis(entry) / 1000 + "s ago, served stale inventory");
+                    refreshInBackground(cache, key);
+                }
+                return;
+            }
+        }
+
+        if (!StringUtils.isEmpty(host)) {
+            displayHost(host, cache.lookupHost(key, host));
+            return;
+        }
+
+        crawlOnce(cache, key);
+    }
+
+    /**
+     * Crawl, cache and display the full list - unless another process is already doing exactly that, in which
+     * case wait for it (up to the crawl wait) and display what it wrote.
+     */
+    private void crawlOnce(final InventoryCache cache, final String key) throws InventoryException {
+        long started = System.currentTimeMillis();
+
+        CrawlLock lock = null;
+        try {
+            try {
+                lock = CrawlLock.acquire(cache.lockFile(key), crawlWait * 1000L);
+                if (lock == null || lock.isContended()) {
+                    InventoryCache.Entry published = cache.lookup(key);
+                    if (published != null && published.isWrittenSince(started) && displayEntry(published, null)) {
+                        return;
+                    }
+                    if (lock == null) {
+                        System.err.println("Timed out waiting for another inventory crawl, crawling anyway");
+                    }
+                }
+            }
+            catch (IOException e) {
+                System.err.println("Unable to coordinate with other inventory processes: " + e);
+            }
+
+            Inventory inventory = createInventory(null);
+            boolean cached = false;
+            try {
+                cache.write(key, inventory::writeList);
+                cached = true;
+                cache.writeSnapshot(key, inventory::writeSnapshot);
+                cache.writeHostIndex(key, inventory.getHostLocations());
+            }
+            catch (IOException e) {
+                System.err.println("Unable to write inventory cache: " + e);
+            }
+
+            // The list is copied from what we just cached rather than generated a second time.
+            InventoryCache.Entry entry = cached ? cache.lookup(key) : null;
+            if (entry == null || !displayEntry(entry, null)) {
+                displayInventory(inventory, null);
+            }
+        }
+        finally {
+            if (lock != null) {
+                try {
+                    lock.close();
+                }
+                catch (IOException e) {
+                    // the lock dies with the process anyway
+                }
+            }
+        }
+    }
+
+    /**
+     * Display a cached list, or a host picked out of its snapshot or, failing that, out of the list.
+     *
+     * @return {@code false} if the entry couldn't be read and nothing was displayed
+     * @throws InventoryException If the entry broke after part of it was displayed
+     */
+    private static boolean displayEntry(final InventoryCache.Entry entry, @Nullable final String host) throws InventoryException {
+        if (!StringUtils.isEmpty(host) && entry.getSnapshot() != null) {
+            try {
+                String json = InventorySnapshot.open(entry.getSnapshot()).getHost(host);
+                System.out.println(json != null ? json : new JSONObject().toString(2));
+                return true;
+            }
+            catch (IOException | RuntimeException e) {
+                // The header is checked on open, but a damaged record can still point anywhere
+                System.err.println("Ignoring unreadable inventory snapshot: " + e);
+            }
+        }
+
+        Reader reader;
+        try {
+            reader = entry.openReader();
+        }
+        catch (IOException e) {
+            System.err.println("Ignoring unreadable inventory cache: " + e);
+            return false;
+        }
+
+        try (Reader cached = reader) {
+            if (!StringUtils.isEmpty(host)) {
+                String json;
+                try {
+                    json = selectHost(cached, host);
+                }
+                catch (JSONException e) {
+                    System.err.println("Ignoring unreadable inventory cache: " + e);
+                    return false;
+                }
+                System.out.println(json);
+                return true;
+            }
+
+            Writer out = stdout();
+            char[] buffer = new char[8192];
+            int count;
+            while ((count = cached.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            out.write('\n');
+            out.flush();
+            return true;
+        }
+        catch (IOException e) {
+            throw new InventoryException("Error reading inventory cache", e);
+        }
+    }
+
+    private static Writer stdout() {
+        return new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Start a detached process that crawls OneOps and rewrites the cache entry, unless another process already
+     * claimed the refresh.  It inherits our environment, so it crawls exactly what we would have.
+     */
+    private void refreshInBackground(final InventoryCache cache, final String key) {
+        try {
+            if (!cache.claimRefresh(key)) {
+                return;
+            }
+
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            ProcessBuilder builder = new ProcessBuilder(java,
+                "-cp", System.getProperty("java.class.path"),
+                Main.class.getName(), "--list", "--refresh-cache");
+            // The list it prints is already in the cache; only the last refresh's errors are kept
+            builder.redirectOutput(nullFile());
+            builder.redirectError(new File(cache.getDirectory(), "refresh.log"));
+            builder.start();
+        }
+        catch (IOException e) {
+            System.err.println("Unable to refresh inventory cache in the background: " + e);
+        }
+    }
+
+    /**
+     * Where output goes to be thrown away.  {@code Redirect.DISCARD} needs Java 9.
+     */
+    private static File nullFile() {
+        return new File(SystemUtils.IS_OS_WINDOWS ? "NUL" : "/dev/null");
+    }
+
+    /**
+     * Pick the hostvars of a single host out of a rendered list.
+     */
+    @VisibleForTesting
+    static String selectHost(final Reader inventory, final String host) {
+        JSONObject hostvars = new JSONObject(new JSONTokener(inventory)).getJSONObject("_meta").getJSONObject("hostvars");
+        JSONObject json = new JSONObject();
+        for (String hostId : hostvars.keySet()) {
+            if (StringUtils.equals(hostId.trim(), host)) {
+                json = hostvars.getJSONObject(hostId);
+            }
         }
+        return json.toString(2);
     }
 
     /**
@@ -0,0 +1,108 @@
+package com.oneops.inv;
+
+import com.oneops.api.exception.OneOpsClientAPIException;
+import com.oneops.api.resource.model.CiResource;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * {@link OneOpsSource} that makes each distinct request at most once per run.
+ *
+ * Requests are keyed by method, environment, platform and component.  The first caller makes the call; anyone
+ * asking for the same thing while it is in flight waits for that call instead of making their own, and anyone
+ * asking later gets the stored result.  Failures are not remembered, the next caller tries again.
+ *
+ * Results are shared, callers must not modify the returned lists.
+ */
+public class MemoizingSource implements OneOpsSource
+{
+    private interface Call<T>
+    {
+        T call() throws OneOpsClientAPIException;
+    }
+
+    private final OneOpsSource delegate;
+
+    private final ConcurrentMap<String, FutureTask<?>> requests = new ConcurrentHashMap<String, FutureTask<?>>();
+
+    public MemoizingSource(OneOpsSource delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public List<CiResource> listClouds() throws OneOpsClientAPIException {
+        return memoize("clouds", delegate::listClouds);
+    }
+
+    @Override
+    public List<CiResource> listEnvironments() throws OneOpsClientAPIException {
+        return memoize("environments", delegate::listEnvironments);
+    }
+
+    @Override
+    public CiResource getEnvironment(String env) throws OneOpsClientAPIException {
+        return memoize("environment:" + env, () -> delegate.getEnvironment(env));
+    }
+
+    @Override
+    public List<CiResource> listPlatforms(String env) throws OneOpsClientAPIException {
+        return memoize("platforms:" + env, () -> delegate.listPlatforms(env));
+    }
+
+    @Override
+    public List<CiResource> listGlobalVariables(String env) throws OneOpsClientAPIException {
+        return memoize("global-variables:" + env, () -> delegate.listGlobalVariables(env));
+    }
+
+    @Override
+    public List<CiResource> listPlatformComponents(String env, String platform) throws OneOpsClientAPIException {
+        return memoize("components:" + env + ":" + platform, () -> delegate.listPlatformComponents(env, platform));
+    }
+
+    @Override
+    public List<CiResource> listPlatformVariables(String env, String platform) throws OneOpsClientAPIException {
+        return memoize("platform-variables:" + env + ":" + platform, () -> delegate.listPlatformVariables(env, platform));
+    }
+
+    @Override
+    public List<CiResource> listInstances(String env, String platform, String component) throws OneOpsClientAPIException {
+        return memoize("instances:" + env + ":" + platform + ":" + component,
+                () -> delegate.listInstances(env, platform, component));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T memoize(String key, Call<T> call) throws OneOpsClientAPIException {
+        FutureTask<T> task = new FutureTask<T>(call::call);
+        FutureTask<T> existing = (FutureTask<T>) requests.putIfAbsent(key, task);
+        if( existing == null ) {
+            // We won the race - make the call on this thread.
+            existing = task;
+            task.run();
+        }
+
+        try {
+            return existing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for " + key, e);
+        } catch (ExecutionException e) {
+            requests.remove(key, existing);
+
+            Throwable cause = e.getCause();
+            if( cause instanceof OneOpsClientAPIException ) {
+                throw (OneOpsClientAPIException) cause;
+            }
+            if( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            }
+            if( cause instanceof Error ) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Unexpected failure for " + key, cause);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.oneops.inv;
+
+import com.oneops.api.exception.OneOpsClientAPIException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Several assemblies, or environments of them, crawled together into one inventory.
+ *
+ * The targets are crawled at the same time, but their API calls all run on one {@link FetchEngine}, so the
+ * fetch parallelism is a budget for the whole run rather than for each target.  Clouds are listed once per
+ * org.  The list has every host once, the oo group of all of them, a group per target named
+ * {@code org-assembly}, and each target's own groups with that name and a dash in front - see
+ * {@link Inventory#setGroupPrefix(String)}.  Targets of different assemblies whose groups would have the same
+ * name are an error.
+ */
+public class MultiInventory
+{
+    /**
+     * Gathers one target.
+     */
+    private interface Crawl
+    {
+        void crawl(Target target, Inventory inventory) throws InventoryException;
+    }
+
+    private final Map<Target, Inventory> inventories;
+
+    private final int fetchParallelism;
+
+    /**
+     * @param inventories The inventory of each target, not yet initialized.  Their group prefixes are set here.
+     * @param fetchParallelism Maximum number of API calls in flight at once, for all targets together
+     */
+    public MultiInventory(Map<Target, Inventory> inventories, int fetchParallelism) {
+        this.inventories = new LinkedHashMap<Target, Inventory>(inventories);
+        this.fetchParallelism = fetchParallelism;
+        for( Map.Entry<Target, Inventory> target : this.inventories.entrySet() ) {
+            target.getValue().setGroupPrefix(target.getKey().getGroupName() + "-");
+        }
+    }
+
+    /**
+     * See {@link Inventory#setRefreshMaxAge(long)}, for every target.
+     */
+    public void setRefreshMaxAge(long refreshMaxAge) {
+        for( Inventory inventory : inventories.values() ) {
+            inventory.setRefreshMaxAge(refreshMaxAge);
+        }
+    }
+
+    /**
+     * Crawl every target, see {@link Inventory#initialize()}.
+     */
+    public void initialize() throws InventoryException {
+        crawl((target, inventory) -> inventory.initialize());
+    }
+
+    /**
+     * Crawl every target from its own source, see {@link Inventory#initialize(OneOpsSource)}.
+     */
+    public void initialize(Map<Target, ? extends OneOpsSource> sources) throws InventoryException {
+        crawl((target, inventory) -> inventory.initialize(sources.get(target)));
+    }
+
+    /**
+     * Crawl every target again into the same indexes, see {@link Inventory#refresh()}.
+     */
+    public void refresh() throws InventoryException {
+        crawl((target, inventory) -> inventory.refresh());
+    }
+
+    private void crawl(Crawl crawl) throws InventoryException {
+        Map<String, SharedClouds> clouds = new HashMap<String, SharedClouds>();
+        try (FetchEngine engine = new FetchEngine(fetchParallelism);
+             FetchEngine targets = new FetchEngine(inventories.size())) {
+            for( Map.Entry<Target, Inventory> target : inventories.entrySet() ) {
+                String org = target.getKey().getOrg();
+                if( !clouds.containsKey(org) ) {
+                    clouds.put(org, new SharedClouds());
+                }
+                target.getValue().setFetchEngine(engine);
+                target.getValue().setSharedClouds(clouds.get(org));
+            }
+
+            // Each target waits for its own rounds on a thread of its own; the calls all go through the engine
+            targets.fetchAll(new ArrayList<Target>(inventories.keySet()), target -> {
+                crawl.crawl(target, inventories.get(target));
+                return target;
+            });
+        } catch (OneOpsClientAPIException e) {
+            // Inventories catch their own API failures
+            throw new InventoryException("Error interacting with OneOps", e);
+        } finally {
+            for( Inventory inventory : inventories.values() ) {
+                inventory.setFetchEngine(null);
+                inventory.setSharedClouds(null);
+            }
+        }
+    }
+
+    /**
+     * Write the merged --list inventory.  The writer is not flushed or closed.
+     */
+    public void writeList(Writer writer) throws InventoryException, IOException {
+        checkGroupNames();
+
+        // A host in two targets is listed with the first one's hostvars, but is in the groups of both
+        Map<Target, Set<String>> listedHosts = new LinkedHashMap<Target, Set<String>>();
+        Map<String, Target> listedBy = new LinkedHashMap<String, Target>();
+        Map<String, Set<String>> targetGroups = new LinkedHashMap<String, Set<String>>();
+        int groupCount = 1;
+        for( Map.Entry<Target, Inventory> target : inventories.entrySet() ) {
+            Set<String> listed = new LinkedHashSet<String>();
+            String groupName = target.getKey().getGroupName();
+            if( !targetGroups.containsKey(groupName) ) {
+                targetGroups.put(groupName, new LinkedHashSet<String>());
+            }
+            for( String hostId : target.getValue().getHostIds() ) {
+                targetGroups.get(groupName).add(hostId);
+                Target first = listedBy.get(hostId);
+                if( first == null ) {
+                    listedBy.put(hostId, target.getKey());
+                    listed.add(hostId);
+                } else {
+                    System.err.println("Host " + hostId + " of " + target.getKey() + " is already listed from "
+                            + first + ", leaving out its hostvars");
+                }
+            }
+            listedHosts.put(target.getKey(), listed);
+            groupCount += target.getValue().groupCount() - 1;
+        }
+        groupCount += targetGroups.size();
+
+        JsonStreamWriter json = new JsonStreamWriter(writer, 2);
+        json.beginObject(1 + groupCount);
+
+        json.key("_meta").beginObject(1);
+        json.key("hostvars").beginObject(listedBy.size());
+        for( Map.Entry<Target, Inventory> target : inventories.entrySet() ) {
+            target.getValue().writeHostvars(json, listedHosts.get(target.getKey()));
+        }
+        json.endObject();
+        json.endObject();
+
+        json.key("oo").value(group(listedBy.keySet()));
+        for( Map.Entry<String, Set<String>> group : targetGroups.entrySet() ) {
+            json.key(group.getKey()).value(group(group.getValue()));
+        }
+        for( Inventory inventory : inventories.values() ) {
+            inventory.writeGroups(json);
+        }
+        json.endObject();
+    }
+
+    /**
+     * Make sure no group would mix the hosts of two assemblies.  OneOps names can have dashes, so a group of one
+     * target can have the name of another's: {@code a/b} has {@code a-b-env-x}, and so does {@code a/b-env-x}.
+     */
+    private void checkGroupNames() throws InventoryException {
+        Map<String, Target> groups = new HashMap<String, Target>();
+        for( Map.Entry<Target, Inventory> target : inventories.entrySet() ) {
+            List<String> names = target.getValue().groupNames();
+            names.add(target.getKey().getGroupName());
+            for( String name : names ) {
+                Target other = groups.get(name);
+                if( other == null ) {
+                    groups.put(name, target.getKey());
+                } else if( !other.getOrg().equals(target.getKey().getOrg())
+                        || !other.getAssembly().equals(target.getKey().getAssembly()) ) {
+                    throw new InventoryException("Targets " + other + " and " + target.getKey()
+                            + " would both be in group " + name);
+                }
+            }
+        }
+    }
+
+    private static JSONObject group(Set<String> hostIds) {
+        JSONObject group = new JSONObject();
+        group.put("hosts", new JSONArray(hostIds));
+        group.put("vars", new JSONObject());
+        return group;
+    }
+
+    /**
+     * The merged --list inventory as one JSON tree.
+     */
+    public JSONObject generateList() throws InventoryException {
+        StringWriter list = new StringWriter();
+        try {
+            writeList(list);
+        } catch (IOException e) {
+            // Nothing to fail writing to a StringWriter
+            throw new IllegalStateException(e);
+        }
+        return new JSONObject(list.toString());
+    }
+
+    /**
+     * Hostvars of a host from the first target that has it, or an empty object if none has.
+     */
+    public JSONObject generateHost(String hostId) throws InventoryException {
+        for( Inventory inventory : inventories.values() ) {
+            JSONObject host = inventory.generateHost(hostId);
+            if( host.length() > 0 ) {
+                return host;
+            }
+        }
+        return new JSONObject();
+    }
+}
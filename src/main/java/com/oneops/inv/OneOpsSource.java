@@ -0,0 +1,34 @@
+package com.oneops.inv;
+
+import com.oneops.api.exception.OneOpsClientAPIException;
+import com.oneops.api.resource.model.CiResource;
+
+import java.util.List;
+
+/**
+ * Every OneOps API call the inventory makes, for one org and assembly.
+ *
+ * {@link Inventory} only talks to OneOps through this, so calls can be memoized, counted, recorded or faked
+ * without touching the crawl.  Implementations must be safe to call from several fetch threads at once.
+ */
+public interface OneOpsSource
+{
+    List<CiResource> listClouds() throws OneOpsClientAPIException;
+
+    List<CiResource> listEnvironments() throws OneOpsClientAPIException;
+
+    CiResource getEnvironment(String env) throws OneOpsClientAPIException;
+
+    List<CiResource> listPlatforms(String env) throws OneOpsClientAPIException;
+
+    List<CiResource> listGlobalVariables(String env) throws OneOpsClientAPIException;
+
+    List<CiResource> listPlatformComponents(String env, String platform) throws OneOpsClientAPIException;
+
+    List<CiResource> listPlatformVariables(String env, String platform) throws OneOpsClientAPIException;
+
+    /**
+     * Operations instances of a component, e.g. the computes of a compute component.
+     */
+    List<CiResource> listInstances(String env, String platform, String component) throws OneOpsClientAPIException;
+}
@@ -0,0 +1,19 @@
+package com.oneops.inv;
+
+import com.oneops.api.exception.OneOpsClientAPIException;
+
+/**
+ * A OneOps API call that failed for reasons of the API, not the request: it was throttled or the server failed
+ * on every attempt, or the circuit breaker didn't let it through.  Unlike a call OneOps answered with an
+ * error, it must never be taken to mean there is nothing there.
+ */
+public class OneOpsUnavailableException extends OneOpsClientAPIException {
+    public OneOpsUnavailableException(String message) {
+        super(message);
+    }
+
+    public OneOpsUnavailableException(String message, Throwable cause) {
+        super(message);
+        initCause(cause);
+    }
+}
@@ -1,22 +1,20 @@
 package com.oneops.inv;
 
-import com.oneops.api.resource.model.CiResource;
-
 public class PlatformCompute {
 
-    private CiResource platform;
+    private PlatformRecord platform;
     private String computeType;
 
-    public PlatformCompute(CiResource platform, String computeType) {
+    public PlatformCompute(PlatformRecord platform, String computeType) {
         this.platform = platform;
         this.computeType = computeType;
     }
 
-    public CiResource getPlatform() {
+    public PlatformRecord getPlatform() {
         return platform;
     }
 
-    public void setPlatform(CiResource platform) {
+    public void setPlatform(PlatformRecord platform) {
         this.platform = platform;
     }
 
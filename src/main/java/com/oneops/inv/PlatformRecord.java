@@ -0,0 +1,121 @@
+package com.oneops.inv;
+
+import com.oneops.api.resource.model.CiResource;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The parts of a platform the inventory uses: its environment, local variables and FQDN aliases.
+ */
+public final class PlatformRecord
+{
+    private final long ciId;
+
+    private final String name;
+
+    private final EnvironmentRecord environment;
+
+    private final List<VariableRecord> variables;
+
+    private final VariableBlock variableBlock;
+
+    @Nullable
+    private final List<String> fqdnAliases;
+
+    @Nullable
+    private final List<String> fqdnFullAliases;
+
+    /**
+     * @param fqdn The platform's first FQDN instance, or {@code null}
+     */
+    public PlatformRecord(CiResource platform, EnvironmentRecord environment, List<CiResource> variables,
+                          @Nullable CiResource fqdn) {
+        this.ciId = platform.getCiId();
+        this.name = HostRecord.intern(platform.getCiName());
+        this.environment = environment;
+
+        List<VariableRecord> records = new ArrayList<VariableRecord>(variables.size());
+        for( CiResource variable : variables ) {
+            records.add( new VariableRecord(variable) );
+        }
+        this.variables = Collections.unmodifiableList(records);
+        this.variableBlock = new VariableBlock(this.variables);
+
+        this.fqdnAliases = fqdn == null ? null : aliases(HostRecord.attribute(fqdn, "aliases"));
+        this.fqdnFullAliases = fqdn == null ? null : aliases(HostRecord.attribute(fqdn, "full_aliases"));
+    }
+
+    /**
+     * Aliases are a JSON array packed into a string attribute, and unset or empty when there are none.
+     */
+    @Nullable
+    private static List<String> aliases(@Nullable String attribute) {
+        if( attribute == null || attribute.isEmpty() ) {
+            return null;
+        }
+        return Collections.unmodifiableList( JsonFields.strings(attribute) );
+    }
+
+    public long getCiId() {
+        return ciId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public EnvironmentRecord getEnvironment() {
+        return environment;
+    }
+
+    public List<VariableRecord> getVariables() {
+        return variables;
+    }
+
+    public VariableBlock getVariableBlock() {
+        return variableBlock;
+    }
+
+    /**
+     * The FQDN's short aliases, or {@code null} if it has none.
+     */
+    @Nullable
+    public List<String> getFqdnAliases() {
+        return fqdnAliases;
+    }
+
+    /**
+     * The FQDN's fully qualified aliases, or {@code null} if it has none.
+     */
+    @Nullable
+    public List<String> getFqdnFullAliases() {
+        return fqdnFullAliases;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        PlatformRecord that = (PlatformRecord) o;
+
+        return ciId == that.ciId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(ciId);
+    }
+
+    @Override
+    public String toString() {
+        return "PlatformRecord{" +
+                "ciId=" + ciId +
+                ", name='" + name + '\'' +
+                '}';
+    }
+}
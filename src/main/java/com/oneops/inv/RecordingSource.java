@@ -0,0 +1,174 @@
+package com.oneops.inv;
+
+import com.oneops.api.exception.OneOpsClientAPIException;
+import com.oneops.api.resource.model.CiResource;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link OneOpsSource} that passes calls through and remembers every response, so they can be saved as a
+ * fixture and fed back in later by a {@link ReplaySource}.
+ *
+ * A fixture is a gzip-compressed file of JSON lines.  The first line says what was recorded; every other line
+ * is one request, sorted by request, with the CiResources OneOps sent for it or the message it failed with.
+ * Responses are kept in memory until {@link #save(File)}, wrap this in a {@link MemoizingSource} so each is
+ * only recorded once.
+ */
+public class RecordingSource implements OneOpsSource
+{
+    /**
+     * Version of the fixture format, bumped when older fixtures can't be read any more.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    private interface Call<T>
+    {
+        T call() throws OneOpsClientAPIException;
+    }
+
+    private final OneOpsSource delegate;
+
+    private final String org;
+
+    private final String assembly;
+
+    /**
+     * Responses by request: a CiResource, a List of them, {@link JSONObject#NULL} for no response, or the message
+     * of a failure.
+     */
+    private final ConcurrentMap<String, Object> responses = new ConcurrentHashMap<String, Object>();
+
+    public RecordingSource(OneOpsSource delegate, String org, String assembly) {
+        this.delegate = delegate;
+        this.org = org;
+        this.assembly = assembly;
+    }
+
+    /**
+     * The request key a call is recorded under: its name and arguments.
+     */
+    static String request(String name, String... arguments) {
+        StringBuilder request = new StringBuilder(name);
+        for( String argument : arguments ) {
+            request.append(':').append(argument);
+        }
+        return request.toString();
+    }
+
+    @Override
+    public List<CiResource> listClouds() throws OneOpsClientAPIException {
+        return record(request("clouds"), delegate::listClouds);
+    }
+
+    @Override
+    public List<CiResource> listEnvironments() throws OneOpsClientAPIException {
+        return record(request("environments"), delegate::listEnvironments);
+    }
+
+    @Override
+    public CiResource getEnvironment(String env) throws OneOpsClientAPIException {
+        return record(request("environment", env), () -> delegate.getEnvironment(env));
+    }
+
+    @Override
+    public List<CiResource> listPlatforms(String env) throws OneOpsClientAPIException {
+        return record(request("platforms", env), () -> delegate.listPlatforms(env));
+    }
+
+    @Override
+    public List<CiResource> listGlobalVariables(String env) throws OneOpsClientAPIException {
+        return record(request("global-variables", env), () -> delegate.listGlobalVariables(env));
+    }
+
+    @Override
+    public List<CiResource> listPlatformComponents(String env, String platform) throws OneOpsClientAPIException {
+        return record(request("components", env, platform), () -> delegate.listPlatformComponents(env, platform));
+    }
+
+    @Override
+    public List<CiResource> listPlatformVariables(String env, String platform) throws OneOpsClientAPIException {
+        return record(request("platform-variables", env, platform), () -> delegate.listPlatformVariables(env, platform));
+    }
+
+    @Override
+    public List<CiResource> listInstances(String env, String platform, String component) throws OneOpsClientAPIException {
+        return record(request("instances", env, platform, component),
+                () -> delegate.listInstances(env, platform, component));
+    }
+
+    /**
+     * Number of distinct requests recorded so far.
+     */
+    public int size() {
+        return responses.size();
+    }
+
+    /**
+     * Write everything recorded so far to a fixture file, replacing it atomically.
+     */
+    public void save(File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if( !directory.isDirectory() && !directory.mkdirs() ) {
+            throw new IOException("Unable to create directory: " + directory);
+        }
+
+        try (AtomicFile atomic = new AtomicFile(file)) {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(atomic.openStream()), StandardCharsets.UTF_8))) {
+                writeTo(writer);
+            }
+            atomic.commit();
+        }
+    }
+
+    private void writeTo(Writer writer) throws IOException {
+        JSONObject header = new JSONObject()
+                .put("version", FORMAT_VERSION)
+                .put("org", org)
+                .put("assembly", assembly);
+        writer.write(header.toString());
+        writer.write('\n');
+
+        // Sorted, so recording the same assembly twice gives the same file whatever order the fetches finished in
+        for( Map.Entry<String, Object> entry : new TreeMap<String, Object>(responses).entrySet() ) {
+            JSONObject line = new JSONObject().put("request", entry.getKey());
+            Object response = entry.getValue();
+            if( response instanceof String ) {
+                line.put("error", response);
+            } else if( response == JSONObject.NULL ) {
+                line.put("response", JSONObject.NULL);
+            } else if( response instanceof CiResource ) {
+                line.put("response", CiResourceJson.toJson((CiResource) response));
+            } else {
+                @SuppressWarnings("unchecked")
+                List<CiResource> resources = (List<CiResource>) response;
+                line.put("response", CiResourceJson.toJson(resources));
+            }
+            line.write(writer);
+            writer.write('\n');
+        }
+    }
+
+    private <T> T record(String request, Call<T> call) throws OneOpsClientAPIException {
+        try {
+            T response = call.call();
+            responses.put(request, response == null ? JSONObject.NULL : response);
+            return response;
+        } catch (OneOpsClientAPIException e) {
+            responses.put(request, String.valueOf(e.getMessage()));
+            throw e;
+        }
+    }
+}
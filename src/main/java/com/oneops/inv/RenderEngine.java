@@ -0,0 +1,132 @@
+package com.oneops.inv;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders inventory fragments, such as each host's hostvars, on a fork-join pool.
+ *
+ * Unlike gathering, rendering is pure CPU, so it scales with cores rather than with API latency.  Fragments come
+ * back in item order however the work was split, so the inventory they are written into is byte-for-byte the
+ * same as a sequential render.  A parallelism of 1 renders on the calling thread without a pool.
+ */
+public class RenderEngine implements AutoCloseable
+{
+    /**
+     * Renders a single item.
+     */
+    public interface Render<T>
+    {
+        String render(T item) throws InventoryException;
+    }
+
+    /**
+     * Items a task renders itself rather than splitting further.  Hostvars take a few microseconds each, this
+     * keeps the fork-join bookkeeping well below the work.
+     */
+    private static final int SPLIT_THRESHOLD = 16;
+
+    /**
+     * Most threads a {@link ForkJoinPool} can have.
+     */
+    public static final int MAX_PARALLELISM = 0x7fff;
+
+    private final ForkJoinPool pool;
+
+    private final AtomicInteger threadCounter = new AtomicInteger();
+
+    /**
+     * @param parallelism Maximum number of threads rendering at once, 1 to render on the calling thread
+     */
+    public RenderEngine(int parallelism) {
+        if( parallelism < 1 || parallelism > MAX_PARALLELISM ) {
+            throw new IllegalArgumentException("Render parallelism must be from 1 to " + MAX_PARALLELISM + ": " + parallelism);
+        }
+        this.pool = parallelism == 1 ? null : new ForkJoinPool(parallelism, this::newThread, null, false);
+    }
+
+    /**
+     * Render every item and wait for all of them.
+     *
+     * @return Fragments in the same order as the items
+     * @throws InventoryException The first render failure the pool reports
+     */
+    public <T> List<String> renderAll(List<T> items, Render<T> render) throws InventoryException {
+        String[] fragments = new String[items.size()];
+        if( pool == null ) {
+            for( int i = 0; i < fragments.length; i++ ) {
+                fragments[i] = render.render(items.get(i));
+            }
+        } else {
+            try {
+                pool.invoke(new RenderTask<T>(items, render, fragments, 0, fragments.length));
+            } catch (RuntimeException e) {
+                // The pool may rethrow a copy of the worker's exception, the original is somewhere in the causes
+                for( Throwable cause = e; cause != null; cause = cause.getCause() ) {
+                    if( cause instanceof InventoryException ) {
+                        throw (InventoryException) cause;
+                    }
+                }
+                throw e;
+            }
+        }
+        return Arrays.asList(fragments);
+    }
+
+    @Override
+    public void close() {
+        if( pool != null ) {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * The default fork-join threads, which are daemons, with names that say what they are for.
+     */
+    private ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("oo-render-" + threadCounter.incrementAndGet());
+        return thread;
+    }
+
+    /**
+     * Renders a range of items into their slots, splitting it in halves while it is large.
+     */
+    private static class RenderTask<T> extends RecursiveAction
+    {
+        private final List<T> items;
+        private final Render<T> render;
+        private final String[] fragments;
+        private final int from;
+        private final int to;
+
+        RenderTask(List<T> items, Render<T> render, String[] fragments, int from, int to) {
+            this.items = items;
+            this.render = render;
+            this.fragments = fragments;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if( to - from > SPLIT_THRESHOLD ) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RenderTask<T>(items, render, fragments, from, middle),
+                        new RenderTask<T>(items, render, fragments, middle, to));
+                return;
+            }
+            for( int i = from; i < to; i++ ) {
+                try {
+                    fragments[i] = render.render(items.get(i));
+                } catch (InventoryException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.oneops.inv;
+
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An inventory rendered once, ready to answer any number of --list and --host requests.
+ *
+ * Immutable, so a daemon can hand the current one to readers while the next one is being built.
+ */
+public class RenderedInventory
+{
+    private static final String EMPTY_HOST = new JSONObject().toString(2);
+
+    private final String list;
+
+    private final Map<String, String> hosts;
+
+    private final long renderedAt;
+
+    private RenderedInventory(String list, Map<String, String> hosts, long renderedAt) {
+        this.list = list;
+        this.hosts = hosts;
+        this.renderedAt = renderedAt;
+    }
+
+    /**
+     * Render the output of {@link Inventory#generateList()}.
+     */
+    public static RenderedInventory render(JSONObject list) {
+        Map<String, String> hosts = new HashMap<String, String>();
+        JSONObject hostvars = list.getJSONObject("_meta").getJSONObject("hostvars");
+        for( String hostId : hostvars.keySet() ) {
+            hosts.put( hostId.trim(), hostvars.getJSONObject(hostId).toString(2) );
+        }
+        return new RenderedInventory(list.toString(2), Collections.unmodifiableMap(hosts), System.currentTimeMillis());
+    }
+
+    /**
+     * The --list output.
+     */
+    public String getList() {
+        return list;
+    }
+
+    /**
+     * The --host output, an empty object for hosts we don't know.
+     */
+    public String getHost(String hostId) {
+        String host = hosts.get(hostId);
+        return host != null ? host : EMPTY_HOST;
+    }
+
+    public long getRenderedAt() {
+        return renderedAt;
+    }
+}
@@ -0,0 +1,154 @@
+package com.oneops.inv;
+
+import com.oneops.api.exception.OneOpsClientAPIException;
+import com.oneops.api.resource.model.CiResource;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * {@link OneOpsSource} that answers from a fixture saved by a {@link RecordingSource} instead of calling
+ * OneOps.
+ *
+ * Requests that failed while recording fail the same way, and requests that weren't recorded fail as if OneOps
+ * didn't know them.  Every call parses its CiResources afresh from the recorded JSON, like the client does from
+ * the HTTP response, so generation costs what it does live, minus the network.
+ */
+public class ReplaySource implements OneOpsSource
+{
+    private final String org;
+
+    private final String assembly;
+
+    /**
+     * Recorded lines by request.
+     */
+    private final Map<String, String> responses;
+
+    private ReplaySource(String org, String assembly, Map<String, String> responses) {
+        this.org = org;
+        this.assembly = assembly;
+        this.responses = responses;
+    }
+
+    /**
+     * Read a fixture file.
+     *
+     * @throws IOException The file can't be read, or isn't a fixture this version understands
+     */
+    public static ReplaySource load(File file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8))) {
+            String first = reader.readLine();
+            if( first == null ) {
+                throw new IOException("Empty recording: " + file);
+            }
+            JSONObject header = new JSONObject(first);
+            if( header.optInt("version") != RecordingSource.FORMAT_VERSION ) {
+                throw new IOException("Unsupported recording version " + header.opt("version") + ": " + file);
+            }
+
+            Map<String, String> responses = new HashMap<String, String>();
+            for( String line = reader.readLine(); line != null; line = reader.readLine() ) {
+                if( !line.isEmpty() ) {
+                    responses.put(new JSONObject(line).getString("request"), line);
+                }
+            }
+            return new ReplaySource(header.getString("org"), header.getString("assembly"), responses);
+        } catch (JSONException e) {
+            throw new IOException("Corrupt recording: " + file, e);
+        }
+    }
+
+    /**
+     * Organization the fixture was recorded from.
+     */
+    public String getOrg() {
+        return org;
+    }
+
+    /**
+     * Assembly the fixture was recorded from.
+     */
+    public String getAssembly() {
+        return assembly;
+    }
+
+    /**
+     * Number of distinct requests recorded.
+     */
+    public int size() {
+        return responses.size();
+    }
+
+    @Override
+    public List<CiResource> listClouds() throws OneOpsClientAPIException {
+        return list(RecordingSource.request("clouds"));
+    }
+
+    @Override
+    public List<CiResource> listEnvironments() throws OneOpsClientAPIException {
+        return list(RecordingSource.request("environments"));
+    }
+
+    @Override
+    public CiResource getEnvironment(String env) throws OneOpsClientAPIException {
+        JSONObject line = replay(RecordingSource.request("environment", env));
+        return line.isNull("response") ? null : CiResourceJson.fromJson(line.getJSONObject("response"));
+    }
+
+    @Override
+    public List<CiResource> listPlatforms(String env) throws OneOpsClientAPIException {
+        return list(RecordingSource.request("platforms", env));
+    }
+
+    @Override
+    public List<CiResource> listGlobalVariables(String env) throws OneOpsClientAPIException {
+        return list(RecordingSource.request("global-variables", env));
+    }
+
+    @Override
+    public List<CiResource> listPlatformComponents(String env, String platform) throws OneOpsClientAPIException {
+        return list(RecordingSource.request("components", env, platform));
+    }
+
+    @Override
+    public List<CiResource> listPlatformVariables(String env, String platform) throws OneOpsClientAPIException {
+        return list(RecordingSource.request("platform-variables", env, platform));
+    }
+
+    @Override
+    public List<CiResource> listInstances(String env, String platform, String component) throws OneOpsClientAPIException {
+        return list(RecordingSource.request("instances", env, platform, component));
+    }
+
+    private List<CiResource> list(String request) throws OneOpsClientAPIException {
+        JSONObject line = replay(request);
+        return line.isNull("response") ? null : CiResourceJson.fromJson(line.getJSONArray("response"));
+    }
+
+    /**
+     * The recorded line of a request that succeeded.
+     */
+    private JSONObject replay(String request) throws OneOpsClientAPIException {
+        String recorded = responses.get(request);
+        if( recorded == null ) {
+            throw new OneOpsClientAPIException("No recorded response for " + request);
+        }
+        JSONObject line = new JSONObject(recorded);
+        if( line.has("error") ) {
+            throw new OneOpsClientAPIException(line.getString("error"));
+        }
+        return line;
+    }
+}
@@ -0,0 +1,65 @@
+package com.oneops.inv;
+
+import com.oneops.api.exception.OneOpsClientAPIException;
+import com.oneops.api.resource.model.CiResource;
+
+import java.util.List;
+
+/**
+ * {@link OneOpsSource} that makes every call through a {@link CallGovernor}, so calls are paced, throttled
+ * calls are retried, and a failing API is left alone for a while.
+ *
+ * Put it over the {@link StatsSource} and {@link EventSource}, so every attempt is timed and reported, and under
+ * any {@link RecordingSource} and {@link MemoizingSource}, so they only see how each call finally came out.
+ */
+public class ResilientSource implements OneOpsSource
+{
+    private final OneOpsSource delegate;
+
+    private final CallGovernor governor;
+
+    public ResilientSource(OneOpsSource delegate, CallGovernor governor) {
+        this.delegate = delegate;
+        this.governor = governor;
+    }
+
+    @Override
+    public List<CiResource> listClouds() throws OneOpsClientAPIException {
+        return governor.call(delegate::listClouds);
+    }
+
+    @Override
+    public List<CiResource> listEnvironments() throws OneOpsClientAPIException {
+        return governor.call(delegate::listEnvironments);
+    }
+
+    @Override
+    public CiResource getEnvironment(String env) throws OneOpsClientAPIException {
+        return governor.call(() -> delegate.getEnvironment(env));
+    }
+
+    @Override
+    public List<CiResource> listPlatforms(String env) throws OneOpsClientAPIException {
+        return governor.call(() -> delegate.listPlatforms(env));
+    }
+
+    @Override
+    public List<CiResource> listGlobalVariables(String env) throws OneOpsClientAPIException {
+        return governor.call(() -> delegate.listGlobalVariables(env));
+    }
+
+    @Override
+    public List<CiResource> listPlatformComponents(String env, String platform) throws OneOpsClientAPIException {
+        return governor.call(() -> delegate.listPlatformComponents(env, platform));
+    }
+
+    @Override
+    public List<CiResource> listPlatformVariables(String env, String platform) throws OneOpsClientAPIException {
+        return governor.call(() -> delegate.listPlatformVariables(env, platform));
+    }
+
+    @Override
+    public List<CiResource> listInstances(String env, String platform, String component) throws OneOpsClientAPIException {
+        return governor.call(() -> delegate.listInstances(env, platform, component));
+    }
+}
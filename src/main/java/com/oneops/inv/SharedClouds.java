@@ -0,0 +1,25 @@
+package com.oneops.inv;
+
+import com.oneops.api.exception.OneOpsClientAPIException;
+import com.oneops.api.resource.model.CiResource;
+
+import java.util.List;
+
+/**
+ * The clouds of one org, listed once for every inventory of that org crawled together.  Clouds belong to the
+ * org, not the assembly, so every assembly would otherwise list the same ones.
+ */
+public class SharedClouds
+{
+    private List<CiResource> clouds;
+
+    /**
+     * The org's clouds, listed through the first source to ask.  The others wait for it.
+     */
+    public synchronized List<CiResource> listClouds(OneOpsSource source) throws OneOpsClientAPIException {
+        if( clouds == null ) {
+            clouds = source.listClouds();
+        }
+        return clouds;
+    }
+}
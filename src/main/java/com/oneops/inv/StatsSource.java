@@ -0,0 +1,85 @@
+package com.oneops.inv;
+
+import com.oneops.api.exception.OneOpsClientAPIException;
+import com.oneops.api.resource.model.CiResource;
+
+import javax.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * {@link OneOpsSource} that times every call it passes through into an {@link InventoryStats}, by method and
+ * by the platform the call was about.
+ *
+ * Put it next to the source that does the work, under any {@link MemoizingSource}, so only real calls are
+ * counted and a call waiting on someone else's doesn't count twice.
+ */
+public class StatsSource implements OneOpsSource
+{
+    private interface Call<T>
+    {
+        T call() throws OneOpsClientAPIException;
+    }
+
+    private final OneOpsSource delegate;
+
+    private final InventoryStats stats;
+
+    public StatsSource(OneOpsSource delegate, InventoryStats stats) {
+        this.delegate = delegate;
+        this.stats = stats;
+    }
+
+    @Override
+    public List<CiResource> listClouds() throws OneOpsClientAPIException {
+        return time("listClouds", null, null, delegate::listClouds);
+    }
+
+    @Override
+    public List<CiResource> listEnvironments() throws OneOpsClientAPIException {
+        return time("listEnvironments", null, null, delegate::listEnvironments);
+    }
+
+    @Override
+    public CiResource getEnvironment(String env) throws OneOpsClientAPIException {
+        return time("getEnvironment", env, null, () -> delegate.getEnvironment(env));
+    }
+
+    @Override
+    public List<CiResource> listPlatforms(String env) throws OneOpsClientAPIException {
+        return time("listPlatforms", env, null, () -> delegate.listPlatforms(env));
+    }
+
+    @Override
+    public List<CiResource> listGlobalVariables(String env) throws OneOpsClientAPIException {
+        return time("listGlobalVariables", env, null, () -> delegate.listGlobalVariables(env));
+    }
+
+    @Override
+    public List<CiResource> listPlatformComponents(String env, String platform) throws OneOpsClientAPIException {
+        return time("listPlatformComponents", env, platform, () -> delegate.listPlatformComponents(env, platform));
+    }
+
+    @Override
+    public List<CiResource> listPlatformVariables(String env, String platform) throws OneOpsClientAPIException {
+        return time("listPlatformVariables", env, platform, () -> delegate.listPlatformVariables(env, platform));
+    }
+
+    @Override
+    public List<CiResource> listInstances(String env, String platform, String component) throws OneOpsClientAPIException {
+        return time("listInstances", env, platform, () -> delegate.listInstances(env, platform, component));
+    }
+
+    private <T> T time(String method, @Nullable String env, @Nullable String platform, Call<T> call)
+            throws OneOpsClientAPIException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.call();
+            failed = false;
+            return result;
+        } finally {
+            stats.addCall(method, env, platform, System.nanoTime() - start, failed);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.oneops.inv;
+
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One assembly, or one environment of it, to crawl into a {@link MultiInventory}: {@code org/assembly} or
+ * {@code org/assembly/env}.
+ */
+public class Target
+{
+    private final String org;
+
+    private final String assembly;
+
+    @Nullable
+    private final String env;
+
+    public Target(String org, String assembly, @Nullable String env) {
+        this.org = org;
+        this.assembly = assembly;
+        this.env = env;
+    }
+
+    /**
+     * Parse targets separated by commas or whitespace.
+     *
+     * @throws IllegalArgumentException If a target isn't {@code org/assembly[/env]}, or two of them overlap or
+     *     have the same group name
+     */
+    public static List<Target> parseList(String targets) {
+        List<Target> parsed = new ArrayList<Target>();
+        for( String target : StringUtils.split(targets, ", \t\n") ) {
+            String[] parts = target.split("/", -1);
+            if( parts.length < 2 || parts.length > 3 || StringUtils.isAnyEmpty(parts) ) {
+                throw new IllegalArgumentException("Not org/assembly or org/assembly/env: " + target);
+            }
+            Target next = new Target(parts[0], parts[1], parts.length == 3 ? parts[2] : null);
+            for( Target other : parsed ) {
+                if( next.overlaps(other) ) {
+                    throw new IllegalArgumentException("Targets " + other + " and " + next + " overlap");
+                }
+                // OneOps names can have dashes, so a-b/c and a/b-c would share every group
+                if( next.getGroupName().equals(other.getGroupName())
+                        && !(next.org.equals(other.org) && next.assembly.equals(other.assembly)) ) {
+                    throw new IllegalArgumentException("Targets " + other + " and " + next + " would both be group "
+                            + next.getGroupName());
+                }
+            }
+            parsed.add(next);
+        }
+        if( parsed.isEmpty() ) {
+            throw new IllegalArgumentException("No targets");
+        }
+        return parsed;
+    }
+
+    /**
+     * Whether some host would be crawled by both targets.
+     */
+    private boolean overlaps(Target other) {
+        return org.equals(other.org) && assembly.equals(other.assembly)
+                && (env == null || other.env == null || env.equals(other.env));
+    }
+
+    public String getOrg() {
+        return org;
+    }
+
+    public String getAssembly() {
+        return assembly;
+    }
+
+    @Nullable
+    public String getEnv() {
+        return env;
+    }
+
+    /**
+     * Name of the group of all the target's hosts, {@code org-assembly}.  Its other groups start with this and
+     * a dash.
+     */
+    public String getGroupName() {
+        return org + "-" + assembly;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Target that = (Target) o;
+
+        if (!org.equals(that.org)) return false;
+        if (!assembly.equals(that.assembly)) return false;
+        return env != null ? env.equals(that.env) : that.env == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = org.hashCode();
+        result = 31 * result + assembly.hashCode();
+        result = 31 * result + (env != null ? env.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return org + "/" + assembly + (env == null ? "" : "/" + env);
+    }
+}
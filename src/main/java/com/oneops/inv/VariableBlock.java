@@ -0,0 +1,42 @@
+package com.oneops.inv;
+
+import org.json.JSONObject;
+
+import java.util.List;
+
+/**
+ * Global or platform variables the way the inventory prints them, built once per environment or platform.
+ *
+ * Every host of a platform carries the same variables, so instead of building and rendering them again for each
+ * host and group we share one object and one rendering of it.
+ */
+public final class VariableBlock
+{
+    private final JSONObject json;
+
+    private final String rendered;
+
+    public VariableBlock(List<VariableRecord> variables) {
+        json = new JSONObject();
+        for( VariableRecord variable : variables ) {
+            json.put( variable.getName(), variable.getValue() );
+        }
+        rendered = json.toString(2);
+    }
+
+    /**
+     * The variables by name.  The same object goes into every host and group that has them, so it must not be
+     * modified.
+     */
+    public JSONObject getJson() {
+        return json;
+    }
+
+    /**
+     * The variables rendered with {@link JSONObject#toString(int)}, for
+     * {@link JsonStreamWriter#renderedValue(String)}.
+     */
+    public String getRendered() {
+        return rendered;
+    }
+}
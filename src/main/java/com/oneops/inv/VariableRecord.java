@@ -0,0 +1,35 @@
+package com.oneops.inv;
+
+import com.oneops.api.resource.model.CiResource;
+
+/**
+ * A global or platform variable, with the value already picked from "value" or "encrypted_value".
+ */
+public final class VariableRecord
+{
+    private final String name;
+
+    private final String value;
+
+    public VariableRecord(CiResource variable) {
+        boolean secure = Boolean.parseBoolean( HostRecord.attribute(variable, "secure") );
+        String valueProp = secure ? "encrypted_value" : "value";
+        this.name = HostRecord.intern(variable.getCiName());
+        this.value = HostRecord.attribute(variable, valueProp);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "VariableRecord{" +
+                "name='" + name + '\'' +
+                '}';
+    }
+}
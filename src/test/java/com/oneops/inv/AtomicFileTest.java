@@ -0,0 +1,58 @@
+package com.oneops.inv;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link AtomicFile}.
+ */
+public class AtomicFileTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void commitReplacesTheFile() throws Exception {
+        File file = temporaryFolder.newFile("inventory.json");
+        Files.write(file.toPath(), "old".getBytes(StandardCharsets.UTF_8));
+
+        try (AtomicFile atomic = new AtomicFile(file)) {
+            try (OutputStream out = atomic.openStream()) {
+                out.write("new".getBytes(StandardCharsets.UTF_8));
+            }
+            // Hidden, next to the file
+            assertThat(atomic.getTempFile().getParentFile(), is(file.getParentFile()));
+            assertThat(atomic.getTempFile().getName().startsWith(".inventory.json."), is(true));
+            assertThat(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), is("old"));
+            atomic.commit();
+        }
+
+        assertThat(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), is("new"));
+        assertThat(temporaryFolder.getRoot().list(), arrayContaining("inventory.json"));
+    }
+
+    @Test
+    public void closeWithoutCommitLeavesTheFile() throws Exception {
+        File file = temporaryFolder.newFile("inventory.json");
+        Files.write(file.toPath(), "old".getBytes(StandardCharsets.UTF_8));
+
+        try (AtomicFile atomic = new AtomicFile(file)) {
+            try (OutputStream out = atomic.openStream()) {
+                out.write("new".getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        assertThat(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), is("old"));
+        assertThat(temporaryFolder.getRoot().list(), arrayContaining("inventory.json"));
+    }
+}
@@ -0,0 +1,209 @@
+package com.oneops.inv;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.oneops.api.exception.OneOpsClientAPIException;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CallGovernor}.
+ */
+public class CallGovernorTest
+{
+    /**
+     * Time that only moves when a call takes time or the governor sleeps.
+     */
+    private static class FakeClock
+        implements CallGovernor.Clock
+    {
+        long now;
+
+        long slept;
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+
+        @Override
+        public void sleep(final long nanos) {
+            now += nanos;
+            slept += nanos;
+        }
+    }
+
+    private final FakeClock clock = new FakeClock();
+
+    private CallGovernor governor(final long callsPerSecond, final int maxInFlight, final int retries) {
+        return new CallGovernor(callsPerSecond, maxInFlight, retries, clock, new Random(1));
+    }
+
+    /**
+     * A call that fails with this message the first few times.
+     */
+    private static CallGovernor.Call<String> failing(final AtomicInteger calls, final int failures, final String message) {
+        return () -> {
+            if (calls.incrementAndGet() <= failures) {
+                throw new OneOpsClientAPIException(message);
+            }
+            return "ok";
+        };
+    }
+
+    @Test
+    public void throttledCallsAreRetried() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CallGovernor governor = governor(0, 8, 3);
+
+        assertThat(governor.call(failing(calls, 2, "HTTP 429 /clouds")), is("ok"));
+        assertThat(calls.get(), is(3));
+        // Backed off before each retry, and lowered the limit
+        assertThat(clock.slept, greaterThan(0L));
+        assertThat(governor.getLimit() < 8, is(true));
+    }
+
+    @Test
+    public void answeredErrorsAreNotRetried() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CallGovernor governor = governor(0, 8, 3);
+        try {
+            governor.call(failing(calls, 1, "HTTP 404 /assemblies/website/transition/environments/gone"));
+            fail();
+        }
+        catch (OneOpsUnavailableException e) {
+            fail();
+        }
+        catch (OneOpsClientAPIException e) {
+            assertThat(e.getMessage().startsWith("HTTP 404"), is(true));
+        }
+        assertThat(calls.get(), is(1));
+        assertThat(governor.getLimit(), is(8.0));
+    }
+
+    @Test
+    public void givesUpAfterRetries() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CallGovernor governor = governor(0, 8, 2);
+        try {
+            governor.call(failing(calls, 10, "HTTP 503 /clouds"));
+            fail();
+        }
+        catch (OneOpsUnavailableException e) {
+            assertThat(e.getMessage(), is("HTTP 503 /clouds (gave up after 3 attempts)"));
+        }
+        assertThat(calls.get(), is(3));
+        assertThat(clock.slept, lessThan(CallGovernor.BACKOFF_BASE_NANOS * (1 + 2)));
+    }
+
+    @Test
+    public void connectionFailuresAreRetried() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        assertThat(governor(0, 8, 1).call(failing(calls, 1, "java.net.ConnectException: Connection refused")),
+            is("ok"));
+        assertThat(calls.get(), is(2));
+    }
+
+    @Test
+    public void limitGrowsBackWhenCallsSucceed() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CallGovernor governor = governor(0, 4, 1);
+        governor.call(failing(calls, 1, "HTTP 429 /clouds"));
+        // Halved by the 429, then half a call back for the retry that got through
+        assertThat(governor.getLimit(), is(2.5));
+
+        for (int i = 0; i < 20; i++) {
+            governor.call(() -> "ok");
+        }
+        assertThat(governor.getLimit(), is(4.0));
+    }
+
+    @Test
+    public void latencyGrowthBacksOff() throws Exception {
+        CallGovernor governor = governor(0, 8, 0);
+        for (int i = 0; i < 5; i++) {
+            governor.call(slow(TimeUnit.MILLISECONDS.toNanos(10)));
+        }
+        assertThat(governor.getLimit(), is(8.0));
+
+        for (int i = 0; i < 5; i++) {
+            governor.call(slow(TimeUnit.MILLISECONDS.toNanos(500)));
+        }
+        assertThat(governor.getLimit() < 8, is(true));
+    }
+
+    private CallGovernor.Call<String> slow(final long nanos) {
+        return () -> {
+            clock.now += nanos;
+            return "ok";
+        };
+    }
+
+    @Test
+    public void tokenBucketPacesCalls() throws Exception {
+        CallGovernor governor = governor(10, 8, 0);
+        for (int i = 0; i < 10; i++) {
+            governor.call(() -> "ok");
+        }
+        // The first second's worth goes at once, the rest at the rate
+        assertThat(clock.slept, is(0L));
+        for (int i = 0; i < 5; i++) {
+            governor.call(() -> "ok");
+        }
+        assertThat(clock.slept, is(TimeUnit.MILLISECONDS.toNanos(500)));
+    }
+
+    @Test
+    public void circuitOpensAndCloses() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CallGovernor governor = governor(0, 8, 0);
+        for (int i = 0; i < CallGovernor.FAILURES_TO_OPEN; i++) {
+            try {
+                governor.call(failing(calls, Integer.MAX_VALUE, "HTTP 500 /clouds"));
+                fail();
+            }
+            catch (OneOpsUnavailableException e) {
+                // Expected
+            }
+        }
+        assertThat(governor.isOpen(), is(true));
+
+        // Fails fast without calling
+        try {
+            governor.call(() -> "ok");
+            fail();
+        }
+        catch (OneOpsUnavailableException e) {
+            assertThat(calls.get(), is(CallGovernor.FAILURES_TO_OPEN));
+        }
+
+        // Half open once the time is up: a success closes it
+        clock.now += CallGovernor.OPEN_NANOS;
+        assertThat(governor.call(() -> "ok"), is("ok"));
+        assertThat(governor.isOpen(), is(false));
+    }
+
+    @Test
+    public void throttlingDoesNotOpenTheCircuit() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CallGovernor governor = governor(0, 8, 0);
+        for (int i = 0; i < CallGovernor.FAILURES_TO_OPEN * 2; i++) {
+            try {
+                governor.call(failing(calls, Integer.MAX_VALUE, "HTTP 429 /clouds"));
+                fail();
+            }
+            catch (OneOpsUnavailableException e) {
+                // Expected
+            }
+        }
+        assertThat(governor.isOpen(), is(false));
+        assertThat(governor.getLimit(), is(1.0));
+    }
+}
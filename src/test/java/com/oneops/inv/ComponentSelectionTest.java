@@ -0,0 +1,31 @@
+package com.oneops.inv;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ComponentSelection}.
+ */
+public class ComponentSelectionTest
+{
+    @Test
+    public void listNeedsHostnameOsAndFqdn() throws Exception {
+        assertThat(ComponentSelection.forList().getComponentNames(),
+            containsInAnyOrder(ComponentSelection.HOSTNAME, ComponentSelection.OS, ComponentSelection.FQDN));
+    }
+
+    @Test
+    public void hostSkipsFqdn() throws Exception {
+        assertThat(ComponentSelection.forHost().getComponentNames(),
+            containsInAnyOrder(ComponentSelection.HOSTNAME, ComponentSelection.OS));
+    }
+
+    @Test
+    public void includeExtendsSelection() throws Exception {
+        assertThat(ComponentSelection.forHost().include("volume").getComponentNames(),
+            contains(ComponentSelection.HOSTNAME, ComponentSelection.OS, "volume"));
+    }
+}
@@ -0,0 +1,65 @@
+package com.oneops.inv;
+
+import java.io.File;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link CrawlLock}.
+ */
+public class CrawlLockTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File lockFile;
+
+    @Before
+    public void setUp() throws Exception {
+        lockFile = new File(temporaryFolder.getRoot(), "cache/inventory.lock");
+    }
+
+    @Test
+    public void uncontendedLock() throws Exception {
+        try (CrawlLock lock = CrawlLock.acquire(lockFile, 0)) {
+            assertThat(lock, notNullValue());
+            assertThat(lock.isContended(), is(false));
+        }
+    }
+
+    @Test
+    public void heldLockTimesOut() throws Exception {
+        try (CrawlLock lock = CrawlLock.acquire(lockFile, 0)) {
+            assertThat(CrawlLock.acquire(lockFile, 200), nullValue());
+        }
+    }
+
+    @Test
+    public void waiterGetsLockOnRelease() throws Exception {
+        CrawlLock first = CrawlLock.acquire(lockFile, 0);
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(300);
+                first.close();
+            }
+            catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        releaser.start();
+
+        try (CrawlLock second = CrawlLock.acquire(lockFile, 5000)) {
+            assertThat(second, notNullValue());
+            assertThat(second.isContended(), is(true));
+        }
+        releaser.join();
+    }
+}
@@ -0,0 +1,122 @@
+package com.oneops.inv;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link FetchEngine}.
+ */
+public class FetchEngineTest
+{
+    private FetchEngine underTest;
+
+    private interface Pause
+    {
+        void run() throws InterruptedException;
+    }
+
+    private static void pause(final Pause pause) throws InventoryException {
+        try {
+            pause.run();
+        }
+        catch (InterruptedException e) {
+            throw new InventoryException("interrupted", e);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        underTest = new FetchEngine(4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        underTest.close();
+    }
+
+    @Test
+    public void resultsKeepItemOrder() throws Exception {
+        List<Integer> results = underTest.fetchAll(Arrays.asList(30, 20, 10, 0), millis -> {
+            pause(() -> Thread.sleep(millis));
+            return millis;
+        });
+        assertThat(results, contains(30, 20, 10, 0));
+    }
+
+    @Test
+    public void fetchesRunConcurrently() throws Exception {
+        // Every fetch waits for all the others - this only completes if they're in flight at once
+        CountDownLatch latch = new CountDownLatch(4);
+        List<Boolean> results = underTest.fetchAll(Arrays.asList(1, 2, 3, 4), item -> {
+            latch.countDown();
+            boolean[] released = new boolean[1];
+            pause(() -> released[0] = latch.await(5, TimeUnit.SECONDS));
+            return released[0];
+        });
+        assertThat(results, contains(true, true, true, true));
+    }
+
+    @Test
+    public void apiFailurePropagates() throws Exception {
+        try {
+            underTest.fetchAll(Arrays.asList("a", "b"), item -> {
+                if (item.equals("b")) {
+                    throw new InventoryException("boom");
+                }
+                return item;
+            });
+            fail();
+        }
+        catch (InventoryException e) {
+            assertThat(e.getMessage(), is("boom"));
+        }
+    }
+
+    @Test
+    public void sharesKeepToOneParallelism() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        FetchEngine.Fetch<Integer, Integer> fetch = item -> {
+            int now = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(now, Math::max);
+            pause(() -> Thread.sleep(20));
+            inFlight.decrementAndGet();
+            return item;
+        };
+
+        Thread other = new Thread(() -> {
+            try (FetchEngine share = underTest.share()) {
+                share.fetchAll(Arrays.asList(1, 2, 3, 4, 5, 6), fetch);
+            }
+            catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        other.start();
+        try (FetchEngine share = underTest.share()) {
+            assertThat(share.fetchAll(Arrays.asList(1, 2, 3, 4, 5, 6), fetch), contains(1, 2, 3, 4, 5, 6));
+        }
+        other.join();
+
+        assertThat(maxInFlight.get() <= 4, is(true));
+        // Closing the shares left the engine running
+        assertThat(underTest.fetchAll(Arrays.asList(7), fetch), contains(7));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parallelismMustBePositive() throws Exception {
+        new FetchEngine(0);
+    }
+}
@@ -0,0 +1,82 @@
+package com.oneops.inv;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import com.oneops.api.resource.model.CiResource;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link HostRecord}.
+ */
+public class HostRecordTest
+{
+    private TestAssembly source;
+
+    private PlatformRecord platform;
+
+    @Before
+    public void setUp() throws Exception {
+        source = new TestAssembly(1, 1, 2, 1);
+        EnvironmentRecord environment = new EnvironmentRecord(source.getEnvironment("env0"),
+            source.listGlobalVariables("env0"));
+        platform = new PlatformRecord(source.listPlatforms("env0").get(0), environment,
+            source.listPlatformVariables("env0", "plat0"), null);
+    }
+
+    private CiResource compute(final int index) throws Exception {
+        return source.listInstances("env0", "plat0", "compute").get(index);
+    }
+
+    @Test
+    public void projectsComputeAndMetadata() throws Exception {
+        HostRecord host = new HostRecord(compute(0), "compute", platform, "10.0.0.0",
+            Arrays.asList("plat0-1.example.com"), source.listInstances("env0", "plat0", "os").get(0));
+
+        assertThat(host.getHostId(), is("10.0.0.0"));
+        assertThat(host.getPublicIp(), is(TestAssembly.publicIp(0)));
+        assertThat(host.getPhysicalHostId(), is("hv-0"));
+        assertThat(host.getCloud(), is("dfw3"));
+        assertThat(host.getOrganization(), is(TestAssembly.ORG));
+        assertThat(host.getPlatformName(), is("plat0"));
+        assertThat(host.getOwner(), is("ops@example.com"));
+        assertThat(host.getHostnames(), is(Collections.singletonList("plat0-1.example.com")));
+        assertThat(host.getOsName(), is("CentOS"));
+        assertThat(host.getPlatform().getEnvironment().getGlobalVariables().get(0).getValue(), is("value-0"));
+    }
+
+    @Test
+    public void metadataKeepsItsJsonTypes() throws Exception {
+        CiResource compute = compute(0);
+        compute.getCiAttributes().setAdditionalProperty("metadata",
+            "{\"organization\": \"devtools\", \"instance\": 2, \"owner\": false}");
+        HostRecord host = new HostRecord(compute, "compute", platform, null, null, null);
+        assertThat(host.getOrganization(), is((Object) "devtools"));
+        assertThat(host.getInstance(), is((Object) 2));
+        assertThat(host.getOwner(), is((Object) false));
+        assertThat(host.getPlatformName(), nullValue());
+    }
+
+    @Test
+    public void siblingsAreOptional() throws Exception {
+        HostRecord host = new HostRecord(compute(0), "compute", platform, null, null, null);
+        assertThat(host.getHostnames(), nullValue());
+        assertThat(host.getOsType(), nullValue());
+        assertThat(host.getOsName(), nullValue());
+    }
+
+    @Test
+    public void repeatedValuesAreShared() throws Exception {
+        HostRecord first = new HostRecord(compute(0), "compute", platform, null, null, null);
+        HostRecord second = new HostRecord(compute(1), new String("compute"), platform, null, null, null);
+        assertThat(second.getComponentName(), sameInstance(first.getComponentName()));
+        assertThat(second.getServerImageName(), sameInstance(first.getServerImageName()));
+        assertThat(second.getEnvironment(), sameInstance(first.getEnvironment()));
+    }
+}
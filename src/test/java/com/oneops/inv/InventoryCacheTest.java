@@ -0,0 +1,146 @@
+package com.oneops.inv;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link InventoryCache}.
+ */
+public class InventoryCacheTest
+{
+    private static final String KEY = InventoryCache.key("org", "assembly", "prod", "https://oneops.example.com/", "public_ip");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private InventoryCache underTest;
+
+    @Before
+    public void setUp() throws Exception {
+        underTest = new InventoryCache(new File(temporaryFolder.getRoot(), "cache"), 60);
+    }
+
+    @Test
+    public void missingEntry() throws Exception {
+        assertThat(underTest.lookup(KEY), nullValue());
+    }
+
+    @Test
+    public void writeThenRead() throws Exception {
+        underTest.write(KEY, "{\"oo\": {}}");
+        InventoryCache.Entry entry = underTest.lookup(KEY);
+        assertThat(entry, notNullValue());
+        assertThat(underTest.isFresh(entry), is(true));
+        assertThat(entry.read(), is("{\"oo\": {}}"));
+    }
+
+    @Test
+    public void rewriteReplacesEntry() throws Exception {
+        underTest.write(KEY, "old");
+        underTest.write(KEY, "new");
+        assertThat(underTest.lookup(KEY).read(), is("new"));
+        assertThat(new File(temporaryFolder.getRoot(), "cache").list().length, is(1));
+    }
+
+    @Test
+    public void entryExpires() throws Exception {
+        underTest.write(KEY, "{}");
+        File file = new File(new File(temporaryFolder.getRoot(), "cache"), KEY + ".json.gz");
+        assertThat(file.setLastModified(System.currentTimeMillis() - 61000), is(true));
+        assertThat(underTest.isFresh(underTest.lookup(KEY)), is(false));
+    }
+
+    @Test
+    public void expiredEntryIsStaleWithinGrace() throws Exception {
+        underTest = new InventoryCache(new File(temporaryFolder.getRoot(), "cache"), 60, 60);
+        underTest.write(KEY, "{}");
+        File file = new File(new File(temporaryFolder.getRoot(), "cache"), KEY + ".json.gz");
+
+        assertThat(file.setLastModified(System.currentTimeMillis() - 90000), is(true));
+        InventoryCache.Entry entry = underTest.lookup(KEY);
+        assertThat(underTest.isStale(entry), is(true));
+        assertThat(underTest.getStalenessMillis(entry) >= 30000, is(true));
+
+        assertThat(file.setLastModified(System.currentTimeMillis() - 121000), is(true));
+        assertThat(underTest.isStale(underTest.lookup(KEY)), is(false));
+    }
+
+    @Test
+    public void freshEntryIsNotStale() throws Exception {
+        underTest.write(KEY, "{}");
+        assertThat(underTest.isStale(underTest.lookup(KEY)), is(false));
+    }
+
+    @Test
+    public void refreshIsClaimedOnce() throws Exception {
+        assertThat(underTest.claimRefresh(KEY), is(true));
+        assertThat(underTest.claimRefresh(KEY), is(false));
+
+        // Writing the entry completes the refresh
+        underTest.write(KEY, "{}");
+        assertThat(underTest.claimRefresh(KEY), is(true));
+    }
+
+    @Test
+    public void abandonedRefreshClaimExpires() throws Exception {
+        assertThat(underTest.claimRefresh(KEY), is(true));
+        File marker = new File(new File(temporaryFolder.getRoot(), "cache"), KEY + ".refresh");
+        assertThat(marker.setLastModified(System.currentTimeMillis() - 3600000), is(true));
+        assertThat(underTest.claimRefresh(KEY), is(true));
+    }
+
+    @Test
+    public void hostIndex() throws Exception {
+        assertThat(underTest.lookupHost(KEY, "10.0.0.1"), nullValue());
+
+        underTest.writeHostIndex(KEY, Collections.singletonMap("10.0.0.1", new HostLocation("prod", "web")));
+        assertThat(underTest.lookupHost(KEY, "10.0.0.1"), is(new HostLocation("prod", "web")));
+        assertThat(underTest.lookupHost(KEY, "10.0.0.2"), nullValue());
+        assertThat(underTest.lookup(KEY), nullValue());
+    }
+
+    @Test
+    public void snapshotIsOnlyUsedWithItsEntry() throws Exception {
+        underTest.write(KEY, "{}");
+        assertThat(underTest.lookup(KEY).getSnapshot(), nullValue());
+
+        underTest.writeSnapshot(KEY, out -> out.write(1));
+        File snapshot = underTest.lookup(KEY).getSnapshot();
+        assertThat(snapshot, notNullValue());
+
+        // A snapshot older than its entry belongs to an earlier crawl
+        assertThat(snapshot.setLastModified(System.currentTimeMillis() - 60000), is(true));
+        assertThat(underTest.lookup(KEY).getSnapshot(), nullValue());
+    }
+
+    @Test
+    public void keyDependsOnEveryCoordinate() throws Exception {
+        assertThat(InventoryCache.key("org", "assembly", null, "https://oneops.example.com/", "public_ip"), not(KEY));
+        assertThat(InventoryCache.key("org", "assembly", "prod", "https://oneops.example.com/", "hostname"), not(KEY));
+        assertThat(InventoryCache.key("org", "assembly", "prod", "https://other.example.com/", "public_ip"), not(KEY));
+        assertThat(InventoryCache.key("org", "assembly", "prod", "https://oneops.example.com/", "public_ip"), is(KEY));
+        assertThat(InventoryCache.key("org", "assembly", "prod", "https://oneops.example.com/", "public_ip", false), is(KEY));
+        assertThat(InventoryCache.key("org", "assembly", "prod", "https://oneops.example.com/", "public_ip", true), not(KEY));
+    }
+
+    @Test
+    public void keysMatchTheWrapper() throws Exception {
+        // What oo-wrapper.py sends the daemon for the same environment
+        assertThat(InventoryCache.key("devtools", "website", "", "https://oneops.example.com/", "public_ip"),
+            is("b6e2e649f4e6f7eee92f78059878569f27f3d38f5aba72f021cf1c460b8074e3"));
+        assertThat(InventoryCache.key(Target.parseList("devtools/website/prod, ops/monitoring"),
+            "https://oneops.example.com/", "hostname", true),
+            is("abb4f96750d06762c201aaa03c34c22a02a3fc6962f8a5c1add421b44f67ffb5"));
+    }
+}
@@ -0,0 +1,63 @@
+package com.oneops.inv;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link InventoryDaemon}.
+ */
+public class InventoryDaemonTest
+{
+    private AtomicInteger crawls;
+
+    private InventoryDaemon underTest;
+
+    @Before
+    public void setUp() throws Exception {
+        crawls = new AtomicInteger();
+        underTest = new InventoryDaemon(() -> {
+            int crawl = crawls.incrementAndGet();
+            return new JSONObject("{\"_meta\": {\"hostvars\": {\"10.0.0.1\": {\"crawl\": " + crawl + "}}},"
+                + " \"oo\": {\"hosts\": [\"10.0.0.1\"]}}");
+        }, "key", 0, 60);
+        underTest.refresh();
+    }
+
+    @Test
+    public void answersList() throws Exception {
+        JSONObject list = new JSONObject(underTest.answer("key --list"));
+        assertThat(list.getJSONObject("oo").getJSONArray("hosts").getString(0), is("10.0.0.1"));
+    }
+
+    @Test
+    public void answersHost() throws Exception {
+        assertThat(new JSONObject(underTest.answer("key --host 10.0.0.1\r")).getInt("crawl"), is(1));
+        assertThat(underTest.answer("key --host 10.0.0.2"), is("{}"));
+    }
+
+    @Test
+    public void refreshSwapsInventory() throws Exception {
+        underTest.refresh();
+        assertThat(new JSONObject(underTest.answer("key --host 10.0.0.1")).getInt("crawl"), is(2));
+    }
+
+    @Test
+    public void rejectsUnknownRequest() throws Exception {
+        assertThat(underTest.answer("key --bogus"), nullValue());
+        assertThat(underTest.answer("key --host"), nullValue());
+        assertThat(underTest.answer("--list"), nullValue());
+    }
+
+    @Test
+    public void rejectsAnotherInventory() throws Exception {
+        assertThat(underTest.answer("other --list"), nullValue());
+        assertThat(underTest.answer("other --host 10.0.0.1"), nullValue());
+    }
+}
@@ -0,0 +1,108 @@
+package com.oneops.inv;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.annotation.Nullable;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link InventoryDiff}.
+ */
+public class InventoryDiffTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private InventorySnapshot snapshot(final InventorySnapshot.Builder builder) throws Exception {
+        File file = temporaryFolder.newFile();
+        try (OutputStream out = new FileOutputStream(file)) {
+            builder.writeTo(out);
+        }
+        return InventorySnapshot.open(file);
+    }
+
+    private InventorySnapshot snapshot(final Inventory inventory) throws Exception {
+        File file = temporaryFolder.newFile();
+        try (OutputStream out = new FileOutputStream(file)) {
+            inventory.writeSnapshot(out);
+        }
+        return InventorySnapshot.open(file);
+    }
+
+    private static String[] diff(@Nullable final InventorySnapshot previous, final InventorySnapshot current)
+        throws Exception
+    {
+        StringWriter writer = new StringWriter();
+        int lines = InventoryDiff.write(previous, current, writer);
+        String[] written = writer.toString().isEmpty() ? new String[0] : writer.toString().split("\n");
+        assertThat(written.length, is(lines));
+        return written;
+    }
+
+    private static void assertLine(final String line, final String expected) {
+        assertThat(line, new JSONObject(line).similar(new JSONObject(expected)), is(true));
+    }
+
+    @Test
+    public void addedChangedAndRemoved() throws Exception {
+        InventorySnapshot previous = snapshot(new InventorySnapshot.Builder()
+            .addHost("a", "{\n  \"x\": 1,\n  \"y\": 2\n}")
+            .addHost("b", "{\n  \"x\": 1,\n  \"y\": 2\n}")
+            .addHost("c", "{\"x\": 1}")
+            .addGroup("all", "{}", Arrays.asList("a", "b", "c"))
+            .addGroup("first", null, Collections.singletonList("a"))
+            .addGroup("last", null, Collections.singletonList("c")));
+        InventorySnapshot current = snapshot(new InventorySnapshot.Builder()
+            // Rendered differently, but the same hostvars
+            .addHost("a", "{\"y\": 2, \"x\": 1}")
+            .addHost("b", "{\n  \"x\": 2,\n  \"z\": [1]\n}")
+            .addHost("d", "{\"x\": 1}")
+            .addGroup("all", "{}", Arrays.asList("a", "b", "d"))
+            .addGroup("first", null, Collections.singletonList("a"))
+            .addGroup("new", null, Collections.singletonList("d")));
+
+        String[] lines = diff(previous, current);
+        assertThat(lines.length, is(6));
+        assertLine(lines[0], "{\"op\": \"change\", \"host\": \"b\", \"set\": {\"x\": 2, \"z\": [1]}, \"unset\": [\"y\"]}");
+        assertLine(lines[1], "{\"op\": \"add\", \"host\": \"d\", \"hostvars\": {\"x\": 1}}");
+        assertLine(lines[2], "{\"op\": \"remove\", \"host\": \"c\"}");
+        assertLine(lines[3], "{\"op\": \"group\", \"group\": \"all\", \"add\": [\"d\"], \"remove\": [\"c\"]}");
+        assertLine(lines[4], "{\"op\": \"group\", \"group\": \"new\", \"add\": [\"d\"], \"remove\": []}");
+        assertLine(lines[5], "{\"op\": \"group\", \"group\": \"last\", \"add\": [], \"remove\": [\"c\"]}");
+    }
+
+    @Test
+    public void sameInventoryHasNoDifferences() throws Exception {
+        Inventory inventory = new Inventory(TestAssembly.ORG, TestAssembly.ASSEMBLY, null, "token",
+            "https://oneops.example.com/", Main.DEFAULT_HOST_METHOD);
+        inventory.initialize(new TestAssembly(2, 3, 4, 2));
+        assertThat(diff(snapshot(inventory), snapshot(inventory)).length, is(0));
+    }
+
+    @Test
+    public void everythingIsAddedWithoutPrevious() throws Exception {
+        Inventory inventory = new Inventory(TestAssembly.ORG, TestAssembly.ASSEMBLY, null, "token",
+            "https://oneops.example.com/", Main.DEFAULT_HOST_METHOD);
+        inventory.initialize(new TestAssembly(1, 1, 2, 1));
+
+        // 2 hosts, then oo, env0, the platform and its computes
+        String[] lines = diff(null, snapshot(inventory));
+        assertThat(lines.length, is(6));
+        JSONObject added = new JSONObject(lines[0]);
+        assertThat(added.getString("op"), is("add"));
+        assertThat(added.getJSONObject("hostvars").getString("oo_platform"), is("plat0"));
+        assertThat(new JSONObject(lines[5]).getJSONArray("add").length(), is(2));
+    }
+}
@@ -0,0 +1,100 @@
+package com.oneops.inv;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.oneops.api.exception.OneOpsClientAPIException;
+import com.oneops.api.resource.model.CiResource;
+import org.junit.Test;
+
+/**
+ * Tests for {@link InventoryEvents} and {@link EventSource}.
+ */
+public class InventoryEventsTest
+{
+    /**
+     * Remembers what was reported, one line per event.
+     */
+    private static class RecordedEvents
+        extends InventoryEvents
+    {
+        private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public Call beginCall(final String method, final String org, @Nullable final String env,
+                              @Nullable final String platform, @Nullable final String component)
+        {
+            return failed -> events.add(method + " " + org + " " + env + " " + platform + " " + component
+                + (failed ? " failed" : ""));
+        }
+
+        @Override
+        public Phase beginPhase(final String phase) {
+            return (hosts, groups) -> events.add(phase + " " + hosts + " hosts " + groups + " groups");
+        }
+
+        @Override
+        public boolean isActive() {
+            return true;
+        }
+    }
+
+    @Test
+    public void noEventsDoNothing() {
+        InventoryEvents.NONE.beginCall("listClouds", "org", null, null, null).end(false);
+        InventoryEvents.NONE.beginPhase("gather").end(0, 0);
+        assertThat(InventoryEvents.NONE.isActive(), is(false));
+    }
+
+    @Test
+    public void phasesAreReported() throws Exception {
+        RecordedEvents events = new RecordedEvents();
+        Inventory inventory = new Inventory(TestAssembly.ORG, TestAssembly.ASSEMBLY, null, "token",
+            "https://oneops.example.com/", Main.DEFAULT_HOST_METHOD);
+        inventory.setEvents(events);
+        inventory.initialize(new MemoizingSource(new TestAssembly(2, 3, 4, 2)));
+        inventory.writeList(new StringWriter());
+        inventory.generateHost(TestAssembly.publicIp(0));
+
+        // oo, 2 environments, 6 platforms and 6 platform computes
+        assertThat(events.events, is(Arrays.asList(
+            "gather 24 hosts 15 groups",
+            "writeList 24 hosts 15 groups",
+            "generateHost 1 hosts 0 groups")));
+    }
+
+    @Test
+    public void callsAreReported() throws Exception {
+        RecordedEvents events = new RecordedEvents();
+        EventSource source = new EventSource(new MemoizingSourceTest.EmptySource(), events, TestAssembly.ORG);
+        source.listInstances("prod", "web", "compute");
+        try {
+            source.getEnvironment("qa");
+            fail();
+        }
+        catch (OneOpsClientAPIException e) {
+            // Expected
+        }
+
+        assertThat(events.events, hasItem("listInstances devtools prod web compute"));
+        assertThat(events.events, hasItem("getEnvironment devtools qa null null failed"));
+    }
+
+    @Test
+    public void resultsPassThrough() throws Exception {
+        TestAssembly assembly = new TestAssembly(1, 1, 2, 1);
+        EventSource source = new EventSource(assembly, new RecordedEvents(), TestAssembly.ORG);
+        List<CiResource> platforms = source.listPlatforms("env0");
+        assertThat(platforms, is(assembly.listPlatforms("env0")));
+    }
+}
@@ -0,0 +1,139 @@
+package com.oneops.inv;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link InventorySnapshot}.
+ */
+public class InventorySnapshotTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static Inventory inventory(final String hostMethod, final TestAssembly source) throws Exception {
+        Inventory inventory = new Inventory(TestAssembly.ORG, TestAssembly.ASSEMBLY, null, "token",
+            "https://oneops.example.com/", hostMethod);
+        inventory.initialize(new MemoizingSource(source));
+        return inventory;
+    }
+
+    private InventorySnapshot snapshot(final Inventory inventory) throws Exception {
+        File file = temporaryFolder.newFile();
+        try (OutputStream out = new FileOutputStream(file)) {
+            inventory.writeSnapshot(out);
+        }
+        return InventorySnapshot.open(file);
+    }
+
+    private static String list(final Inventory inventory) throws Exception {
+        StringWriter writer = new StringWriter();
+        inventory.writeList(writer);
+        return writer.toString();
+    }
+
+    private static String list(final InventorySnapshot snapshot) throws Exception {
+        StringWriter writer = new StringWriter();
+        snapshot.writeList(writer);
+        return writer.toString();
+    }
+
+    @Test
+    public void listMatchesInventory() throws Exception {
+        for (String hostMethod : new String[] { "public_ip", "hostname" }) {
+            Inventory inventory = inventory(hostMethod, new TestAssembly(2, 3, 4, 2));
+            assertThat(hostMethod, list(snapshot(inventory)), is(list(inventory)));
+        }
+    }
+
+    @Test
+    public void listOfSingleHost() throws Exception {
+        Inventory inventory = inventory("public_ip", new TestAssembly(1, 1, 1, 1));
+        assertThat(list(snapshot(inventory)), is(list(inventory)));
+    }
+
+    @Test
+    public void listOfEmptyAssembly() throws Exception {
+        Inventory inventory = inventory("public_ip", new TestAssembly(0, 0, 0, 0));
+        assertThat(list(snapshot(inventory)), is(list(inventory)));
+    }
+
+    @Test
+    public void host() throws Exception {
+        Inventory inventory = inventory("public_ip", new TestAssembly(2, 3, 4, 2));
+        InventorySnapshot snapshot = snapshot(inventory);
+        assertThat(snapshot.getHostCount(), is(24));
+        for (int host = 0; host < 24; host++) {
+            String hostId = TestAssembly.publicIp(host);
+            assertThat(snapshot.getHost(hostId), is(inventory.generateHost(hostId).toString(2)));
+        }
+        assertThat(snapshot.getHost("192.0.2.1"), nullValue());
+    }
+
+    @Test
+    public void hostIdsAreTrimmed() throws Exception {
+        File file = temporaryFolder.newFile();
+        try (OutputStream out = new FileOutputStream(file)) {
+            new InventorySnapshot.Builder()
+                .addHost(" 10.0.0.1 ", "{\"oo_ram\": \"4G\"}")
+                .addGroup("oo", "{}", Arrays.asList(" 10.0.0.1 "))
+                .writeTo(out);
+        }
+        assertThat(InventorySnapshot.open(file).getHost("10.0.0.1"), is("{\"oo_ram\": \"4G\"}"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void groupsReferenceKnownHosts() throws Exception {
+        new InventorySnapshot.Builder().addGroup("oo", "{}", Arrays.asList("10.0.0.1"));
+    }
+
+    @Test(expected = IOException.class)
+    public void notASnapshot() throws Exception {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), "{\"oo\": {}}".getBytes("UTF-8"));
+        InventorySnapshot.open(file);
+    }
+
+    @Test
+    public void damagedSnapshot() throws Exception {
+        File file = temporaryFolder.newFile();
+        try (OutputStream out = new FileOutputStream(file)) {
+            inventory("public_ip", new TestAssembly(1, 2, 3, 1)).writeSnapshot(out);
+        }
+        byte[] bytes = Files.readAllBytes(file.toPath());
+
+        // Cut off in the index, with the header intact
+        Files.write(file.toPath(), Arrays.copyOf(bytes, 60));
+        assertDamaged(file);
+
+        // No index slots
+        byte[] noSlots = bytes.clone();
+        Arrays.fill(noSlots, 16, 20, (byte) 0);
+        Files.write(file.toPath(), noSlots);
+        assertDamaged(file);
+    }
+
+    private static void assertDamaged(final File file) {
+        try {
+            InventorySnapshot.open(file);
+            fail();
+        }
+        catch (IOException e) {
+            assertThat(e.getMessage(), is("Damaged inventory snapshot"));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.oneops.inv;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * Tests for {@link InventoryStats} and {@link StatsSource}.
+ */
+public class InventoryStatsTest
+{
+    private static long millis(final long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    public void latencyPercentiles() {
+        InventoryStats stats = new InventoryStats();
+        for (int i = 1; i <= 200; i++) {
+            stats.addCall("listInstances", "prod", "web", millis(i), i == 200);
+        }
+
+        JSONObject calls = stats.toJson().getJSONObject("calls").getJSONObject("listInstances");
+        assertThat(calls.getInt("count"), is(200));
+        assertThat(calls.getInt("errors"), is(1));
+        assertThat(calls.getDouble("total_ms"), is(20100.0));
+        assertThat(calls.getDouble("p50_ms"), is(100.0));
+        assertThat(calls.getDouble("p99_ms"), is(198.0));
+        assertThat(calls.getDouble("max_ms"), is(200.0));
+    }
+
+    @Test
+    public void slowestPlatformsFirst() {
+        InventoryStats stats = new InventoryStats();
+        for (int p = 0; p < InventoryStats.SLOWEST_PLATFORMS + 5; p++) {
+            stats.addCall("listPlatformComponents", "prod", "plat" + p, millis(p), false);
+            stats.addCall("listInstances", "prod", "plat" + p, millis(p), false);
+        }
+        // Calls about a whole environment aren't any platform's
+        stats.addCall("listPlatforms", "prod", null, millis(1000), false);
+
+        JSONArray platforms = stats.toJson().getJSONArray("slowest_platforms");
+        assertThat(platforms.length(), is(InventoryStats.SLOWEST_PLATFORMS));
+        JSONObject slowest = platforms.getJSONObject(0);
+        assertThat(slowest.getString("environment"), is("prod"));
+        assertThat(slowest.getString("platform"), is("plat14"));
+        assertThat(slowest.getInt("calls"), is(2));
+        assertThat(slowest.getDouble("total_ms"), is(28.0));
+        assertThat(platforms.getJSONObject(9).getString("platform"), is("plat5"));
+    }
+
+    @Test
+    public void phasesAddUp() {
+        InventoryStats stats = new InventoryStats();
+        stats.addPhase(InventoryStats.PHASE_HOSTVARS, millis(3));
+        stats.addPhase(InventoryStats.PHASE_HOSTVARS, millis(4));
+        assertThat(stats.getPhaseNanos(InventoryStats.PHASE_HOSTVARS), is(millis(7)));
+        assertThat(stats.getPhaseNanos(InventoryStats.PHASE_GATHER), is(0L));
+        assertThat(stats.toJson().getJSONObject("phases").getDouble(InventoryStats.PHASE_HOSTVARS), is(7.0));
+    }
+
+    @Test
+    public void crawlIsTimed() throws Exception {
+        TestAssembly assembly = new TestAssembly(2, 3, 4, 2);
+        InventoryStats stats = new InventoryStats();
+        Inventory inventory = new Inventory(TestAssembly.ORG, TestAssembly.ASSEMBLY, null, "token",
+            "https://oneops.example.com/", Main.DEFAULT_HOST_METHOD);
+        inventory.setStats(stats);
+        inventory.initialize(new MemoizingSource(new StatsSource(assembly, stats)));
+        inventory.writeList(new StringWriter());
+
+        assertThat(stats.getCallCount("listPlatforms"), is(2));
+        assertThat(stats.getCallCount("listPlatformComponents"), is(6));
+        assertThat(stats.getCallCount("listPlatformVariables"), is(6));
+        JSONObject json = stats.toJson();
+        assertThat(json.getJSONArray("slowest_platforms").length(), is(6));
+        for (String phase : new String[] { InventoryStats.PHASE_GATHER, InventoryStats.PHASE_HOSTVARS,
+            InventoryStats.PHASE_GROUPS, InventoryStats.PHASE_SERIALIZATION })
+        {
+            assertThat(phase, stats.getPhaseNanos(phase), greaterThan(0L));
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.oneops.inv;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import com.oneops.api.exception.OneOpsClientAPIException;
+import com.oneops.api.resource.model.CiAttributes;
+import com.oneops.api.resource.model.CiResource;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * Tests for {@link Inventory}.
+ */
+public class InventoryTest
+{
+    private static Inventory inventory(final String env, final String hostMethod, final OneOpsSource source)
+        throws Exception
+    {
+        Inventory inventory = new Inventory(TestAssembly.ORG, TestAssembly.ASSEMBLY, env, "token",
+            "https://oneops.example.com/", hostMethod);
+        inventory.initialize(source);
+        return inventory;
+    }
+
+    private static String writeList(final Inventory inventory) throws Exception {
+        StringWriter writer = new StringWriter();
+        inventory.writeList(writer);
+        return writer.toString();
+    }
+
+    @Test
+    public void listHasHostvarsAndGroups() throws Exception {
+        JSONObject list = inventory("env0", "public_ip", new TestAssembly(1, 2, 3, 2)).generateList();
+
+        JSONObject hostvars = list.getJSONObject("_meta").getJSONObject("hostvars");
+        assertThat(hostvars.length(), is(6));
+        JSONObject host = hostvars.getJSONObject(TestAssembly.publicIp(0));
+        assertThat(host.getString("oo_platform"), is("plat0"));
+        assertThat(host.getString("oo_os_name"), is("CentOS"));
+        assertThat(host.getJSONObject("global").getString("global_var0"), is("value-0"));
+
+        assertThat(list.getJSONObject("oo").getJSONArray("hosts").length(), is(6));
+        assertThat(list.getJSONObject("env-env0").getJSONArray("hosts").length(), is(6));
+        assertThat(list.getJSONObject("platform-plat1").getJSONArray("hosts").length(), is(3));
+        assertThat(list.getJSONObject("platform-plat1").getJSONObject("vars").getJSONArray("fqdn_aliases").getString(0),
+            is("plat1"));
+        assertThat(list.getJSONArray("platform-plat1-compute").length(), is(3));
+    }
+
+    @Test
+    public void assemblyGroupsArePrefixedWithEnvironment() throws Exception {
+        JSONObject list = inventory(null, "public_ip", new TestAssembly(2, 1, 1, 0)).generateList();
+        assertThat(list.getJSONObject("env-env1-platform-plat0").getJSONArray("hosts").length(), is(1));
+        assertThat(list.getJSONArray("env-env1-platform-plat0-compute").length(), is(1));
+    }
+
+    @Test
+    public void hostnameMethod() throws Exception {
+        JSONObject list = inventory("env0", "hostname", new TestAssembly(1, 1, 1, 0)).generateList();
+        String hostId = list.getJSONObject("oo").getJSONArray("hosts").getString(0);
+        assertThat(hostId.startsWith("plat0-"), is(true));
+        assertThat(list.getJSONObject("_meta").getJSONObject("hostvars").getJSONObject(hostId)
+            .getString("ansible_ssh_host"), is(hostId));
+    }
+
+    @Test
+    public void hostsWithoutSiblings() throws Exception {
+        JSONObject host = inventory("env0", "public_ip", new TestAssembly(1, 1, 2, 0, false))
+            .generateHost(TestAssembly.publicIp(1));
+        assertThat(host.getString("oo_platform"), is("plat0"));
+        assertThat(host.has("oo_hostnames"), is(false));
+        assertThat(host.has("oo_os_name"), is(false));
+    }
+
+    @Test(expected = InventoryException.class)
+    public void hostnameMethodNeedsHostnameComponent() throws Exception {
+        inventory("env0", "hostname", new TestAssembly(1, 1, 1, 0, false));
+    }
+
+    @Test
+    public void groupsUseTheSameHostIdsAsHostvars() throws Exception {
+        JSONObject list = inventory(null, "hostname", new TestAssembly(2, 2, 3, 0)).generateList();
+        JSONObject hostvars = list.getJSONObject("_meta").getJSONObject("hostvars");
+        for( String group : new String[] { "oo", "env-env1", "env-env0-platform-plat1" } ) {
+            for( Object hostId : list.getJSONObject(group).getJSONArray("hosts") ) {
+                assertThat(group, hostvars.has((String) hostId), is(true));
+            }
+        }
+        for( Object hostId : list.getJSONArray("env-env1-platform-plat0-compute") ) {
+            assertThat(hostvars.has((String) hostId), is(true));
+        }
+    }
+
+    @Test
+    public void writeListMatchesGenerateList() throws Exception {
+        for (String hostMethod : new String[] { "public_ip", "private_ip", "hostname" }) {
+            Inventory inventory = inventory(null, hostMethod, new TestAssembly(2, 3, 4, 3));
+            JSONObject written = new JSONObject(writeList(inventory));
+            // Round-trip the tree as well, ids are Longs in memory but parse back as Integers
+            JSONObject generated = new JSONObject(inventory.generateList().toString());
+            assertThat(hostMethod, written.similar(generated), is(true));
+        }
+    }
+
+    @Test
+    public void writeListDoesNotDependOnRenderParallelism() throws Exception {
+        // Enough hosts for several render batches
+        Inventory inventory = inventory(null, "public_ip", new TestAssembly(2, 3, 200, 2));
+        inventory.setRenderParallelism(1);
+        String sequential = writeList(inventory);
+        inventory.setRenderParallelism(8);
+        assertThat(writeList(inventory), is(sequential));
+    }
+
+    @Test
+    public void writeListOfEmptyAssembly() throws Exception {
+        Inventory inventory = inventory(null, "public_ip", new TestAssembly(0, 0, 0, 0));
+        assertThat(new JSONObject(writeList(inventory)).similar(inventory.generateList()), is(true));
+    }
+
+    @Test
+    public void hostsShareVariableBlocks() throws Exception {
+        JSONObject list = inventory("env0", "public_ip", new TestAssembly(1, 1, 2, 2)).generateList();
+        JSONObject hostvars = list.getJSONObject("_meta").getJSONObject("hostvars");
+        JSONObject first = hostvars.getJSONObject(TestAssembly.publicIp(0));
+        JSONObject second = hostvars.getJSONObject(TestAssembly.publicIp(1));
+        assertThat(first.get("global"), sameInstance(second.get("global")));
+        assertThat(first.get("platform"), sameInstance(second.get("platform")));
+        assertThat(list.getJSONObject("platform-plat0").getJSONObject("vars").get("global"),
+            sameInstance(first.get("global")));
+    }
+
+    @Test
+    public void groupVarsOnly() throws Exception {
+        Inventory inventory = new Inventory(TestAssembly.ORG, TestAssembly.ASSEMBLY, null, "token",
+            "https://oneops.example.com/", "public_ip");
+        inventory.setHostVariables(false);
+        inventory.initialize(new TestAssembly(2, 2, 2, 2));
+
+        JSONObject list = inventory.generateList();
+        JSONObject host = list.getJSONObject("_meta").getJSONObject("hostvars").getJSONObject(TestAssembly.publicIp(0));
+        assertThat(host.has("global"), is(false));
+        assertThat(host.has("platform"), is(false));
+        assertThat(host.getString("oo_platform"), is("plat0"));
+        assertThat(list.getJSONObject("env-env0").getJSONObject("vars").getJSONObject("global")
+            .getString("global_var0"), is("value-0"));
+        assertThat(list.getJSONObject("env-env0-platform-plat0").getJSONObject("vars").has("platform"), is(true));
+
+        JSONObject written = new JSONObject(writeList(inventory));
+        assertThat(written.similar(new JSONObject(list.toString())), is(true));
+        assertThat(inventory.generateHost(TestAssembly.publicIp(0)).has("global"), is(false));
+    }
+
+    @Test
+    public void generateHost() throws Exception {
+        Inventory inventory = inventory("env0", "public_ip", new TestAssembly(1, 2, 2, 1));
+        JSONObject host = inventory.generateHost(TestAssembly.publicIp(3));
+        assertThat(host.getString("oo_platform"), is("plat1"));
+        assertThat(inventory.generateHost("192.0.2.1").length(), is(0));
+    }
+
+    private static Inventory hostInventory() {
+        Inventory inventory = new Inventory(TestAssembly.ORG, TestAssembly.ASSEMBLY, null, "token",
+            "https://oneops.example.com/", "public_ip");
+        inventory.setComponentSelection(ComponentSelection.forHost());
+        return inventory;
+    }
+
+    @Test
+    public void hostLocations() throws Exception {
+        Inventory inventory = inventory(null, "public_ip", new TestAssembly(2, 2, 2, 0));
+        assertThat(inventory.getHostLocations().size(), is(8));
+        assertThat(inventory.getHostLocations().get(TestAssembly.publicIp(6)), is(new HostLocation("env1", "plat1")));
+    }
+
+    @Test
+    public void hostAtKnownLocationFetchesOnePlatform() throws Exception {
+        TestAssembly source = new TestAssembly(3, 4, 2, 1);
+        String hostId = TestAssembly.publicIp(13);
+
+        Inventory inventory = hostInventory();
+        assertThat(inventory.initializeHost(new MemoizingSource(source), hostId, new HostLocation("env1", "plat2")), is(true));
+
+        // environment, platforms, globals, components, platform variables, compute, hostname and os instances
+        assertThat(source.getCallCount(), is(8));
+        JSONObject host = inventory.generateHost(hostId);
+        assertThat(host.getString("oo_environment"), is("env1"));
+        assertThat(host.getString("oo_platform"), is("plat2"));
+        assertThat(host.getString("oo_os_name"), is("CentOS"));
+        assertThat(host.getJSONObject("global").getString("global_var0"), is("value-0"));
+        assertThat(host.similar(inventory(null, "public_ip", new TestAssembly(3, 4, 2, 1)).generateHost(hostId)), is(true));
+    }
+
+    @Test
+    public void hostIsSearchedForWithoutLocation() throws Exception {
+        TestAssembly crawled = new TestAssembly(3, 4, 2, 1);
+        inventory(null, "public_ip", crawled);
+
+        TestAssembly source = new TestAssembly(3, 4, 2, 1);
+        Inventory inventory = hostInventory();
+        inventory.setFetchParallelism(2);
+        assertThat(inventory.initializeHost(new MemoizingSource(source), TestAssembly.publicIp(2), null), is(true));
+        assertThat(inventory.generateHost(TestAssembly.publicIp(2)).getString("oo_platform"), is("plat1"));
+        assertThat(source.getCallCount() < crawled.getCallCount() / 2, is(true));
+    }
+
+    @Test
+    public void movedHostIsSearchedFor() throws Exception {
+        Inventory inventory = hostInventory();
+        String hostId = TestAssembly.publicIp(13);
+        assertThat(inventory.initializeHost(new MemoizingSource(new TestAssembly(3, 4, 2, 1)), hostId,
+            new HostLocation("env0", "plat0")), is(true));
+        assertThat(inventory.generateHost(hostId).getString("oo_platform"), is("plat2"));
+    }
+
+    @Test
+    public void unknownHost() throws Exception {
+        Inventory inventory = hostInventory();
+        assertThat(inventory.initializeHost(new MemoizingSource(new TestAssembly(2, 2, 2, 0)), "192.0.2.1",
+            new HostLocation("gone", "plat0")), is(false));
+        assertThat(inventory.generateHost("192.0.2.1").length(), is(0));
+    }
+
+    /**
+     * An assembly where platforms can be changed by giving them another variable.
+     */
+    private static class ChangingAssembly
+        extends TestAssembly
+    {
+        private final Set<String> changed = new HashSet<>();
+
+        ChangingAssembly() {
+            super(2, 3, 4, 2);
+        }
+
+        void change(final String env, final String platform) {
+            changed.add(env + ":" + platform);
+        }
+
+        @Override
+        public List<CiResource> listPlatformVariables(final String env, final String platform)
+            throws OneOpsClientAPIException
+        {
+            List<CiResource> variables = super.listPlatformVariables(env, platform);
+            if (changed.contains(env + ":" + platform)) {
+                variables = new ArrayList<>(variables);
+                CiResource variable = new CiResource();
+                variable.setCiId(1L);
+                variable.setCiName("added_var");
+                variable.setCiClassName("manifest.Localvar");
+                variable.setCiAttributes(new CiAttributes());
+                variable.getCiAttributes().setAdditionalProperty("value", "added");
+                variables.add(variable);
+            }
+            return variables;
+        }
+    }
+
+    private static Inventory incrementalInventory(final ChangingAssembly assembly, final InventoryStats stats,
+                                                  final long maxAge)
+        throws Exception
+    {
+        Inventory inventory = new Inventory(TestAssembly.ORG, TestAssembly.ASSEMBLY, null, "token",
+            "https://oneops.example.com/", "public_ip");
+        inventory.setRefreshMaxAge(maxAge);
+        inventory.initialize(new StatsSource(assembly, stats));
+        return inventory;
+    }
+
+    @Test
+    public void refreshReusesUnchangedPlatforms() throws Exception {
+        ChangingAssembly assembly = new ChangingAssembly();
+        InventoryStats stats = new InventoryStats();
+        Inventory inventory = incrementalInventory(assembly, stats, 60000);
+        String crawled = writeList(inventory);
+        int instanceCalls = stats.getCallCount("listInstances");
+
+        inventory.refresh(new StatsSource(assembly, stats));
+        assertThat(stats.getCallCount("listInstances"), is(instanceCalls));
+        assertThat(stats.getCallCount("listPlatformVariables"), is(12));
+        assertThat(writeList(inventory), is(crawled));
+        assertThat(inventory.generateHost(TestAssembly.publicIp(5)).getString("oo_platform"), is("plat1"));
+    }
+
+    @Test
+    public void refreshFetchesChangedPlatforms() throws Exception {
+        ChangingAssembly assembly = new ChangingAssembly();
+        InventoryStats stats = new InventoryStats();
+        Inventory inventory = incrementalInventory(assembly, stats, 60000);
+        int instanceCalls = stats.getCallCount("listInstances");
+
+        assembly.change("env1", "plat2");
+        inventory.refresh(new StatsSource(assembly, stats));
+        // Only the changed platform's instances, out of six platforms
+        assertThat(stats.getCallCount("listInstances"), is(instanceCalls + instanceCalls / 6));
+
+        ChangingAssembly changed = new ChangingAssembly();
+        changed.change("env1", "plat2");
+        Inventory crawled = incrementalInventory(changed, new InventoryStats(), 0);
+        assertThat(writeList(inventory), is(writeList(crawled)));
+        assertThat(inventory.generateList().getJSONObject("env-env1-platform-plat2").getJSONObject("vars")
+            .getJSONObject("platform").getString("added_var"), is("added"));
+    }
+
+    @Test
+    public void refreshFetchesPlatformsPastMaxAge() throws Exception {
+        ChangingAssembly assembly = new ChangingAssembly();
+        InventoryStats stats = new InventoryStats();
+        Inventory inventory = incrementalInventory(assembly, stats, 1);
+        String crawled = writeList(inventory);
+        int instanceCalls = stats.getCallCount("listInstances");
+
+        Thread.sleep(5);
+        inventory.refresh(new StatsSource(assembly, stats));
+        assertThat(stats.getCallCount("listInstances"), is(instanceCalls * 2));
+        assertThat(writeList(inventory), is(crawled));
+    }
+}
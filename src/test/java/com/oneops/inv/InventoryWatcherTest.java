@@ -0,0 +1,110 @@
+package com.oneops.inv;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link InventoryWatcher}.
+ */
+public class InventoryWatcherTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private AtomicInteger crawls;
+
+    private AtomicInteger renders;
+
+    /**
+     * What the next crawl finds, {@code null} for a failed crawl.
+     */
+    private String inventory;
+
+    private File output;
+
+    private InventoryWatcher underTest;
+
+    @Before
+    public void setUp() throws Exception {
+        crawls = new AtomicInteger();
+        inventory = "{\"oo\": {\"hosts\": [\"10.0.0.1\"]}}";
+        output = new File(temporaryFolder.getRoot(), "inventory.json");
+        renders = new AtomicInteger();
+        underTest = new InventoryWatcher(() -> {
+            crawls.incrementAndGet();
+            if (inventory == null) {
+                throw new InventoryException("OneOps is down");
+            }
+            String found = inventory;
+            return list -> {
+                renders.incrementAndGet();
+                list.write(found);
+            };
+        }, output, 60);
+    }
+
+    private String written() throws Exception {
+        return new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void writesInventory() throws Exception {
+        assertThat(underTest.refresh(), is(true));
+        assertThat(written(), is(inventory + "\n"));
+        // No temporary file left behind
+        assertThat(temporaryFolder.getRoot().list(), arrayContaining("inventory.json"));
+    }
+
+    @Test
+    public void unchangedInventoryIsNotWritten() throws Exception {
+        underTest.refresh();
+        assertThat(output.setLastModified(1000000000000L), is(true));
+
+        assertThat(underTest.refresh(), is(false));
+        assertThat(crawls.get(), is(2));
+        // Rendered twice for the first write, then only hashed
+        assertThat(renders.get(), is(3));
+        assertThat(output.lastModified(), is(1000000000000L));
+    }
+
+    @Test
+    public void changedInventoryIsReplaced() throws Exception {
+        underTest.refresh();
+        inventory = "{\"oo\": {\"hosts\": [\"10.0.0.2\"]}}";
+        assertThat(underTest.refresh(), is(true));
+        assertThat(written(), is(inventory + "\n"));
+    }
+
+    @Test
+    public void fileFromEarlierRunIsKeptIfUnchanged() throws Exception {
+        Files.write(output.toPath(), (inventory + "\n").getBytes(StandardCharsets.UTF_8));
+        assertThat(underTest.refresh(), is(false));
+    }
+
+    @Test
+    public void failedCrawlLeavesFile() throws Exception {
+        underTest.refresh();
+        String before = written();
+        inventory = null;
+        try {
+            underTest.refresh();
+            fail();
+        }
+        catch (InventoryException e) {
+            // Expected
+        }
+        assertThat(written(), is(before));
+    }
+}
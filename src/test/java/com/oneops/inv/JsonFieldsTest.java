@@ -0,0 +1,101 @@
+package com.oneops.inv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * Tests for {@link JsonFields}.
+ */
+public class JsonFieldsTest
+{
+    private static Set<String> names(String... names) {
+        return new HashSet<String>(Arrays.asList(names));
+    }
+
+    @Test
+    public void readsOnlyTheNamedFields() {
+        Map<String, Object> fields = JsonFields.fields(
+            "{\"skip\": {\"nested\": [\"}\", {\"a\": 1}]}, \"owner\": \"ops@example.com\", \"count\": 3, \"flag\": true}",
+            names("owner", "count", "flag", "missing"));
+
+        assertThat(fields.size(), is(3));
+        assertThat(fields.get("owner"), is("ops@example.com"));
+        // Typed like JSONObject would have them, so hostvars keep their types
+        assertThat(fields.get("count"), is((Object) 3));
+        assertThat(fields.get("flag"), is((Object) true));
+        assertThat(fields.get("missing"), nullValue());
+    }
+
+    @Test
+    public void nullFieldsAreLeftOut() {
+        assertThat(JsonFields.fields("{\"owner\": null}", names("owner")).containsKey("owner"), is(false));
+    }
+
+    @Test
+    public void containersAreParsed() {
+        assertThat(JsonFields.fields("{\"tags\": [1, \"2\"]}", names("tags")).get("tags").toString(), is("[1,\"2\"]"));
+    }
+
+    @Test
+    public void unescapesStrings() {
+        Map<String, Object> fields = JsonFields.fields("{\"u\\u0072l\": \"a\\\"b\\\\c\\/d\\n\\u00e9\"}", names("url"));
+        assertThat(fields.get("url"), is("a\"b\\c/d\n\u00e9"));
+    }
+
+    @Test
+    public void namesComeInDocumentOrder() {
+        List<String> names = new ArrayList<String>();
+        JsonFields.names("{ \"b\": \"x\", \"a\": {\"c\": 1}, \"10.0.0.1\": [] }", names);
+        assertThat(names, is(Arrays.asList("b", "a", "10.0.0.1")));
+    }
+
+    @Test
+    public void namesMatchOrgJsonKeySetOrder() {
+        String entries = "{\"web-1.prod.example.com\": [\"10.0.0.1\"], \"10.0.0.1\": [], \"web-1.example.com\": [],"
+            + " \"web.prod.example.com\": [], \"w1.example.net\": []}";
+        Set<String> names = new HashSet<String>();
+        JsonFields.names(entries, names);
+        assertThat(new ArrayList<String>(names), is(new ArrayList<String>(new JSONObject(entries).keySet())));
+    }
+
+    @Test
+    public void readsStringArrays() {
+        assertThat(JsonFields.strings("[\"web\", \"web-a\"]"), is(Arrays.asList("web", "web-a")));
+        assertThat(JsonFields.strings(" [ ] ").isEmpty(), is(true));
+    }
+
+    @Test
+    public void emptyObjects() {
+        assertThat(JsonFields.fields("{}", names("owner")).isEmpty(), is(true));
+        List<String> names = new ArrayList<String>();
+        JsonFields.names(" { } ", names);
+        assertThat(names.isEmpty(), is(true));
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsTruncatedDocuments() {
+        JsonFields.fields("{\"owner\": \"ops", names("owner"));
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsTrailingText() {
+        JsonFields.strings("[\"web\"] x");
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsNonStringArrayElements() {
+        JsonFields.strings("[\"web\", 1]");
+    }
+}
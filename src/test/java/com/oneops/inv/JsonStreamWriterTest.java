@@ -0,0 +1,81 @@
+package com.oneops.inv;
+
+import java.io.StringWriter;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link JsonStreamWriter}.
+ */
+public class JsonStreamWriterTest
+{
+    private StringWriter out;
+
+    private JsonStreamWriter underTest;
+
+    @Before
+    public void setUp() throws Exception {
+        out = new StringWriter();
+        underTest = new JsonStreamWriter(out, 2);
+    }
+
+    @Test
+    public void singleKeyObjectsMatchOrgJson() throws Exception {
+        underTest.beginObject(1).key("_meta").beginObject(1).key("hostvars")
+            .value(new JSONObject().put("ram", "4G")).endObject().endObject();
+
+        JSONObject expected = new JSONObject().put("_meta", new JSONObject().put("hostvars", new JSONObject().put("ram", "4G")));
+        assertThat(out.toString(), is(expected.toString(2)));
+    }
+
+    @Test
+    public void multiKeyObjectsMatchOrgJson() throws Exception {
+        // A single key at each level beneath the streamed object keeps org.json's key order predictable
+        JSONObject group = new JSONObject().put("hosts", new JSONArray().put("10.0.0.1").put("10.0.0.2"));
+        underTest.beginObject(2).key("oo").value(group).key("env-prod").value(group).endObject();
+
+        String indentedGroup = group.toString(2).replace("\n", "\n  ");
+        assertThat(out.toString(), is("{\n  \"oo\": " + indentedGroup + ",\n  \"env-prod\": " + indentedGroup + "\n}"));
+        assertThat(new JSONObject(out.toString()).similar(new JSONObject().put("oo", group).put("env-prod", group)), is(true));
+    }
+
+    @Test
+    public void renderedValuesAreIndented() throws Exception {
+        JSONObject vars = new JSONObject().put("global", new JSONObject().put("a", "1").put("b", "2"));
+        underTest.beginObject(2).key("oo").renderedValue(vars.toString(2)).key("env-prod").value(vars).endObject();
+
+        StringWriter expected = new StringWriter();
+        new JsonStreamWriter(expected, 2).beginObject(2).key("oo").value(vars).key("env-prod").value(vars).endObject();
+        assertThat(out.toString(), is(expected.toString()));
+    }
+
+    @Test
+    public void emptyObject() throws Exception {
+        underTest.beginObject(0).endObject();
+        assertThat(out.toString(), is("{}"));
+    }
+
+    @Test
+    public void sizeIsEnforced() throws Exception {
+        underTest.beginObject(1).key("a").value(new JSONObject());
+        try {
+            underTest.key("b");
+            fail();
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void missingKeysAreReported() throws Exception {
+        underTest.beginObject(2).key("a").value(new JSONObject()).endObject();
+    }
+}
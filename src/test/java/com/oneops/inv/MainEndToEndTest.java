@@ -0,0 +1,258 @@
+package com.oneops.inv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.oneops.inv.Main.ExitNotification;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * End-to-end tests of {@link Main}, talking HTTP to a {@link OneOpsStubServer}.
+ */
+public class MainEndToEndTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private OneOpsStubServer server;
+
+    private final Map<String, String> environment = new HashMap<>();
+
+    /**
+     * What the last run printed to stderr.
+     */
+    private String errors;
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private void serve(final TestAssembly assembly) throws Exception {
+        server = new OneOpsStubServer(assembly, TestAssembly.ORG, TestAssembly.ASSEMBLY);
+        environment.put(Main.ENV_OO_API_TOKEN, "token");
+        environment.put(Main.ENV_OO_ORG, TestAssembly.ORG);
+        environment.put(Main.ENV_OO_ASSEMBLY, TestAssembly.ASSEMBLY);
+        environment.put(Main.ENV_OO_ENDPOINT, server.getEndpoint());
+    }
+
+    /**
+     * Run the tool as the command line would, and return what it printed.
+     */
+    private JSONObject run(final String... args) throws Exception {
+        return new JSONObject(runForOutput(args));
+    }
+
+    private String runForOutput(final String... args) throws Exception {
+        Main main = new Main()
+        {
+            @Nullable
+            @Override
+            protected String readEnvironment(final String name) {
+                return environment.get(name);
+            }
+        };
+        main.configureFromEnvironment();
+        main.configureFromCommandLine(args);
+
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream errorOutput = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true, "UTF-8"));
+        System.setErr(new PrintStream(errorOutput, true, "UTF-8"));
+        try {
+            main.run();
+        }
+        finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+            errors = new String(errorOutput.toByteArray(), StandardCharsets.UTF_8);
+        }
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static JSONObject crawl(final TestAssembly assembly) throws Exception {
+        Inventory inventory = new Inventory(TestAssembly.ORG, TestAssembly.ASSEMBLY, null, "token",
+            "https://oneops.example.com/", Main.DEFAULT_HOST_METHOD);
+        inventory.initialize(assembly);
+        // Round-trip, ids are Longs in memory but parse back as Integers
+        return new JSONObject(inventory.generateList().toString());
+    }
+
+    @Test
+    public void listOverHttp() throws Exception {
+        serve(new TestAssembly(2, 3, 4, 2));
+        JSONObject list = run("--list");
+        assertThat(list.similar(crawl(new TestAssembly(2, 3, 4, 2))), is(true));
+    }
+
+    @Test
+    public void hostOverHttp() throws Exception {
+        serve(new TestAssembly(2, 3, 4, 2));
+        JSONObject host = run("--host", TestAssembly.publicIp(17));
+        assertThat(host.getString("oo_environment"), is("env1"));
+        assertThat(host.getString("oo_platform"), is("plat1"));
+    }
+
+    @Test
+    public void crawlOverlapsApiLatency() throws Exception {
+        serve(new TestAssembly(2, 4, 3, 1));
+        server.setLatencyMillis(50);
+        environment.put(Main.ENV_OO_FETCH_PARALLELISM, "8");
+
+        long start = System.nanoTime();
+        JSONObject list = run("--list");
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertThat(list.getJSONObject("oo").getJSONArray("hosts").length(), is(24));
+        assertThat(server.getMaxConcurrentRequests(), greaterThan(1));
+        // A sequential crawl takes at least the sum of all the latencies
+        assertThat(elapsedMillis, lessThan(server.getRequestCount() * 50L / 2));
+    }
+
+    @Test
+    public void diffSinceLastRun() throws Exception {
+        serve(new TestAssembly(1, 2, 3, 1));
+        File snapshot = new File(temporaryFolder.getRoot(), "inventory.snapshot");
+
+        // Against nothing, every host and group is new: oo, env0, 2 platforms and 2 platform computes
+        String[] lines = runForOutput("--diff", snapshot.getPath()).split("\n");
+        assertThat(lines.length, is(6 + 6));
+        assertThat(new JSONObject(lines[0]).getString("op"), is("add"));
+        assertThat(snapshot.isFile(), is(true));
+
+        assertThat(runForOutput("--diff", snapshot.getPath()), is(""));
+
+        server.close();
+        serve(new TestAssembly(1, 2, 4, 1));
+        JSONObject moved = new JSONObject(runForOutput("--diff", snapshot.getPath()).split("\n")[0]);
+        assertThat(moved.getString("op"), is("change"));
+        assertThat(moved.getJSONObject("set").getString("oo_platform"), is("plat0"));
+    }
+
+    @Test
+    public void targetsOverHttp() throws Exception {
+        serve(new TestAssembly(2, 3, 4, 2));
+        environment.remove(Main.ENV_OO_ORG);
+        environment.remove(Main.ENV_OO_ASSEMBLY);
+        environment.put(Main.ENV_OO_TARGETS, TestAssembly.ORG + "/" + TestAssembly.ASSEMBLY + "/env0, "
+            + TestAssembly.ORG + "/" + TestAssembly.ASSEMBLY + "/env1");
+        JSONObject list = run("--list");
+
+        JSONObject crawled = crawl(new TestAssembly(2, 3, 4, 2));
+        assertThat(list.getJSONObject("_meta").similar(crawled.getJSONObject("_meta")), is(true));
+        assertThat(list.getJSONObject("devtools-website").getJSONArray("hosts").length(), is(24));
+        // The same groups as crawling the whole assembly, in the target's namespace
+        assertThat(list.getJSONObject("devtools-website-env-env1-platform-plat2").similar(
+            crawled.getJSONObject("env-env1-platform-plat2")), is(true));
+    }
+
+    @Test
+    public void statsArePrintedToStderr() throws Exception {
+        serve(new TestAssembly(2, 3, 4, 2));
+        run("--list", "--stats");
+
+        JSONObject stats = new JSONObject(errors.trim());
+        JSONObject instances = stats.getJSONObject("calls").getJSONObject("listInstances");
+        assertThat(instances.getInt("count"), greaterThan(0));
+        assertThat(instances.getDouble("max_ms") >= instances.getDouble("p99_ms"), is(true));
+        assertThat(stats.getJSONObject("phases").has(InventoryStats.PHASE_GATHER), is(true));
+        assertThat(stats.getJSONObject("phases").has(InventoryStats.PHASE_SERIALIZATION), is(true));
+        assertThat(stats.getJSONArray("slowest_platforms").length(), is(6));
+    }
+
+    @Test
+    public void siblingFailuresAreTolerated() throws Exception {
+        serve(new TestAssembly(1, 2, 3, 1));
+        server.setErrorStatus(404);
+        server.setErrorPaths(Pattern.compile("/components/hostname/instances$"));
+
+        JSONObject hostvars = run("--list").getJSONObject("_meta").getJSONObject("hostvars");
+        assertThat(hostvars.length(), is(6));
+        JSONObject host = hostvars.getJSONObject(TestAssembly.publicIp(0));
+        assertThat(host.has("oo_hostnames"), is(false));
+        assertThat(host.getString("oo_os_name"), is("CentOS"));
+    }
+
+    @Test
+    public void replayNeedsNoServer() throws Exception {
+        File recording = temporaryFolder.newFile("website.json.gz");
+        serve(new TestAssembly(2, 3, 4, 2));
+        environment.put(Main.ENV_OO_RECORD, recording.getPath());
+        JSONObject live = run("--list");
+        server.close();
+        server = null;
+
+        environment.remove(Main.ENV_OO_RECORD);
+        environment.remove(Main.ENV_OO_API_TOKEN);
+        environment.remove(Main.ENV_OO_ENDPOINT);
+        environment.put(Main.ENV_OO_REPLAY, recording.getPath());
+        // Nothing is listening any more, everything comes from the recording
+        assertThat(run("--list").similar(live), is(true));
+    }
+
+    @Test
+    public void siblingsUnavailableFailTheRun() throws Exception {
+        serve(new TestAssembly(1, 2, 3, 1));
+        environment.put(Main.ENV_OO_API_RETRIES, "1");
+        server.setErrorPaths(Pattern.compile("/components/hostname/instances$"));
+
+        try {
+            run("--list");
+            fail();
+        }
+        catch (ExitNotification n) {
+            assertThat(n.code, is(1));
+        }
+        // Rather than an inventory quietly missing hostnames
+        assertThat(errors, containsString("gave up after 2 attempts"));
+    }
+
+    @Test
+    public void throttledCallsAreRetried() throws Exception {
+        serve(new TestAssembly(2, 3, 4, 2));
+        server.setErrorStatus(429);
+        server.setErrorRate(0.3);
+        environment.put(Main.ENV_OO_API_RETRIES, "20");
+
+        JSONObject list = run("--list");
+        assertThat(list.similar(crawl(new TestAssembly(2, 3, 4, 2))), is(true));
+    }
+
+    @Test
+    public void randomFailuresAreInjected() throws Exception {
+        serve(new TestAssembly(1, 2, 3, 1));
+        server.setErrorRate(1.0);
+
+        // Nothing can be fetched, not even the clouds - the crawl retries, then gives up instead of listing nothing
+        try {
+            run("--list");
+            fail();
+        }
+        catch (ExitNotification n) {
+            assertThat(n.code, is(1));
+        }
+        assertThat(server.getRequestCount(), is(1 + Main.DEFAULT_API_RETRIES));
+    }
+}
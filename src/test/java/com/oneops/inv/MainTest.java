@@ -1,5 +1,7 @@
 package com.oneops.inv;
 
+import java.io.StringReader;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -11,6 +13,7 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
 import com.oneops.inv.Main.ExitNotification;
+import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -70,6 +73,68 @@ public class MainTest
         assertThat(underTest.getHost(), nullValue());
     }
 
+    @Test
+    public void refreshCacheOption() throws Exception {
+        underTest.configureFromCommandLine(new String[] { "--list", "--refresh-cache" });
+        assertThat(underTest.isRefreshCache(), is(true));
+    }
+
+    @Test
+    public void cacheIsUsedByDefault() throws Exception {
+        underTest.configureFromCommandLine(new String[] { "--list" });
+        assertThat(underTest.isRefreshCache(), is(false));
+    }
+
+    @Test
+    public void statsOption() throws Exception {
+        underTest.configureFromCommandLine(new String[] { "--list", "--stats" });
+        assertThat(underTest.isStats(), is(true));
+    }
+
+    @Test
+    public void watchOption() throws Exception {
+        underTest.configureFromCommandLine(new String[] { "--watch", "120", "--output", "inventory.json" });
+        assertThat(underTest.getWatchInterval(), is(120L));
+        assertThat(underTest.getOutputFile(), is("inventory.json"));
+        assertThat(underTest.getHost(), nullValue());
+    }
+
+    @Test
+    public void watchNeedsOutput() throws Exception {
+        try {
+            underTest.configureFromCommandLine(new String[] { "--watch", "120" });
+            fail();
+        }
+        catch (ExitNotification n) {
+            assertExitCode(n, 1);
+        }
+    }
+
+    @Test
+    public void watchIntervalInvalid() throws Exception {
+        try {
+            underTest.configureFromCommandLine(new String[] { "--watch", "0", "--output", "inventory.json" });
+            fail();
+        }
+        catch (ExitNotification n) {
+            assertExitCode(n, 1);
+        }
+    }
+
+    @Test
+    public void diffOption() throws Exception {
+        underTest.configureFromCommandLine(new String[] { "--diff", "inventory.snapshot" });
+        assertThat(underTest.getDiffFile(), is("inventory.snapshot"));
+        assertThat(underTest.getHost(), nullValue());
+    }
+
+    @Test
+    public void daemonOption() throws Exception {
+        underTest.configureFromCommandLine(new String[] { "--daemon" });
+        assertThat(underTest.isDaemon(), is(true));
+        assertThat(underTest.getHost(), nullValue());
+    }
+
     @Test
     public void missingEnvironment() throws Exception {
         try {
@@ -127,6 +192,252 @@ public class MainTest
         underTest.configureFromEnvironment();
     }
 
+    @Test
+    public void ensureFetchParallelism() throws Exception {
+        environment.put(Main.ENV_OO_FETCH_PARALLELISM, "16");
+        underTest.configureFromEnvironment();
+        assertThat(underTest.getFetchParallelism(), is(16));
+    }
+
+    @Test
+    public void ensureFetchParallelismDefault() throws Exception {
+        underTest.configureFromEnvironment();
+        assertThat(underTest.getFetchParallelism(), is(Inventory.DEFAULT_FETCH_PARALLELISM));
+    }
+
+    @Test
+    public void ensureFetchParallelismInvalid() throws Exception {
+        try {
+            environment.put(Main.ENV_OO_FETCH_PARALLELISM, "0");
+            underTest.configureFromEnvironment();
+            fail();
+        }
+        catch (ExitNotification n) {
+            assertExitCode(n, 1);
+        }
+    }
+
+    @Test
+    public void ensureFetchParallelismFitsAnInt() throws Exception {
+        try {
+            environment.put(Main.ENV_OO_FETCH_PARALLELISM, "2147483648");
+            underTest.configureFromEnvironment();
+            fail();
+        }
+        catch (ExitNotification n) {
+            assertExitCode(n, 1);
+        }
+    }
+
+    @Test
+    public void ensureRenderParallelismFitsAPool() throws Exception {
+        environment.put(Main.ENV_OO_RENDER_PARALLELISM, String.valueOf(RenderEngine.MAX_PARALLELISM));
+        underTest.configureFromEnvironment();
+        assertThat(underTest.getRenderParallelism(), is(RenderEngine.MAX_PARALLELISM));
+
+        try {
+            environment.put(Main.ENV_OO_RENDER_PARALLELISM, String.valueOf(RenderEngine.MAX_PARALLELISM + 1));
+            underTest.configureFromEnvironment();
+            fail();
+        }
+        catch (ExitNotification n) {
+            assertExitCode(n, 1);
+        }
+    }
+
+    @Test
+    public void ensureApiRateAndRetries() throws Exception {
+        underTest.configureFromEnvironment();
+        assertThat(underTest.getApiRate(), is(Main.DEFAULT_API_RATE));
+        assertThat(underTest.getApiRetries(), is(Main.DEFAULT_API_RETRIES));
+
+        environment.put(Main.ENV_OO_API_RATE, "50");
+        environment.put(Main.ENV_OO_API_RETRIES, "5");
+        underTest.configureFromEnvironment();
+        assertThat(underTest.getApiRate(), is(50L));
+        assertThat(underTest.getApiRetries(), is(5));
+    }
+
+    @Test
+    public void ensureApiRetriesInvalid() throws Exception {
+        try {
+            environment.put(Main.ENV_OO_API_RETRIES, "-1");
+            underTest.configureFromEnvironment();
+            fail();
+        }
+        catch (ExitNotification n) {
+            assertExitCode(n, 1);
+        }
+    }
+
+    @Test
+    public void ensureRenderParallelism() throws Exception {
+        underTest.configureFromEnvironment();
+        assertThat(underTest.getRenderParallelism(), is(Inventory.DEFAULT_RENDER_PARALLELISM));
+
+        environment.put(Main.ENV_OO_RENDER_PARALLELISM, "1");
+        underTest.configureFromEnvironment();
+        assertThat(underTest.getRenderParallelism(), is(1));
+    }
+
+    @Test
+    public void ensureGroupVarsOnly() throws Exception {
+        underTest.configureFromEnvironment();
+        assertThat(underTest.isGroupVarsOnly(), is(false));
+
+        environment.put(Main.ENV_OO_GROUP_VARS_ONLY, "true");
+        underTest.configureFromEnvironment();
+        assertThat(underTest.isGroupVarsOnly(), is(true));
+    }
+
+    @Test
+    public void ensureGroupVarsOnlyInvalid() throws Exception {
+        try {
+            environment.put(Main.ENV_OO_GROUP_VARS_ONLY, "yes");
+            underTest.configureFromEnvironment();
+            fail();
+        }
+        catch (ExitNotification n) {
+            assertExitCode(n, 1);
+        }
+    }
+
+    @Test
+    public void replayNeedsNoTokenOrEndpoint() throws Exception {
+        environment.remove(Main.ENV_OO_API_TOKEN);
+        environment.remove(Main.ENV_OO_ENDPOINT);
+        environment.put(Main.ENV_OO_REPLAY, "assembly.json.gz");
+        underTest.configureFromEnvironment();
+        assertThat(underTest.getReplayFile(), is("assembly.json.gz"));
+        assertThat(underTest.getRecordFile(), nullValue());
+    }
+
+    @Test
+    public void ensureRecordAndReplayExclusive() throws Exception {
+        try {
+            environment.put(Main.ENV_OO_RECORD, "assembly.json.gz");
+            environment.put(Main.ENV_OO_REPLAY, "assembly.json.gz");
+            underTest.configureFromEnvironment();
+            fail();
+        }
+        catch (ExitNotification n) {
+            assertExitCode(n, 1);
+        }
+    }
+
+    @Test
+    public void targetsReplaceOrgAndAssembly() throws Exception {
+        environment.remove(Main.ENV_OO_ORG);
+        environment.remove(Main.ENV_OO_ASSEMBLY);
+        environment.remove(Main.ENV_OO_ENV);
+        environment.put(Main.ENV_OO_TARGETS, "devtools/website,devtools/store/prod");
+        underTest.configureFromEnvironment();
+        assertThat(underTest.getTargets(), is(Arrays.asList(new Target("devtools", "website", null),
+            new Target("devtools", "store", "prod"))));
+    }
+
+    @Test
+    public void ensureTargetsInvalid() throws Exception {
+        try {
+            environment.put(Main.ENV_OO_TARGETS, "devtools");
+            underTest.configureFromEnvironment();
+            fail();
+        }
+        catch (ExitNotification n) {
+            assertExitCode(n, 1);
+        }
+    }
+
+    @Test
+    public void ensureTargetsCantBeRecorded() throws Exception {
+        try {
+            environment.put(Main.ENV_OO_TARGETS, "devtools/website");
+            environment.put(Main.ENV_OO_RECORD, "assembly.json.gz");
+            underTest.configureFromEnvironment();
+            fail();
+        }
+        catch (ExitNotification n) {
+            assertExitCode(n, 1);
+        }
+    }
+
+    @Test
+    public void ensureCacheDisabledByDefault() throws Exception {
+        underTest.configureFromEnvironment();
+        assertThat(underTest.getCacheTtl(), is(0L));
+    }
+
+    @Test
+    public void ensureCacheSettings() throws Exception {
+        environment.put(Main.ENV_OO_CACHE_TTL, "300");
+        environment.put(Main.ENV_OO_CACHE_DIR, "/tmp/inventory");
+        underTest.configureFromEnvironment();
+        assertThat(underTest.getCacheTtl(), is(300L));
+        assertThat(underTest.getCacheDir(), is("/tmp/inventory"));
+    }
+
+    @Test
+    public void ensureCacheGrace() throws Exception {
+        environment.put(Main.ENV_OO_CACHE_GRACE, "3600");
+        underTest.configureFromEnvironment();
+        assertThat(underTest.getCacheGrace(), is(3600L));
+    }
+
+    @Test
+    public void ensureCrawlWait() throws Exception {
+        environment.put(Main.ENV_OO_CRAWL_WAIT, "30");
+        underTest.configureFromEnvironment();
+        assertThat(underTest.getCrawlWait(), is(30L));
+    }
+
+    @Test
+    public void ensureDaemonSettings() throws Exception {
+        environment.put(Main.ENV_OO_DAEMON_PORT, "9000");
+        environment.put(Main.ENV_OO_DAEMON_REFRESH, "60");
+        underTest.configureFromEnvironment();
+        assertThat(underTest.getDaemonPort(), is(9000));
+        assertThat(underTest.getDaemonRefresh(), is(60L));
+        assertThat(underTest.getIncrementalMaxAge(), is(0L));
+    }
+
+    @Test
+    public void ensureIncrementalMaxAge() throws Exception {
+        environment.put(Main.ENV_OO_INCREMENTAL_MAX_AGE, "3600");
+        underTest.configureFromEnvironment();
+        assertThat(underTest.getIncrementalMaxAge(), is(3600L));
+    }
+
+    @Test
+    public void ensureDaemonPortInvalid() throws Exception {
+        try {
+            environment.put(Main.ENV_OO_DAEMON_PORT, "70000");
+            underTest.configureFromEnvironment();
+            fail();
+        }
+        catch (ExitNotification n) {
+            assertExitCode(n, 1);
+        }
+    }
+
+    @Test
+    public void ensureCacheTtlInvalid() throws Exception {
+        try {
+            environment.put(Main.ENV_OO_CACHE_TTL, "5m");
+            underTest.configureFromEnvironment();
+            fail();
+        }
+        catch (ExitNotification n) {
+            assertExitCode(n, 1);
+        }
+    }
+
+    @Test
+    public void selectHostFromList() throws Exception {
+        String list = "{\"_meta\": {\"hostvars\": {\"10.0.0.1\": {\"oo_ram\": \"4G\"}}}, \"oo\": {\"hosts\": [\"10.0.0.1\"]}}";
+        assertThat(new JSONObject(Main.selectHost(new StringReader(list), "10.0.0.1")).getString("oo_ram"), is("4G"));
+        assertThat(Main.selectHost(new StringReader(list), "10.0.0.2"), is("{}"));
+    }
+
     @Test
     public void ensureNonConfiguredFails() throws Exception {
         try {
@@ -0,0 +1,167 @@
+package com.oneops.inv;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.oneops.api.exception.OneOpsClientAPIException;
+import com.oneops.api.resource.model.CiResource;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link MemoizingSource}.
+ */
+public class MemoizingSourceTest
+{
+    private AtomicInteger instanceCalls;
+
+    private CountDownLatch release;
+
+    private volatile boolean failing;
+
+    private MemoizingSource underTest;
+
+    @Before
+    public void setUp() throws Exception {
+        instanceCalls = new AtomicInteger();
+        release = new CountDownLatch(0);
+        underTest = new MemoizingSource(new EmptySource()
+        {
+            @Override
+            public List<CiResource> listInstances(final String env, final String platform, final String component)
+                throws OneOpsClientAPIException
+            {
+                instanceCalls.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                if (failing) {
+                    throw new OneOpsClientAPIException("boom");
+                }
+                return new ArrayList<>();
+            }
+        });
+    }
+
+    @Test
+    public void repeatedRequestIsFetchedOnce() throws Exception {
+        List<CiResource> first = underTest.listInstances("prod", "web", "compute");
+        List<CiResource> second = underTest.listInstances("prod", "web", "compute");
+        assertThat(second, sameInstance(first));
+        assertThat(instanceCalls.get(), is(1));
+    }
+
+    @Test
+    public void keyIncludesEnvironmentPlatformAndComponent() throws Exception {
+        underTest.listInstances("prod", "web", "compute");
+        underTest.listInstances("qa", "web", "compute");
+        underTest.listInstances("prod", "db", "compute");
+        underTest.listInstances("prod", "web", "hostname");
+        assertThat(instanceCalls.get(), is(4));
+    }
+
+    @Test
+    public void concurrentRequestsShareOneCall() throws Exception {
+        release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<CiResource>>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> underTest.listInstances("prod", "web", "compute")));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<List<CiResource>> future : futures) {
+                assertThat(future.get(), sameInstance(futures.get(0).get()));
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        assertThat(instanceCalls.get(), is(1));
+    }
+
+    @Test
+    public void failuresAreRetried() throws Exception {
+        failing = true;
+        try {
+            underTest.listInstances("prod", "web", "compute");
+            fail();
+        }
+        catch (OneOpsClientAPIException e) {
+            // expected
+        }
+
+        failing = false;
+        underTest.listInstances("prod", "web", "compute");
+        assertThat(instanceCalls.get(), is(2));
+    }
+
+    /**
+     * Source of an empty assembly.
+     */
+    static class EmptySource
+        implements OneOpsSource
+    {
+        @Override
+        public List<CiResource> listClouds() throws OneOpsClientAPIException {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<CiResource> listEnvironments() throws OneOpsClientAPIException {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public CiResource getEnvironment(final String env) throws OneOpsClientAPIException {
+            throw new OneOpsClientAPIException("No environment " + env);
+        }
+
+        @Override
+        public List<CiResource> listPlatforms(final String env) throws OneOpsClientAPIException {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<CiResource> listGlobalVariables(final String env) throws OneOpsClientAPIException {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<CiResource> listPlatformComponents(final String env, final String platform)
+            throws OneOpsClientAPIException
+        {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<CiResource> listPlatformVariables(final String env, final String platform)
+            throws OneOpsClientAPIException
+        {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<CiResource> listInstances(final String env, final String platform, final String component)
+            throws OneOpsClientAPIException
+        {
+            return Collections.emptyList();
+        }
+    }
+}
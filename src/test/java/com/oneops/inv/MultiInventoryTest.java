@@ -0,0 +1,102 @@
+package com.oneops.inv;
+
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * Tests for {@link MultiInventory}.
+ */
+public class MultiInventoryTest
+{
+    private static Inventory inventory(final Target target) {
+        return new Inventory(target.getOrg(), target.getAssembly(), target.getEnv(), "token",
+            "https://oneops.example.com/", Main.DEFAULT_HOST_METHOD);
+    }
+
+    private static MultiInventory crawl(final Map<Target, OneOpsSource> sources) throws Exception {
+        Map<Target, Inventory> inventories = new LinkedHashMap<>();
+        for (Target target : sources.keySet()) {
+            inventories.put(target, inventory(target));
+        }
+        MultiInventory inventory = new MultiInventory(inventories, 4);
+        inventory.initialize(sources);
+        return inventory;
+    }
+
+    @Test
+    public void environmentsOfOneAssembly() throws Exception {
+        TestAssembly assembly = new TestAssembly(2, 2, 2, 1);
+        InventoryStats stats = new InventoryStats();
+        Map<Target, OneOpsSource> sources = new LinkedHashMap<>();
+        sources.put(new Target(TestAssembly.ORG, TestAssembly.ASSEMBLY, "env0"), new StatsSource(assembly, stats));
+        sources.put(new Target(TestAssembly.ORG, TestAssembly.ASSEMBLY, "env1"), new StatsSource(assembly, stats));
+        MultiInventory inventory = crawl(sources);
+
+        JSONObject list = inventory.generateList();
+        // _meta, oo, the assembly, and an environment, 2 platforms and 2 platform computes per target
+        assertThat(list.length(), is(3 + 2 * 5));
+        assertThat(list.getJSONObject("_meta").getJSONObject("hostvars").length(), is(8));
+        assertThat(list.getJSONObject("oo").getJSONArray("hosts").length(), is(8));
+        assertThat(list.getJSONObject("devtools-website").getJSONArray("hosts").length(), is(8));
+        assertThat(list.getJSONObject("devtools-website-env-env0").getJSONArray("hosts").length(), is(4));
+        assertThat(list.getJSONObject("devtools-website-env-env1-platform-plat0").getJSONArray("hosts").length(), is(2));
+        assertThat(list.getJSONArray("devtools-website-env-env1-platform-plat1-compute").length(), is(2));
+
+        // Clouds are the org's, listed once
+        assertThat(stats.getCallCount("listClouds"), is(1));
+
+        StringWriter written = new StringWriter();
+        inventory.writeList(written);
+        assertThat(new JSONObject(written.toString()).similar(list), is(true));
+    }
+
+    @Test
+    public void hostInSeveralTargetsIsListedOnce() throws Exception {
+        // Both assemblies number their hosts from the same address
+        Map<Target, OneOpsSource> sources = new LinkedHashMap<>();
+        sources.put(new Target("a", "website", null), new TestAssembly(1, 1, 2, 0));
+        sources.put(new Target("b", "website", null), new TestAssembly(1, 1, 3, 0));
+        JSONObject list = crawl(sources).generateList();
+
+        assertThat(list.getJSONObject("_meta").getJSONObject("hostvars").length(), is(3));
+        assertThat(list.getJSONObject("oo").getJSONArray("hosts").length(), is(3));
+        assertThat(list.getJSONObject("a-website").getJSONArray("hosts").length(), is(2));
+        assertThat(list.getJSONObject("b-website").getJSONArray("hosts").length(), is(3));
+        assertThat(list.getJSONObject("b-website-env-env0-platform-plat0").getJSONArray("hosts").length(), is(3));
+    }
+
+    @Test
+    public void groupsOfTwoAssembliesCollide() throws Exception {
+        // a/b lists its environment as a-b-env-env0, the group of all of a/b-env-env0
+        Map<Target, OneOpsSource> sources = new LinkedHashMap<>();
+        sources.put(new Target("a", "b", null), new TestAssembly(1, 1, 1, 0));
+        sources.put(new Target("a", "b-env-env0", null), new TestAssembly(1, 1, 1, 0));
+        try {
+            crawl(sources).generateList();
+            fail();
+        }
+        catch (InventoryException e) {
+            assertThat(e.getMessage(), is("Targets a/b and a/b-env-env0 would both be in group a-b-env-env0"));
+        }
+    }
+
+    @Test
+    public void hostFromAnyTarget() throws Exception {
+        TestAssembly assembly = new TestAssembly(2, 1, 2, 1);
+        Map<Target, OneOpsSource> sources = new LinkedHashMap<>();
+        sources.put(new Target(TestAssembly.ORG, TestAssembly.ASSEMBLY, "env0"), assembly);
+        sources.put(new Target(TestAssembly.ORG, TestAssembly.ASSEMBLY, "env1"), assembly);
+        MultiInventory inventory = crawl(sources);
+
+        assertThat(inventory.generateHost(TestAssembly.publicIp(3)).getString("oo_environment"), is("env1"));
+        assertThat(inventory.generateHost("192.0.2.1").length(), is(0));
+    }
+}
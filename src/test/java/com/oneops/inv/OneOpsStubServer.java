@@ -0,0 +1,273 @@
+package com.oneops.inv;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+import com.oneops.api.exception.OneOpsClientAPIException;
+import com.oneops.api.resource.model.CiResource;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONObject;
+
+/**
+ * Embedded HTTP server that answers the OneOps REST calls the oneops-client {@code Cloud}, {@code Transition}
+ * and {@code Operation} classes make, from any {@link OneOpsSource} - usually a {@link TestAssembly}.  Lets the
+ * whole tool, HTTP client included, run and be timed without a OneOps.  The crawl never reads the design, so
+ * there are no {@code Design} endpoints.
+ *
+ * Every request can be slowed down by a fixed latency, and failed with a 500, or any other status, either at
+ * random or when its path matches a pattern.
+ *
+ * Paths are relative to the endpoint and organization:
+ * <pre>
+ *   clouds
+ *   assemblies/{assembly}
+ *   assemblies/{assembly}/transition/environments[/{env}[/variables|/platforms[/{platform}/components|/variables]]]
+ *   assemblies/{assembly}/operations/environments/{env}/platforms/{platform}/components/{component}/instances
+ * </pre>
+ */
+public class OneOpsStubServer
+    implements AutoCloseable
+{
+    private final OneOpsSource source;
+
+    private final String org;
+
+    private final String assembly;
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final Random random = new Random(1);
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private volatile long latencyMillis;
+
+    private volatile double errorRate;
+
+    private volatile int errorStatus = 500;
+
+    @Nullable
+    private volatile Pattern errorPaths;
+
+    /**
+     * Start serving on an ephemeral port of the loopback interface.
+     */
+    public OneOpsStubServer(final OneOpsSource source, final String org, final String assembly) throws IOException {
+        this.source = source;
+        this.org = org;
+        this.assembly = assembly;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        // A thread per request, so latency doesn't queue requests up behind each other
+        this.executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * Endpoint to configure the client with, ending in a slash like OO_ENDPOINT has to.
+     */
+    public String getEndpoint() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * Delay every response by this long.
+     */
+    public void setLatencyMillis(final long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Fail this fraction of requests, picked by a seeded random so runs are repeatable.
+     */
+    public void setErrorRate(final double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Status injected failures are answered with, 500 unless set.
+     */
+    public void setErrorStatus(final int errorStatus) {
+        this.errorStatus = errorStatus;
+    }
+
+    /**
+     * Fail every request whose path, relative to the organization, matches.  {@code null} to stop.
+     */
+    public void setErrorPaths(@Nullable final Pattern errorPaths) {
+        this.errorPaths = errorPaths;
+    }
+
+    /**
+     * Number of requests received so far.
+     */
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Most requests that were being answered at the same time.
+     */
+    public int getMaxConcurrentRequests() {
+        return maxInFlight.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        try {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            respond(exchange);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(exchange, 503, error("Server stopping"));
+        }
+        finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private void respond(final HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            send(exchange, 405, error("Only GET is supported"));
+            return;
+        }
+
+        String prefix = "/" + org + "/";
+        String path = exchange.getRequestURI().getPath().replaceAll("/+$", "");
+        if (!path.startsWith(prefix)) {
+            send(exchange, 404, error("No organization " + path));
+            return;
+        }
+        path = path.substring(prefix.length());
+
+        Pattern failing = errorPaths;
+        boolean fail;
+        synchronized (random) {
+            fail = random.nextDouble() < errorRate;
+        }
+        if (fail || (failing != null && failing.matcher(path).find())) {
+            send(exchange, errorStatus, error("Injected failure"));
+            return;
+        }
+
+        try {
+            Object body = route(path.split("/"));
+            if (body == null) {
+                send(exchange, 404, error("No such resource " + path));
+            }
+            else {
+                send(exchange, 200, body.toString());
+            }
+        }
+        catch (OneOpsClientAPIException e) {
+            send(exchange, 404, error(e.getMessage()));
+        }
+    }
+
+    @Nullable
+    private Object route(final String[] path) throws OneOpsClientAPIException {
+        if (path.length == 1 && path[0].equals("clouds")) {
+            return CiResourceJson.toJson(source.listClouds());
+        }
+        if (path.length < 2 || !path[0].equals("assemblies") || !path[1].equals(assembly)) {
+            return null;
+        }
+        if (path.length == 2) {
+            return CiResourceJson.toJson(assemblyCi());
+        }
+        if (path.length < 4 || !path[3].equals("environments")) {
+            return null;
+        }
+
+        if (path[2].equals("transition")) {
+            switch (path.length) {
+                case 4:
+                    return CiResourceJson.toJson(source.listEnvironments());
+                case 5:
+                    return CiResourceJson.toJson(source.getEnvironment(path[4]));
+                case 6:
+                    if (path[5].equals("variables")) {
+                        return CiResourceJson.toJson(source.listGlobalVariables(path[4]));
+                    }
+                    if (path[5].equals("platforms")) {
+                        return CiResourceJson.toJson(source.listPlatforms(path[4]));
+                    }
+                    return null;
+                case 8:
+                    if (!path[5].equals("platforms")) {
+                        return null;
+                    }
+                    if (path[7].equals("components")) {
+                        return CiResourceJson.toJson(source.listPlatformComponents(path[4], path[6]));
+                    }
+                    if (path[7].equals("variables")) {
+                        return CiResourceJson.toJson(source.listPlatformVariables(path[4], path[6]));
+                    }
+                    return null;
+                default:
+                    return null;
+            }
+        }
+
+        if (path[2].equals("operations") && path.length == 10 && path[5].equals("platforms")
+            && path[7].equals("components") && path[9].equals("instances"))
+        {
+            return CiResourceJson.toJson(source.listInstances(path[4], path[6], path[8]));
+        }
+        return null;
+    }
+
+    private CiResource assemblyCi() {
+        CiResource ci = new CiResource();
+        ci.setCiId(1L);
+        ci.setCiName(assembly);
+        ci.setCiClassName("account.Assembly");
+        ci.setNsPath("/" + org);
+        return ci;
+    }
+
+    private static String error(final String message) {
+        return new JSONObject().put("code", 1).put("message", message).toString();
+    }
+
+    private static void send(final HttpExchange exchange, final int status, final String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        // Keep-alive with small responses runs into Nagle's algorithm and delayed ACKs, 40ms a request
+        exchange.getResponseHeaders().set("Connection", "close");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
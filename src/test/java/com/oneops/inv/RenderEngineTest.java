@@ -0,0 +1,97 @@
+package com.oneops.inv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link RenderEngine}.
+ */
+public class RenderEngineTest
+{
+    private static List<Integer> items(final int count) {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add(i);
+        }
+        return items;
+    }
+
+    @Test
+    public void fragmentsKeepItemOrder() throws Exception {
+        try (RenderEngine underTest = new RenderEngine(4)) {
+            List<String> fragments = underTest.renderAll(items(1000), item -> "host-" + item);
+            assertThat(fragments.size(), is(1000));
+            for (int i = 0; i < 1000; i++) {
+                assertThat(fragments.get(i), is("host-" + i));
+            }
+        }
+    }
+
+    @Test
+    public void rendersOnSeveralThreads() throws Exception {
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        try (RenderEngine underTest = new RenderEngine(4)) {
+            underTest.renderAll(items(1000), item -> {
+                threads.add(Thread.currentThread().getName());
+                try {
+                    Thread.sleep(1);
+                }
+                catch (InterruptedException e) {
+                    throw new InventoryException("interrupted", e);
+                }
+                return "";
+            });
+        }
+        assertThat(threads.size(), greaterThan(1));
+    }
+
+    @Test
+    public void singleThreadRendersOnCaller() throws Exception {
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        try (RenderEngine underTest = new RenderEngine(1)) {
+            underTest.renderAll(items(100), item -> {
+                threads.add(Thread.currentThread().getName());
+                return "";
+            });
+        }
+        assertThat(threads.size(), is(1));
+        assertThat(threads.contains(Thread.currentThread().getName()), is(true));
+    }
+
+    @Test
+    public void failurePropagates() throws Exception {
+        try (RenderEngine underTest = new RenderEngine(4)) {
+            underTest.renderAll(items(100), item -> {
+                if (item == 77) {
+                    throw new InventoryException("boom");
+                }
+                return "";
+            });
+            fail();
+        }
+        catch (InventoryException e) {
+            assertThat(e.getMessage(), is("boom"));
+        }
+    }
+
+    @Test
+    public void emptyItems() throws Exception {
+        try (RenderEngine underTest = new RenderEngine(4)) {
+            assertThat(underTest.renderAll(new ArrayList<Integer>(), item -> "").isEmpty(), is(true));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parallelismMustBePositive() throws Exception {
+        new RenderEngine(0);
+    }
+}
@@ -0,0 +1,169 @@
+package com.oneops.inv;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.oneops.api.exception.OneOpsClientAPIException;
+import com.oneops.api.resource.model.CiResource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link RecordingSource} and {@link ReplaySource}.
+ */
+public class ReplaySourceTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static Inventory newInventory(final int fetchParallelism) {
+        Inventory inventory = new Inventory(TestAssembly.ORG, TestAssembly.ASSEMBLY, null, "token",
+            "https://oneops.example.com/", Main.DEFAULT_HOST_METHOD);
+        inventory.setFetchParallelism(fetchParallelism);
+        return inventory;
+    }
+
+    /**
+     * Crawl the source into a recording, and return the list the crawl generated.
+     */
+    private static String record(final OneOpsSource source, final File file, final int fetchParallelism)
+        throws Exception
+    {
+        RecordingSource recording = new RecordingSource(source, TestAssembly.ORG, TestAssembly.ASSEMBLY);
+        Inventory inventory = newInventory(fetchParallelism);
+        inventory.initialize(new MemoizingSource(recording));
+        recording.save(file);
+        return inventory.generateList().toString();
+    }
+
+    @Test
+    public void replaysTheRecordedCrawl() throws Exception {
+        File file = temporaryFolder.newFile("assembly.json.gz");
+        String live = record(new TestAssembly(2, 3, 4, 2), file, 4);
+
+        Inventory inventory = newInventory(4);
+        inventory.initialize(new MemoizingSource(ReplaySource.load(file)));
+        assertThat(inventory.generateList().toString(), is(live));
+    }
+
+    @Test
+    public void replaysThroughInventory() throws Exception {
+        File file = temporaryFolder.newFile("assembly.json.gz");
+        String live = record(new TestAssembly(1, 2, 3, 1), file, 1);
+
+        Inventory inventory = newInventory(1);
+        inventory.setReplayFile(file);
+        inventory.initialize();
+        assertThat(inventory.generateList().toString(), is(live));
+    }
+
+    @Test
+    public void recordingDoesNotDependOnFetchOrder() throws Exception {
+        File sequential = temporaryFolder.newFile("sequential.json.gz");
+        File parallel = temporaryFolder.newFile("parallel.json.gz");
+        record(new TestAssembly(2, 3, 4, 2), sequential, 1);
+        record(new TestAssembly(2, 3, 4, 2), parallel, 8);
+
+        assertThat(Arrays.equals(Files.readAllBytes(sequential.toPath()), Files.readAllBytes(parallel.toPath())),
+            is(true));
+    }
+
+    @Test
+    public void failuresAreReplayed() throws Exception {
+        OneOpsSource failing = new MemoizingSourceTest.EmptySource()
+        {
+            @Override
+            public List<CiResource> listPlatforms(final String env) throws OneOpsClientAPIException {
+                throw new OneOpsClientAPIException("Platforms unavailable");
+            }
+        };
+        RecordingSource recording = new RecordingSource(failing, TestAssembly.ORG, TestAssembly.ASSEMBLY);
+        try {
+            recording.listPlatforms("prod");
+            fail();
+        }
+        catch (OneOpsClientAPIException e) {
+            // Expected
+        }
+        recording.listClouds();
+        File file = temporaryFolder.newFile("assembly.json.gz");
+        recording.save(file);
+
+        ReplaySource replay = ReplaySource.load(file);
+        assertThat(replay.size(), is(2));
+        assertThat(replay.listClouds().isEmpty(), is(true));
+        try {
+            replay.listPlatforms("prod");
+            fail();
+        }
+        catch (OneOpsClientAPIException e) {
+            assertThat(e.getMessage(), is("Platforms unavailable"));
+        }
+    }
+
+    @Test
+    public void unrecordedRequestsFail() throws Exception {
+        File file = temporaryFolder.newFile("assembly.json.gz");
+        new RecordingSource(new TestAssembly(1, 1, 1, 1), TestAssembly.ORG, TestAssembly.ASSEMBLY).save(file);
+
+        try {
+            ReplaySource.load(file).listPlatforms("env0");
+            fail();
+        }
+        catch (OneOpsClientAPIException e) {
+            assertThat(e.getMessage(), is("No recorded response for platforms:env0"));
+        }
+    }
+
+    @Test
+    public void resourcesSurviveTheRoundTrip() throws Exception {
+        TestAssembly assembly = new TestAssembly(1, 1, 1, 1);
+        RecordingSource recording = new RecordingSource(assembly, TestAssembly.ORG, TestAssembly.ASSEMBLY);
+        CiResource environment = recording.getEnvironment("env0");
+        File file = temporaryFolder.newFile("assembly.json.gz");
+        recording.save(file);
+
+        CiResource replayed = ReplaySource.load(file).getEnvironment("env0");
+        assertThat(replayed, is(environment));
+        assertThat(replayed.getCiAttributes().getAdditionalProperties(),
+            is(environment.getCiAttributes().getAdditionalProperties()));
+        assertThat(replayed.getAdditionalProperties(), is(environment.getAdditionalProperties()));
+    }
+
+    @Test
+    public void recordingOfAnotherAssemblyIsRejected() throws Exception {
+        File file = temporaryFolder.newFile("assembly.json.gz");
+        new RecordingSource(new TestAssembly(1, 1, 1, 1), TestAssembly.ORG, "other").save(file);
+
+        Inventory inventory = newInventory(1);
+        inventory.setReplayFile(file);
+        try {
+            inventory.initialize();
+            fail();
+        }
+        catch (InventoryException e) {
+            assertThat(e.getMessage().contains(TestAssembly.ORG + "/other"), is(true));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void otherVersionsAreRejected() throws Exception {
+        File file = temporaryFolder.newFile("assembly.json.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(file))) {
+            out.write("{\"version\": 0, \"org\": \"devtools\", \"assembly\": \"website\"}\n".getBytes(StandardCharsets.UTF_8));
+        }
+        ReplaySource.load(file);
+    }
+}
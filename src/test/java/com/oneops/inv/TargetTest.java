@@ -0,0 +1,52 @@
+package com.oneops.inv;
+
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link Target}.
+ */
+public class TargetTest
+{
+    @Test
+    public void parseList() {
+        assertThat(Target.parseList("devtools/website, devtools/store/prod\nops/monitoring/qa"), is(Arrays.asList(
+            new Target("devtools", "website", null),
+            new Target("devtools", "store", "prod"),
+            new Target("ops", "monitoring", "qa"))));
+    }
+
+    @Test
+    public void environmentsOfOneAssembly() {
+        assertThat(Target.parseList("devtools/website/prod,devtools/website/qa").size(), is(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void assemblyOverlapsItsEnvironment() {
+        Target.parseList("devtools/website devtools/website/prod");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void groupNamesCollide() {
+        Target.parseList("dev-tools/website devtools/store dev/tools-website/prod");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingAssembly() {
+        Target.parseList("devtools");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyPart() {
+        Target.parseList("devtools//prod");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noTargets() {
+        Target.parseList(" , ");
+    }
+}
@@ -0,0 +1,292 @@
+package com.oneops.inv;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.oneops.api.exception.OneOpsClientAPIException;
+import com.oneops.api.resource.model.CiAttributes;
+import com.oneops.api.resource.model.CiResource;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Synthetic assembly served as a {@link OneOpsSource}, for tests and benchmarks that can't reach OneOps.
+ *
+ * Every platform has a compute, fqdn and lb component, and unless left out a hostname and os component; every
+ * compute instance then has hostname and os siblings, named the way OneOps names them so the inventory can
+ * relate them.
+ */
+public class TestAssembly
+    implements OneOpsSource
+{
+    public static final String ORG = "devtools";
+
+    public static final String ASSEMBLY = "website";
+
+    private final List<CiResource> clouds = new ArrayList<>();
+
+    private final List<CiResource> environments = new ArrayList<>();
+
+    private final Map<String, List<CiResource>> platforms = new HashMap<>();
+
+    private final Map<String, List<CiResource>> globalVariables = new HashMap<>();
+
+    private final Map<String, List<CiResource>> components = new HashMap<>();
+
+    private final Map<String, List<CiResource>> platformVariables = new HashMap<>();
+
+    private final Map<String, List<CiResource>> instances = new HashMap<>();
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private long nextCiId = 1000;
+
+    private int hostCount;
+
+    /**
+     * @param environmentCount Number of environments
+     * @param platformCount Platforms per environment
+     * @param computeCount Compute instances per platform
+     * @param variableCount Global variables per environment, and local variables per platform
+     */
+    public TestAssembly(final int environmentCount, final int platformCount, final int computeCount,
+                        final int variableCount)
+    {
+        this(environmentCount, platformCount, computeCount, variableCount, true);
+    }
+
+    /**
+     * @param environmentCount Number of environments
+     * @param platformCount Platforms per environment
+     * @param computeCount Compute instances per platform
+     * @param variableCount Global variables per environment, and local variables per platform
+     * @param siblings Whether platforms have hostname and os components
+     */
+    public TestAssembly(final int environmentCount, final int platformCount, final int computeCount,
+                        final int variableCount, final boolean siblings)
+    {
+        clouds.add(ci("dal3", "account.Cloud"));
+        clouds.add(ci("dfw3", "account.Cloud"));
+
+        for (int e = 0; e < environmentCount; e++) {
+            String env = "env" + e;
+            CiResource environment = ci(env, "manifest.Environment");
+            environment.setNsPath("/" + ORG + "/" + ASSEMBLY);
+            environment.getCiAttributes().setAdditionalProperty("profile", "PROD");
+            environment.getCiAttributes().setAdditionalProperty("availability", "redundant");
+            environments.add(environment);
+            globalVariables.put(env, variables(variableCount, "global"));
+
+            List<CiResource> envPlatforms = new ArrayList<>();
+            for (int p = 0; p < platformCount; p++) {
+                String platform = "plat" + p;
+                envPlatforms.add(ci(platform, "manifest.Platform"));
+                addPlatform(env, platform, computeCount, variableCount, siblings);
+            }
+            platforms.put(env, envPlatforms);
+        }
+    }
+
+    private void addPlatform(final String env, final String platform, final int computeCount, final int variableCount,
+                             final boolean siblings)
+    {
+        String key = env + ":" + platform;
+        platformVariables.put(key, variables(variableCount, "local"));
+        List<CiResource> platformComponents = new ArrayList<>();
+        platformComponents.add(ci("compute", "manifest.oneops.1.Compute"));
+        if (siblings) {
+            platformComponents.add(ci("hostname", "manifest.oneops.1.Fqdn"));
+            platformComponents.add(ci("os", "manifest.oneops.1.Os"));
+        }
+        platformComponents.add(ci("fqdn", "manifest.oneops.1.Fqdn"));
+        platformComponents.add(ci("lb", "manifest.oneops.1.Lb"));
+        components.put(key, platformComponents);
+
+        String nsPath = "/" + ORG + "/" + ASSEMBLY + "/" + env + "/bom/" + platform + "/1";
+        long platformId = nextCiId++;
+        List<CiResource> computes = new ArrayList<>();
+        List<CiResource> hostnames = new ArrayList<>();
+        List<CiResource> oses = new ArrayList<>();
+        for (int i = 1; i <= computeCount; i++) {
+            int host = hostCount++;
+            String instance = platformId + "-" + i;
+            String publicIp = ip(10, host);
+            String hostname = platform + "-" + instance + "." + env + "." + ASSEMBLY + "." + ORG + ".example.com";
+
+            CiResource compute = ci("compute-" + instance, "bom.oneops.1.Compute");
+            compute.setNsPath(nsPath);
+            CiAttributes attributes = compute.getCiAttributes();
+            attributes.setAdditionalProperty("public_ip", publicIp);
+            attributes.setAdditionalProperty("private_ip", ip(172, host));
+            attributes.setAdditionalProperty("instance_name", "vm-" + host);
+            attributes.setAdditionalProperty("instance_id", "i-" + host);
+            attributes.setAdditionalProperty("host_id", "hv-" + (host % 50));
+            attributes.setAdditionalProperty("hypervisor", "kvm");
+            attributes.setAdditionalProperty("availability_zone", "az" + (host % 3));
+            attributes.setAdditionalProperty("size", "M");
+            attributes.setAdditionalProperty("cores", "4");
+            attributes.setAdditionalProperty("ram", "8192");
+            attributes.setAdditionalProperty("server_image_name", "centos-7");
+            attributes.setAdditionalProperty("server_image_id", "img-7");
+            attributes.setAdditionalProperty("vm_state", "active");
+            attributes.setAdditionalProperty("metadata", new JSONObject()
+                .put("organization", ORG)
+                .put("assembly", ASSEMBLY)
+                .put("environment", env)
+                .put("platform", platform)
+                .put("owner", "ops@example.com")
+                .put("mgmt_url", "https://oneops.example.com/" + ORG)
+                .put("component", "compute")
+                .put("instance", instance)
+                .toString());
+            Map<String, String> deployedTo = new HashMap<>();
+            deployedTo.put("ciName", clouds.get(i % clouds.size()).getCiName());
+            compute.setAdditionalProperty("deployedTo", deployedTo);
+            computes.add(compute);
+
+            CiResource hostnameInstance = ci("hostname-" + instance, "bom.oneops.1.Fqdn");
+            hostnameInstance.getCiAttributes().setAdditionalProperty("entries", new JSONObject()
+                .put(hostname, new JSONArray().put(publicIp))
+                .put(publicIp, new JSONArray().put(publicIp))
+                .toString());
+            hostnames.add(hostnameInstance);
+
+            CiResource os = ci("os-" + instance, "bom.oneops.1.Os");
+            os.getCiAttributes().setAdditionalProperty("ostype", "centos-7.2");
+            os.getCiAttributes().setAdditionalProperty("osname", "CentOS");
+            oses.add(os);
+        }
+
+        CiResource fqdn = ci("fqdn-" + platformId + "-1", "bom.oneops.1.Fqdn");
+        fqdn.getCiAttributes().setAdditionalProperty("aliases", "[\"" + platform + "\"]");
+        fqdn.getCiAttributes().setAdditionalProperty("full_aliases", "[\"" + platform + ".example.com\"]");
+
+        instances.put(key + ":compute", computes);
+        if (siblings) {
+            instances.put(key + ":hostname", hostnames);
+            instances.put(key + ":os", oses);
+        }
+        instances.put(key + ":fqdn", Collections.singletonList(fqdn));
+        instances.put(key + ":lb", Collections.singletonList(ci("lb-" + platformId + "-1", "bom.oneops.1.Lb")));
+    }
+
+    private List<CiResource> variables(final int count, final String prefix) {
+        List<CiResource> variables = new ArrayList<>();
+        for (int v = 0; v < count; v++) {
+            CiResource variable = ci(prefix + "_var" + v, "manifest.Globalvar");
+            boolean secure = v % 4 == 3;
+            variable.getCiAttributes().setAdditionalProperty("secure", String.valueOf(secure));
+            variable.getCiAttributes().setAdditionalProperty(secure ? "encrypted_value" : "value",
+                (secure ? "::ENCRYPTED::" : "value-") + v);
+            variables.add(variable);
+        }
+        return variables;
+    }
+
+    private CiResource ci(final String name, final String className) {
+        CiResource ci = new CiResource();
+        ci.setCiId(nextCiId++);
+        ci.setCiName(name);
+        ci.setCiClassName(className);
+        ci.setCiAttributes(new CiAttributes());
+        return ci;
+    }
+
+    private static String ip(final int prefix, final int host) {
+        return prefix + "." + ((host >> 16) & 0xff) + "." + ((host >> 8) & 0xff) + "." + (host & 0xff);
+    }
+
+    /**
+     * Number of computes in the assembly.
+     */
+    public int getHostCount() {
+        return hostCount;
+    }
+
+    /**
+     * Number of calls made to this source so far, as if each were an API call.
+     */
+    public int getCallCount() {
+        return calls.get();
+    }
+
+    /**
+     * Public IP of the n-th compute.
+     */
+    public static String publicIp(final int host) {
+        return ip(10, host);
+    }
+
+    @Override
+    public List<CiResource> listClouds() throws OneOpsClientAPIException {
+        calls.incrementAndGet();
+        return clouds;
+    }
+
+    @Override
+    public List<CiResource> listEnvironments() throws OneOpsClientAPIException {
+        calls.incrementAndGet();
+        return environments;
+    }
+
+    @Override
+    public CiResource getEnvironment(final String env) throws OneOpsClientAPIException {
+        calls.incrementAndGet();
+        for (CiResource environment : environments) {
+            if (environment.getCiName().equals(env)) {
+                return environment;
+            }
+        }
+        throw new OneOpsClientAPIException("No environment " + env);
+    }
+
+    @Override
+    public List<CiResource> listPlatforms(final String env) throws OneOpsClientAPIException {
+        calls.incrementAndGet();
+        return found(platforms.get(env), env);
+    }
+
+    @Override
+    public List<CiResource> listGlobalVariables(final String env) throws OneOpsClientAPIException {
+        calls.incrementAndGet();
+        return found(globalVariables.get(env), env);
+    }
+
+    @Override
+    public List<CiResource> listPlatformComponents(final String env, final String platform)
+        throws OneOpsClientAPIException
+    {
+        calls.incrementAndGet();
+        return found(components.get(env + ":" + platform), env + ":" + platform);
+    }
+
+    @Override
+    public List<CiResource> listPlatformVariables(final String env, final String platform)
+        throws OneOpsClientAPIException
+    {
+        calls.incrementAndGet();
+        return found(platformVariables.get(env + ":" + platform), env + ":" + platform);
+    }
+
+    @Override
+    public List<CiResource> listInstances(final String env, final String platform, final String component)
+        throws OneOpsClientAPIException
+    {
+        calls.incrementAndGet();
+        String key = env + ":" + platform + ":" + component;
+        return found(instances.get(key), key);
+    }
+
+    private static List<CiResource> found(final List<CiResource> resources, final String key)
+        throws OneOpsClientAPIException
+    {
+        if (resources == null) {
+            throw new OneOpsClientAPIException("Not found: " + key);
+        }
+        return resources;
+    }
+}